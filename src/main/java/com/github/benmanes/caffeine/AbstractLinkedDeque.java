@@ -0,0 +1,296 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A base class for a doubly-linked deque whose links are stored on the elements themselves. An
+ * element can be added, removed, and moved to the tail of the deque in constant time without
+ * allocating a wrapper node. Because the links are embedded, an element may be a member of at
+ * most one deque that uses the same link fields at a time, while it may be a member of multiple
+ * deques that each use different link fields. A subclass defines which of the element's fields
+ * hold the links.
+ * <p>
+ * This class is not thread-safe and must be guarded by an external lock. Like most collection
+ * implementations, it does not permit {@code null} elements.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <E> the type of elements held in this collection
+ */
+@NotThreadSafe
+abstract class AbstractLinkedDeque<E> extends AbstractCollection<E> {
+
+    /*
+     * The deque is represented by references to its first and last elements, where an element's
+     * links are null at the boundaries. As a result an element is a member of the deque if it has
+     * a link or if it is the sole element, which lets membership be determined in constant time.
+     */
+
+    /** The first element, or null if the deque is empty. */
+    @Nullable E first;
+
+    /** The last element, or null if the deque is empty. */
+    @Nullable E last;
+
+    /** Returns the element preceding the given one, or null if it is first or not linked. */
+    abstract @Nullable E getPrevious(E e);
+
+    /** Sets the element preceding the given one. */
+    abstract void setPrevious(E e, @Nullable E prev);
+
+    /** Returns the element following the given one, or null if it is last or not linked. */
+    abstract @Nullable E getNext(E e);
+
+    /** Sets the element following the given one. */
+    abstract void setNext(E e, @Nullable E next);
+
+    /**
+     * Returns if the element is linked into this deque. This assumes that the element is not
+     * linked into a different deque that uses the same link fields.
+     */
+    boolean isLinked(E e) {
+        return (getPrevious(e) != null) || (getNext(e) != null) || (e == first);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (first == null);
+    }
+
+    /**
+     * Returns the number of elements in this deque.
+     * <p>
+     * Beware that, unlike in most collections, this method is <em>NOT</em> a constant-time
+     * operation, as the size is determined by a traversal of the elements.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (E e = first; e != null; e = getNext(e)) {
+            size++;
+        }
+        return size;
+    }
+
+    /** Retrieves, but does not remove, the first element or returns null if the deque is empty. */
+    public @Nullable E peekFirst() {
+        return first;
+    }
+
+    /** Retrieves, but does not remove, the last element or returns null if the deque is empty. */
+    public @Nullable E peekLast() {
+        return last;
+    }
+
+    /** Retrieves and removes the first element or returns null if the deque is empty. */
+    public @Nullable E pollFirst() {
+        return isEmpty() ? null : unlinkFirst();
+    }
+
+    /** Retrieves and removes the last element or returns null if the deque is empty. */
+    public @Nullable E pollLast() {
+        return isEmpty() ? null : unlinkLast();
+    }
+
+    /**
+     * Inserts the element at the front of the deque, unless it is already linked.
+     *
+     * @param e the element to add
+     * @return if the element was added
+     */
+    public boolean offerFirst(E e) {
+        requireNonNull(e);
+        if (isLinked(e)) {
+            return false;
+        }
+        linkFirst(e);
+        return true;
+    }
+
+    /**
+     * Inserts the element at the end of the deque, unless it is already linked.
+     *
+     * @param e the element to add
+     * @return if the element was added
+     */
+    public boolean offerLast(E e) {
+        requireNonNull(e);
+        if (isLinked(e)) {
+            return false;
+        }
+        linkLast(e);
+        return true;
+    }
+
+    @Override
+    public boolean add(E e) {
+        return offerLast(e);
+    }
+
+    /**
+     * Removes the element if it is linked into the deque.
+     *
+     * @param e the element to remove
+     * @return if the element was removed
+     */
+    boolean removeElement(E e) {
+        if (isLinked(e)) {
+            unlink(e);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves the element to the end of the deque so that it becomes the last element.
+     *
+     * @param e the linked element
+     */
+    public void moveToBack(E e) {
+        if (e != last) {
+            unlink(e);
+            linkLast(e);
+        }
+    }
+
+    /** Links the element to the front of the deque so that it becomes the first element. */
+    void linkFirst(E e) {
+        E f = first;
+        first = e;
+
+        if (f == null) {
+            last = e;
+        } else {
+            setPrevious(f, e);
+            setNext(e, f);
+        }
+    }
+
+    /** Links the element to the end of the deque so that it becomes the last element. */
+    void linkLast(E e) {
+        E l = last;
+        last = e;
+
+        if (l == null) {
+            first = e;
+        } else {
+            setNext(l, e);
+            setPrevious(e, l);
+        }
+    }
+
+    /** Unlinks the non-null first element. */
+    E unlinkFirst() {
+        E f = first;
+        E next = getNext(f);
+        setNext(f, null);
+
+        first = next;
+        if (next == null) {
+            last = null;
+        } else {
+            setPrevious(next, null);
+        }
+        return f;
+    }
+
+    /** Unlinks the non-null last element. */
+    E unlinkLast() {
+        E l = last;
+        E prev = getPrevious(l);
+        setPrevious(l, null);
+
+        last = prev;
+        if (prev == null) {
+            first = null;
+        } else {
+            setNext(prev, null);
+        }
+        return l;
+    }
+
+    /** Unlinks the non-null element. */
+    void unlink(E e) {
+        E prev = getPrevious(e);
+        E next = getNext(e);
+
+        if (prev == null) {
+            first = next;
+        } else {
+            setNext(prev, next);
+            setPrevious(e, null);
+        }
+
+        if (next == null) {
+            last = prev;
+        } else {
+            setPrevious(next, prev);
+            setNext(e, null);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (E e = first; e != null;) {
+            E next = getNext(e);
+            setPrevious(e, null);
+            setNext(e, null);
+            e = next;
+        }
+        first = last = null;
+    }
+
+    /** Returns an iterator over the elements in order from first to last. */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            @Nullable E cursor = first;
+            @Nullable E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return (cursor != null);
+            }
+
+            @Override
+            public E next() {
+                if (cursor == null) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = cursor;
+                cursor = getNext(cursor);
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                unlink(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+}
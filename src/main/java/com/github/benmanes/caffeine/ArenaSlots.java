@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The slots of an {@link EliminationArena}, which names the memory ordering that each access of a
+ * slot requires. This class is replaced in the multi-release jar by a JDK 9 variant that performs
+ * each access with the ordering that it names. On Java 8 every access has volatile semantics,
+ * which is at least as strong.
+ * <p>
+ * The arena must call only the methods that are declared here, as the JDK 9 variant does not
+ * extend {@link AtomicReferenceArray}. This variant extends it so that a slot is reached without
+ * an additional indirection.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class ArenaSlots extends AtomicReferenceArray<Object> {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the slots, all initially free.
+     *
+     * @param length the length of the array
+     */
+    ArenaSlots(int length) {
+        super(length);
+    }
+
+    /**
+     * Returns the value of the slot, where an opaque read suffices as the value is only a hint.
+     *
+     * @param index the position in the array
+     * @return the current value
+     */
+    Object read(int index) {
+        return get(index);
+    }
+
+    /**
+     * Returns the value of the slot with the semantics of an acquire read.
+     *
+     * @param index the position in the array
+     * @return the current value
+     */
+    Object readAcquire(int index) {
+        return get(index);
+    }
+
+    /**
+     * Atomically sets the slot to the given updated value if its current value is the expected
+     * value, with the semantics of a release write if successful.
+     *
+     * @param index the position in the array
+     * @param expect the expected value
+     * @param update the new value
+     * @return if successful
+     */
+    boolean casRelease(int index, Object expect, Object update) {
+        return compareAndSet(index, expect, update);
+    }
+
+    /**
+     * Atomically sets the slot to the given updated value if its current value is the expected
+     * value, with the semantics of an acquire read of the current value.
+     *
+     * @param index the position in the array
+     * @param expect the expected value
+     * @param update the new value
+     * @return if successful
+     */
+    boolean casAcquire(int index, Object expect, Object update) {
+        return compareAndSet(index, expect, update);
+    }
+}
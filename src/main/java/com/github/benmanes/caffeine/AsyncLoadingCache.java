@@ -0,0 +1,408 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.github.benmanes.caffeine.BoundedLocalCache.Node;
+
+/**
+ * A cache that computes its values asynchronously with a {@link CacheLoader} when they are
+ * absent. The cache holds a {@link CompletableFuture} for each key, so that a request for a key
+ * that is being loaded joins the load that is in progress instead of starting another. This
+ * prevents a stampede on the data source when a popular entry is absent, such as after it has
+ * expired, as the loader is called once regardless of how many threads request the key.
+ * <p>
+ * A load that fails or computes a {@code null} value is removed from the cache, so the key is
+ * loaded again by the next request. A load that succeeds updates the entry in the cache, which
+ * allows the cache's policy to take the loaded value into account. An entry does not expire while
+ * it is being loaded, and its lifetime starts when the load completes.
+ * <p>
+ * If a refresh duration is set, then an entry that is read after the duration has elapsed since
+ * it was written is reloaded asynchronously with {@link CacheLoader#reload}. The reads continue to
+ * return the current value while the reload is in progress, so the entry remains available rather
+ * than blocking the readers, and only one reload of an entry is in progress at a time. A reload
+ * that fails is logged and the current value is retained, so that the next read after the
+ * duration has elapsed tries again.
+ * <p>
+ * If the statistics are enabled, then each lookup is recorded as a hit or a miss by the
+ * underlying cache, where a request that joins a load in progress counts as a hit, and each call
+ * to the loader is timed and recorded as a successful or failed load. A load or reload that does
+ * not find a value is recorded as a failure.
+ * <p>
+ * The cache is created by {@link BoundedLocalCache.Builder#buildAsync}, which bounds it in the
+ * same manner as a {@link BoundedLocalCache}.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ */
+@ThreadSafe
+final class AsyncLoadingCache<K, V> {
+    static final Logger logger = Logger.getLogger(AsyncLoadingCache.class.getName());
+
+    final ConcurrentMap<K, CompletableFuture<V>> refreshes;
+    final BoundedLocalCache<K, CompletableFuture<V>> cache;
+    final CacheLoader<K, V> loader;
+    final Executor executor;
+
+    /**
+     * Creates a cache that holds the futures in the given map and loads the absent values on the
+     * executor.
+     *
+     * @param cache the map that holds the futures
+     * @param loader the loader that computes the values
+     * @param executor the executor that runs the loader
+     */
+    AsyncLoadingCache(BoundedLocalCache<K, CompletableFuture<V>> cache,
+            CacheLoader<K, V> loader, Executor executor) {
+        this.cache = requireNonNull(cache);
+        this.loader = requireNonNull(loader);
+        this.executor = requireNonNull(executor);
+        this.refreshes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the future associated with the key in this cache, or {@code null} if there is no
+     * cached future for the key. This method does not load the value if absent.
+     *
+     * @param key the key whose associated future is to be returned
+     * @return the future for the key's value, or {@code null} if not present
+     * @throws NullPointerException if the specified key is null
+     */
+    public @Nullable CompletableFuture<V> getIfPresent(Object key) {
+        CompletableFuture<V> future = cache.get(key);
+        if (future != null) {
+            refreshIfNeeded(key, future);
+        }
+        return future;
+    }
+
+    /**
+     * Returns the future associated with the key in this cache, obtaining that value from the
+     * {@link CacheLoader#load} if necessary. If another call to this method is currently loading
+     * the value for the key, this call returns the future of that load rather than starting a
+     * second one.
+     *
+     * @param key the key whose associated future is to be returned
+     * @return the future for the key's value, which completes with {@code null} if the loader did
+     *         not find a value or exceptionally if the loader failed
+     * @throws NullPointerException if the specified key is null
+     */
+    public CompletableFuture<V> get(K key) {
+        requireNonNull(key);
+        CompletableFuture<V> future = cache.get(key);
+        if (future != null) {
+            refreshIfNeeded(key, future);
+            return future;
+        }
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> prior = cache.putIfAbsent(key, created);
+        if (prior != null) {
+            return prior;
+        }
+        try {
+            executor.execute(() -> {
+                long startTime = cache.statsTicker.read();
+                V value;
+                try {
+                    value = loader.load(key);
+                } catch (Throwable t) {
+                    recordLoad(false, startTime);
+                    fail(key, created, t);
+                    return;
+                }
+                recordLoad(value != null, startTime);
+                complete(key, created, value);
+            });
+        } catch (Throwable t) {
+            fail(key, created, t);
+        }
+        return created;
+    }
+
+    /**
+     * Returns the future of a map of the values associated with the keys, loading the absent
+     * values with a single call to {@link CacheLoader#loadAll}. A key that is being loaded by
+     * another call is not passed to the loader, as this call waits for the result of that load
+     * instead. The returned map contains the keys whose values were found, in the order that the
+     * keys were specified.
+     *
+     * @param keys the keys whose associated values are to be returned
+     * @return the future for an unmodifiable map of the keys to their values, which completes
+     *         exceptionally if any of the loads failed
+     * @throws NullPointerException if the specified collection is null or contains a null key
+     */
+    public CompletableFuture<Map<K, V>> getAll(Iterable<? extends K> keys) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> proxies = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (futures.containsKey(requireNonNull(key))) {
+                continue;
+            }
+            CompletableFuture<V> future = cache.get(key);
+            if (future == null) {
+                CompletableFuture<V> created = new CompletableFuture<>();
+                future = cache.putIfAbsent(key, created);
+                if (future == null) {
+                    future = created;
+                    proxies.put(key, created);
+                }
+            } else {
+                refreshIfNeeded(key, future);
+            }
+            futures.put(key, future);
+        }
+        if (!proxies.isEmpty()) {
+            loadAll(proxies);
+        }
+        return composeResult(futures);
+    }
+
+    /**
+     * Loads the values of the keys that were installed by this call with a single call to the
+     * loader, and completes their futures with the results.
+     *
+     * @param proxies the keys to load and the futures that were installed for them
+     */
+    void loadAll(Map<K, CompletableFuture<V>> proxies) {
+        try {
+            executor.execute(() -> {
+                long startTime = cache.statsTicker.read();
+                Map<K, V> result;
+                try {
+                    result = requireNonNull(loader.loadAll(proxies.keySet()));
+                } catch (Throwable t) {
+                    recordLoad(false, startTime);
+                    proxies.forEach((key, future) -> fail(key, future, t));
+                    return;
+                }
+                recordLoad(true, startTime);
+                proxies.forEach((key, future) -> complete(key, future, result.get(key)));
+            });
+        } catch (Throwable t) {
+            proxies.forEach((key, future) -> fail(key, future, t));
+        }
+    }
+
+    /** Returns a future of the map of the values that were found, once all of the loads finish. */
+    static <K, V> CompletableFuture<Map<K, V>> composeResult(
+            Map<K, CompletableFuture<V>> futures) {
+        CompletableFuture<?>[] array = futures.values().toArray(
+                new CompletableFuture<?>[futures.size()]);
+        return CompletableFuture.allOf(array).thenApply(ignored -> {
+            Map<K, V> result = new LinkedHashMap<>(futures.size());
+            futures.forEach((key, future) -> {
+                V value = future.getNow(null);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            });
+            return Collections.unmodifiableMap(result);
+        });
+    }
+
+    /**
+     * Reloads the entry asynchronously if the refresh duration has elapsed since it was written.
+     * The entry is not refreshed while it is being loaded or reloaded, and the reload replaces the
+     * value only if the entry was not modified in the meantime.
+     *
+     * @param key the key that was read
+     * @param future the future that is associated with the key
+     */
+    void refreshIfNeeded(Object key, CompletableFuture<V> future) {
+        if (!cache.refreshes()) {
+            return;
+        }
+        Node<K, CompletableFuture<V>> node = cache.data.get(key);
+        if ((node == null) || (cache.now() - node.getWriteTime() < cache.refreshAfterWriteNanos)) {
+            return;
+        }
+        K nodeKey = node.key;
+        V oldValue = getIfReady(future);
+        if ((oldValue == null) || (refreshes.putIfAbsent(nodeKey, future) != null)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                long startTime = cache.statsTicker.read();
+                boolean loaded = false;
+                try {
+                    V newValue = loader.reload(nodeKey, oldValue);
+                    loaded = true;
+                    recordLoad(newValue != null, startTime);
+                    if (newValue == null) {
+                        cache.remove(nodeKey, future);
+                    } else {
+                        cache.replace(nodeKey, future, CompletableFuture.completedFuture(newValue));
+                    }
+                } catch (Throwable t) {
+                    if (!loaded) {
+                        recordLoad(false, startTime);
+                    }
+                    logger.log(Level.WARNING, "Exception thrown during refresh", t);
+                } finally {
+                    refreshes.remove(nodeKey, future);
+                }
+            });
+        } catch (Throwable t) {
+            refreshes.remove(nodeKey, future);
+            logger.log(Level.WARNING, "Exception thrown when submitting refresh task", t);
+        }
+    }
+
+    /**
+     * Associates the future with the key in this cache, replacing any existing future. If the
+     * future fails or computes a {@code null} value then the entry is removed.
+     *
+     * @param key the key with which the specified future is to be associated
+     * @param valueFuture the future for the value to be associated with the specified key
+     * @throws NullPointerException if the specified key or future is null
+     */
+    public void put(K key, CompletableFuture<V> valueFuture) {
+        cache.put(key, valueFuture);
+        valueFuture.whenComplete((value, error) -> {
+            if ((error != null) || (value == null)) {
+                cache.remove(key, valueFuture);
+            } else {
+                cache.replace(key, valueFuture, valueFuture);
+            }
+        });
+    }
+
+    /**
+     * Returns a view of the futures stored in this cache as a thread-safe map. Modifications made
+     * to the map directly affect the cache.
+     *
+     * @return a thread-safe view of this cache
+     */
+    public ConcurrentMap<K, CompletableFuture<V>> asMap() {
+        return cache;
+    }
+
+    /** Returns the future's value if it completed successfully, or null otherwise. */
+    @Nullable static <V> V getIfReady(CompletableFuture<V> future) {
+        return (future.isDone() && !future.isCompletedExceptionally())
+                ? future.getNow(null)
+                : null;
+    }
+
+    /** Records the outcome of a call to the loader that started at the given time. */
+    void recordLoad(boolean success, long startTime) {
+        long loadTime = cache.statsTicker.read() - startTime;
+        if (success) {
+            cache.statsCounter.recordLoadSuccess(loadTime);
+        } else {
+            cache.statsCounter.recordLoadFailure(loadTime);
+        }
+    }
+
+    /**
+     * Completes the load with its value. A {@code null} value is removed before the future is
+     * completed, so that a subsequent request loads the key again. Otherwise the entry is updated
+     * after the future is completed, so that the cache's policy observes the loaded value.
+     */
+    void complete(K key, CompletableFuture<V> future, @Nullable V value) {
+        if (value == null) {
+            cache.remove(key, future);
+            future.complete(null);
+        } else {
+            future.complete(value);
+            cache.replace(key, future, future);
+        }
+    }
+
+    /**
+     * Fails the load. The entry is removed before the future is completed, so that a subsequent
+     * request loads the key again rather than observing the failure.
+     */
+    void fail(K key, CompletableFuture<V> future, Throwable error) {
+        cache.remove(key, future);
+        future.completeExceptionally(error);
+    }
+
+    /**
+     * An adapter that computes the expiration of a future by its value. A future that is still
+     * loading does not expire, and the cache computes its entry's expiration as if it was created
+     * when the load completes.
+     */
+    static final class AsyncExpiry<K, V> implements Expiry<K, CompletableFuture<V>> {
+        final Expiry<K, V> delegate;
+
+        AsyncExpiry(Expiry<K, V> delegate) {
+            this.delegate = requireNonNull(delegate);
+        }
+
+        @Override
+        public long expireAfterCreate(K key, CompletableFuture<V> future, long currentTime) {
+            V value = getIfReady(future);
+            return (value == null)
+                    ? Long.MAX_VALUE
+                    : delegate.expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, CompletableFuture<V> future,
+                long currentTime, long currentDuration) {
+            V value = getIfReady(future);
+            return (value == null)
+                    ? Long.MAX_VALUE
+                    : delegate.expireAfterUpdate(key, value, currentTime, currentDuration);
+        }
+
+        @Override
+        public long expireAfterRead(K key, CompletableFuture<V> future,
+                long currentTime, long currentDuration) {
+            V value = getIfReady(future);
+            return (value == null)
+                    ? currentDuration
+                    : delegate.expireAfterRead(key, value, currentTime, currentDuration);
+        }
+    }
+
+    /**
+     * An adapter that computes the weight of a future by its value. A future that is still loading
+     * has a weight of <tt>1</tt>, and its entry is weighed again when the load completes.
+     */
+    static final class AsyncWeigher<K, V> implements Weigher<K, CompletableFuture<V>> {
+        final Weigher<K, V> delegate;
+
+        AsyncWeigher(Weigher<K, V> delegate) {
+            this.delegate = requireNonNull(delegate);
+        }
+
+        @Override
+        public int weigh(K key, CompletableFuture<V> future) {
+            V value = getIfReady(future);
+            return (value == null) ? 1 : delegate.weigh(key, value);
+        }
+    }
+}
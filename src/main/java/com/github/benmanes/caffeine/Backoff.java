@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A strategy for pausing a thread between the unsuccessful attempts of a spin loop, such as while
+ * waiting in an {@link EliminationArena} slot for a partner to arrive or before retrying a
+ * contended update of an {@link EliminationStack}. A busy-polling loop is the fastest way to hand
+ * off an element between threads that are running on dedicated cores, but it burns the processor
+ * time of the waiting thread. When there are more runnable threads than cores, such as in a
+ * container whose CPU quota is smaller than the number of processors that it observes, that time
+ * is better given to the thread that the waiter depends on.
+ * <p>
+ * A pause is charged against the caller's spin limit by the number of spins that it returns, so
+ * that a strategy which waits longer per attempt, such as by parking, gives up after fewer
+ * attempts rather than extending the wait.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+interface Backoff {
+
+    /**
+     * Pauses the current thread after an unsuccessful attempt.
+     *
+     * @param attempt the number of consecutive unsuccessful attempts before this one, which is
+     *        zero for the first pause of a wait
+     * @return the number of spins that the pause is charged as, which should be at least
+     *         <tt>1</tt>; the arena charges a smaller value as <tt>1</tt> and a larger value than
+     *         its per-slot limit as that limit
+     */
+    int pause(int attempt);
+
+    /**
+     * Returns a strategy that busy-polls with a processor hint that the thread is spinning, which
+     * on JDK 9 and later is {@code Thread.onSpinWait()} and on earlier releases is no pause at all.
+     * This is the default, as it hands off an element with the least latency when each thread has
+     * a core of its own.
+     *
+     * @return a strategy that spins with a pause hint
+     */
+    static Backoff spin() {
+        return Strategy.SPIN;
+    }
+
+    /**
+     * Returns a strategy that spins for a duration that doubles on each attempt, up to a small
+     * limit, so that a waiting thread polls the shared memory location less often.
+     *
+     * @return a strategy that spins with an exponential backoff
+     */
+    static Backoff exponential() {
+        return Strategy.EXPONENTIAL;
+    }
+
+    /**
+     * Returns a strategy that yields the processor on each attempt, which lets another runnable
+     * thread make progress when the processors are oversubscribed.
+     *
+     * @return a strategy that yields
+     */
+    static Backoff yielding() {
+        return Strategy.YIELD;
+    }
+
+    /**
+     * Returns a strategy that spins for a few attempts and then parks the thread briefly on each
+     * subsequent attempt, which releases the processor when the wait is not short.
+     *
+     * @return a strategy that spins and then parks
+     */
+    static Backoff spinThenPark() {
+        return Strategy.SPIN_THEN_PARK;
+    }
+
+    /** The built-in strategies. */
+    enum Strategy implements Backoff {
+        SPIN {
+            @Override public int pause(int attempt) {
+                onSpinWait();
+                return 1;
+            }
+        },
+        EXPONENTIAL {
+            @Override public int pause(int attempt) {
+                int spins = 1 << Math.min(attempt, MAX_EXPONENT);
+                for (int i = 0; i < spins; i++) {
+                    onSpinWait();
+                }
+                return spins;
+            }
+        },
+        YIELD {
+            @Override public int pause(int attempt) {
+                Thread.yield();
+                return YIELD_COST;
+            }
+        },
+        SPIN_THEN_PARK {
+            @Override public int pause(int attempt) {
+                if (attempt < PARK_THRESHOLD) {
+                    onSpinWait();
+                    return 1;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+                return PARK_COST;
+            }
+        };
+
+        /** The largest exponent of the number of spins in an exponential pause. */
+        static final int MAX_EXPONENT = 6;
+
+        /** The number of spins that a yield is charged as. */
+        static final int YIELD_COST = 64;
+
+        /** The number of attempts that are spun on before parking. */
+        static final int PARK_THRESHOLD = 64;
+
+        /** The duration that a thread parks for. */
+        static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+        /**
+         * The number of spins that a park is charged as. A park takes at least a pair of context
+         * switches, which is comparable to the entire spin limit of an arena slot, so a waiter
+         * parks only a few times before giving up.
+         */
+        static final int PARK_COST = 256;
+
+        /** The handle to {@code Thread.onSpinWait()}, or {@code null} if it is not available. */
+        static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+
+        static MethodHandle findOnSpinWait() {
+            try {
+                return MethodHandles.lookup().findStatic(
+                        Thread.class, "onSpinWait", MethodType.methodType(void.class));
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Hints to the processor that the thread is spinning, if supported. The handle is a
+         * constant, so the compiler reduces this to the intrinsic or to nothing.
+         */
+        static void onSpinWait() {
+            if (ON_SPIN_WAIT != null) {
+                try {
+                    ON_SPIN_WAIT.invokeExact();
+                } catch (Throwable t) {
+                    throw new AssertionError(t);
+                }
+            }
+        }
+    }
+}
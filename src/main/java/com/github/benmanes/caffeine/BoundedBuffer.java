@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A striped, non-blocking, bounded buffer. Each stripe is a lossy ring buffer, so an element is
+ * dropped when its stripe is full rather than blocking the producer.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <E> the type of elements maintained by this buffer
+ */
+@ThreadSafe
+final class BoundedBuffer<E> extends StripedBuffer<E> {
+
+    /*
+     * A circular ring buffer stores the elements being transferred by the producers to the
+     * consumer. The monotonically increasing count of reads and writes allow indexing sequentially
+     * to the next element location based upon a power-of-two sizing.
+     *
+     * The producers race to read the counts, check if there is available capacity, and if so then
+     * try once to CAS to the next write count. If the increment is successful then the producer
+     * publishes the element with a single lazySet, as only the consumer reads the slot. If the CAS
+     * fails then the producer does not retry, which signals the striped buffer to grow or rehash
+     * the producer onto another stripe. When the stripe is full the element is dropped.
+     *
+     * The consumer reads the counts and takes the available elements. A slot whose element has not
+     * yet been published is observed as null, in which case the consumer stops and resumes from
+     * that position in a later drain. The clearing of the slot and the increment of the read count
+     * are lazy writes, as only the consumer writes to them.
+     */
+
+    /** The maximum number of elements per buffer. */
+    static final int BUFFER_SIZE = 16;
+
+    /** Mask value for indexing into the ring buffer. */
+    static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    @Override
+    protected Buffer<E> create(E e) {
+        return new RingBuffer<>(e);
+    }
+
+    /** A lossy ring buffer that is a stripe of the bounded buffer. */
+    static final class RingBuffer<E> extends PadBuffer implements Buffer<E> {
+        static final AtomicLongFieldUpdater<ReadCounterRef> READ =
+                AtomicLongFieldUpdater.newUpdater(ReadCounterRef.class, "readCounter");
+        static final AtomicLongFieldUpdater<WriteCounterRef> WRITE =
+                AtomicLongFieldUpdater.newUpdater(WriteCounterRef.class, "writeCounter");
+
+        final AtomicReferenceArray<E> buffer;
+
+        RingBuffer(E e) {
+            buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+            buffer.lazySet(0, e);
+            WRITE.lazySet(this, 1L);
+        }
+
+        @Override
+        public int offer(E e) {
+            long head = readCounter;
+            long tail = writeCounter;
+            long size = (tail - head);
+            if (size >= BUFFER_SIZE) {
+                return Buffer.FULL;
+            }
+            if (WRITE.compareAndSet(this, tail, tail + 1)) {
+                int index = (int) (tail & BUFFER_MASK);
+                buffer.lazySet(index, e);
+                return Buffer.SUCCESS;
+            }
+            return Buffer.FAILED;
+        }
+
+        @Override
+        public void drainTo(Consumer<E> consumer) {
+            long head = readCounter;
+            long tail = writeCounter;
+            long size = (tail - head);
+            if (size == 0) {
+                return;
+            }
+            do {
+                int index = (int) (head & BUFFER_MASK);
+                E e = buffer.get(index);
+                if (e == null) {
+                    // not published yet
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            } while (head != tail);
+            READ.lazySet(this, head);
+        }
+    }
+
+    /*
+     * The counters are declared in a chain of superclasses so that the padding between them is
+     * laid out in declaration order, as a class's own fields may be reordered by the JVM but are
+     * placed after those of its superclass. This keeps the consumer's read count and the
+     * producers' write count on separate cache lines, and apart from the neighboring objects.
+     */
+
+    /** The padding that precedes the read count. */
+    abstract static class PadReadCounter {
+        @SuppressWarnings("unused")
+        long p00, p01, p02, p03, p04, p05, p06, p07, p08, p09, p0a, p0b, p0c, p0d, p0e;
+    }
+
+    /** The read count, which is written only by the consumer. */
+    abstract static class ReadCounterRef extends PadReadCounter {
+        volatile long readCounter;
+    }
+
+    /** The padding between the read and write counts. */
+    abstract static class PadWriteCounter extends ReadCounterRef {
+        @SuppressWarnings("unused")
+        long p10, p11, p12, p13, p14, p15, p16, p17, p18, p19, p1a, p1b, p1c, p1d, p1e;
+    }
+
+    /** The write count, which is incremented by the producers. */
+    abstract static class WriteCounterRef extends PadWriteCounter {
+        volatile long writeCounter;
+    }
+
+    /** The padding that follows the write count. */
+    abstract static class PadBuffer extends WriteCounterRef {
+        @SuppressWarnings("unused")
+        long p20, p21, p22, p23, p24, p25, p26, p27, p28, p29, p2a, p2b, p2c, p2d, p2e;
+    }
+}
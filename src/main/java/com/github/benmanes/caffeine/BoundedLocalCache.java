@@ -0,0 +1,2156 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.github.benmanes.caffeine.AccessOrderDeque.AccessOrder;
+import com.github.benmanes.caffeine.AsyncLoadingCache.AsyncExpiry;
+import com.github.benmanes.caffeine.AsyncLoadingCache.AsyncWeigher;
+import com.github.benmanes.caffeine.WriteOrderDeque.WriteOrder;
+
+/**
+ * A hash table supporting full concurrency of retrievals, high expected concurrency for updates,
+ * and a maximum capacity to bound the map by. This implementation differs from
+ * {@link ConcurrentHashMap} in that it maintains a page replacement algorithm that is used to
+ * evict an entry when the map has exceeded its capacity. Unlike the <tt>Java Collections
+ * Framework</tt>, this map does not have a publicly visible constructor and instances are created
+ * through a {@link Builder}.
+ * <p>
+ * An entry is evicted from the map when the number of entries exceeds its <tt>maximum size</tt>
+ * threshold, or when the total weight of the entries exceeds its <tt>maximum weight</tt> if the
+ * entries are weighed by a {@link Weigher}. The map chooses the entry to evict by its recency and
+ * its frequency of use, using a policy that is updated without blocking the threads that read from
+ * the map. This retains the popular entries when a large number of entries are accessed only once,
+ * such as by a scan.
+ * <p>
+ * An entry may also expire after a fixed duration has elapsed since it was created or its value
+ * was last replaced, or since it was last accessed. Alternatively, an {@link Expiry} may compute
+ * a duration for each entry when it is created, updated, and read. An expired entry is no longer
+ * visible to the retrieval and update operations or to the views' iterators, but it may still be
+ * counted by {@link #size()} until it is removed during the map's periodic maintenance. The
+ * maintenance is performed as part of the read and write operations, so no background thread is
+ * required.
+ * <p>
+ * This class and its views and iterators implement all of the <em>optional</em> methods of the
+ * {@link Map} and {@link Iterator} interfaces. Like {@link java.util.Hashtable} but unlike
+ * {@link java.util.HashMap}, this class does <em>not</em> allow <tt>null</tt> to be used as a key
+ * or value. Unlike {@link java.util.LinkedHashMap}, this class does <em>not</em> provide
+ * predictable iteration order.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+@ThreadSafe
+final class BoundedLocalCache<K, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V>, Serializable {
+
+    /*
+     * This class performs a best-effort bounding of a ConcurrentHashMap using a page-replacement
+     * algorithm to determine which entries to evict when the capacity is exceeded.
+     *
+     * The page replacement algorithm's data structures are kept eventually consistent with the map.
+     * An update to the map and recording of reads may not be immediately reflected on the
+     * algorithm's data structures. These structures are guarded by a lock and operations are
+     * applied in batches to avoid lock contention. The penalty of applying the batches is spread
+     * across threads so that the amortized cost is slightly higher than performing just the
+     * ConcurrentHashMap operation.
+     *
+     * A memento of the reads and writes that were performed on the map are recorded in buffers.
+     * These buffers are drained at the first opportunity after a write or when a read buffer has
+     * accumulated enough pending reads. Due to the concurrent nature of the read and write
+     * operations a strict policy ordering is not possible, but is observably strict when single
+     * threaded.
+     *
+     * A read never takes a lock. It is recorded into a striped buffer of lossy ring buffers,
+     * which adds stripes when the readers contend so that threads are spread across them. A lost
+     * read only affects the recency ordering, so the buffer drops entries rather than block or
+     * retry when a stripe is full.
+     * A write is recorded into an unbounded queue, as losing one would corrupt the policy, and
+     * schedules a drain. A drain is performed by the thread that succeeds in a try-lock, while
+     * the other threads proceed without waiting for the lock.
+     *
+     * Due to a lack of a strict ordering guarantee, a task can be executed out-of-order, such as a
+     * removal followed by its addition. The state of the entry is encoded within the value's
+     * weight.
+     *
+     * Alive: The entry is in both the hash-table and the page replacement policy. This is
+     * represented by a positive weight.
+     *
+     * Retired: The entry is not in the hash-table and is pending removal from the page replacement
+     * policy. This is represented by a negative weight.
+     *
+     * Dead: The entry is not in the hash-table and is not in the page replacement policy. This is
+     * represented by a weight of zero.
+     *
+     * The Window TinyLfu page replacement algorithm [1] was chosen for its high hit rate across a
+     * broad range of workloads and its ability to be implemented with O(1) time complexity. A new
+     * entry is added to a small admission window, which is a Least Recently Used (LRU) queue that
+     * holds 1% of the capacity. An entry evicted from the window is a candidate for the main
+     * region, where the TinyLfu admission filter compares the candidate's frequency to that of the
+     * main region's victim and retains the one that is used more often. The frequencies are
+     * estimated by a compact count-min sketch that is periodically halved, so that the history of
+     * old accesses ages away. The window lets a burst of accesses to new entries build up their
+     * frequency before they compete for admission, while the filter keeps a scan of entries that
+     * are used only once from flushing the popular entries.
+     *
+     * The main region is a Segmented LRU [2], where an entry starts in the probation segment and is
+     * promoted to the protected segment when it is accessed again. The protected segment holds up
+     * to 80% of the main region and demotes its least recently used entries back to probation when
+     * it overflows. The victim is the least recently used entry in the probation segment, which
+     * was accessed only once since it entered the main region or was demoted.
+     *
+     * Expiration is performed in the same maintenance cycle as the eviction. The access-order
+     * deques hold the entries in the order of their last recorded access, so an entry that has
+     * expired after an access is found at the head of one of the three deques. The write-order
+     * deque holds the entries in the order of their last write, so the head is the first to expire
+     * after a write. The heads are removed while they have expired, which costs O(1) per entry
+     * and stops at the first entry that is still alive. As reads are recorded lossily, an entry
+     * may be accessed without being reordered, which may delay the removal of the expired entries
+     * behind it. That delay is not visible, as each operation checks the entry's timestamps
+     * itself and treats an expired entry as absent.
+     *
+     * A variable expiration cannot use a deque, as the entries are not ordered by the times when
+     * they expire. Instead the entries are scheduled on a hierarchical timer wheel, which is
+     * advanced to the current time during the maintenance cycle. A read that changes an entry's
+     * expiration time reschedules it when the read is applied to the policy, and an entry that was
+     * not rescheduled because its read was lost is rescheduled when its old bucket is expired.
+     *
+     * [1] TinyLFU: A Highly Efficient Cache Admission Policy
+     * http://arxiv.org/pdf/1512.00727.pdf
+     * [2] Caching strategies to improve disk system performance
+     * http://www.cs.utexas.edu/users/mootaz/cs372/Projects/Diskcache/segmented-lru.pdf
+     */
+
+    /** The number of CPUs */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** The maximum weighted capacity of the map. */
+    static final long MAXIMUM_CAPACITY = Long.MAX_VALUE - Integer.MAX_VALUE;
+
+    /** The maximum number of write operations to perform per amortized drain. */
+    static final int WRITE_BUFFER_DRAIN_THRESHOLD = 16;
+
+    /** The percent of the maximum weighted capacity dedicated to the main space. */
+    static final double PERCENT_MAIN = 0.99d;
+
+    /** The percent of the maximum weighted capacity dedicated to the main's protected space. */
+    static final double PERCENT_MAIN_PROTECTED = 0.80d;
+
+    /**
+     * The minimum frequency of a candidate that is rejected by the admission filter for it to be
+     * admitted at random instead, which protects against an attack that inflates the victim's
+     * frequency by exploiting hash collisions in the sketch.
+     */
+    static final int ADMIT_HASHDOS_THRESHOLD = 6;
+
+    /** The duration value indicating that an expiration policy is not used. */
+    static final long UNSET_DURATION = -1L;
+
+    /** The maximum duration before an entry expires, which is approximately 146 years. */
+    static final long MAXIMUM_EXPIRY = (Long.MAX_VALUE >> 1);
+
+    // The backing data store holding the key-value associations
+    final ConcurrentHashMap<K, Node<K, V>> data;
+
+    // These fields provide support to bound the map by a maximum capacity
+    @GuardedBy("evictionLock")
+    final AccessOrderDeque<Node<K, V>> accessOrderWindowDeque;
+    @GuardedBy("evictionLock")
+    final AccessOrderDeque<Node<K, V>> accessOrderProbationDeque;
+    @GuardedBy("evictionLock")
+    final AccessOrderDeque<Node<K, V>> accessOrderProtectedDeque;
+    @GuardedBy("evictionLock")
+    final FrequencySketch<K> sketch;
+
+    // These fields provide support to expire the entries after a duration
+    @GuardedBy("evictionLock")
+    final WriteOrderDeque<Node<K, V>> writeOrderDeque;
+    @GuardedBy("evictionLock")
+    final @Nullable TimerWheel<K, V> timerWheel;
+    final @Nullable Expiry<K, V> expiry;
+    final long expireAfterAccessNanos;
+    final long expireAfterWriteNanos;
+    final long refreshAfterWriteNanos;
+    final boolean async;
+    final Ticker ticker;
+
+    // These fields provide support to record the statistics
+    final StatsCounter statsCounter;
+    final Ticker statsTicker;
+
+    final Weigher<K, V> weigher;
+    @GuardedBy("evictionLock") // must write under lock
+    final AtomicLong weightedSize;
+    @GuardedBy("evictionLock") // must write under lock
+    final AtomicLong capacity;
+
+    @GuardedBy("evictionLock")
+    long windowWeightedSize;
+    @GuardedBy("evictionLock")
+    long windowMaximum;
+    @GuardedBy("evictionLock")
+    long mainProtectedWeightedSize;
+    @GuardedBy("evictionLock")
+    long mainProtectedMaximum;
+
+    final Lock evictionLock;
+    final Queue<Runnable> writeBuffer;
+    final Buffer<Node<K, V>> readBuffer;
+    final AtomicReference<DrainStatus> drainStatus;
+
+    transient Set<K> keySet;
+    transient Collection<V> values;
+    transient Set<Entry<K, V>> entrySet;
+
+    /** Creates an instance based on the builder's configuration. */
+    BoundedLocalCache(Builder<K, V> builder) {
+        // The data store and its maximum capacity
+        data = new ConcurrentHashMap<>(builder.initialCapacity);
+        long maximum = (builder.weigher == null) ? builder.maximumSize : builder.maximumWeight;
+        capacity = new AtomicLong(Math.min(maximum, MAXIMUM_CAPACITY));
+
+        // The eviction support
+        weigher = (builder.weigher == null) ? Weigher.singleton() : builder.weigher;
+        weightedSize = new AtomicLong();
+        evictionLock = new ReentrantLock();
+        sketch = new FrequencySketch<>();
+        accessOrderWindowDeque = new AccessOrderDeque<>();
+        accessOrderProbationDeque = new AccessOrderDeque<>();
+        accessOrderProtectedDeque = new AccessOrderDeque<>();
+        setRegionMaximums(capacity.get());
+
+        // The expiration support
+        ticker = builder.ticker;
+        expiry = builder.expiry;
+        refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        async = builder.async;
+        writeOrderDeque = new WriteOrderDeque<>();
+        timerWheel = (expiry == null) ? null : new TimerWheel<>(this::evictEntry, ticker.read());
+        expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        expireAfterWriteNanos = builder.expireAfterWriteNanos;
+
+        // The statistics support
+        statsCounter = builder.recordStats ? StatsCounter.striped() : StatsCounter.disabled();
+        statsTicker = builder.recordStats ? ticker : Ticker.disabledTicker();
+
+        writeBuffer = new ConcurrentLinkedQueue<>();
+        readBuffer = new BoundedBuffer<>();
+        drainStatus = new AtomicReference<>(DrainStatus.IDLE);
+    }
+
+    /* ---------------- Eviction Support -------------- */
+
+    /**
+     * Retrieves the maximum weighted capacity of the map.
+     *
+     * @return the maximum weighted capacity
+     */
+    public long capacity() {
+        return capacity.get();
+    }
+
+    /**
+     * Sets the maximum weighted capacity of the map and eagerly evicts entries until it shrinks to
+     * the appropriate size.
+     *
+     * @param capacity the maximum weighted capacity of the map
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public void setCapacity(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        evictionLock.lock();
+        try {
+            this.capacity.lazySet(Math.min(capacity, MAXIMUM_CAPACITY));
+            setRegionMaximums(this.capacity.get());
+            if (!sketch.isNotInitialized()) {
+                sketch.ensureCapacity(this.capacity.get());
+            }
+            drainBuffers();
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the maximum weighted sizes of the admission window and the main region's protected
+     * segment as a fraction of the capacity.
+     *
+     * @param capacity the maximum weighted capacity of the map
+     */
+    @GuardedBy("evictionLock")
+    void setRegionMaximums(long capacity) {
+        long mainMaximum = (long) (PERCENT_MAIN * capacity);
+        windowMaximum = capacity - mainMaximum;
+        mainProtectedMaximum = (long) (PERCENT_MAIN_PROTECTED * mainMaximum);
+    }
+
+    /**
+     * Evicts the entry if its weight exceeds the capacity, as it cannot be retained without
+     * evicting every other entry.
+     *
+     * @param node the entry that was added or updated
+     */
+    @GuardedBy("evictionLock")
+    void evictIfOversized(Node<K, V> node) {
+        if ((node.policyWeight > capacity.get()) && node.get().isAlive()) {
+            evictEntry(node);
+        }
+    }
+
+    /** Determines whether the map has exceeded its capacity. */
+    @GuardedBy("evictionLock")
+    boolean hasOverflowed() {
+        return weightedSize.get() > capacity.get();
+    }
+
+    /**
+     * Evicts entries from the map while it exceeds the capacity. The entries that overflow the
+     * admission window become candidates for the main region, where the admission filter decides
+     * whether a candidate or the main region's victim is evicted.
+     */
+    @GuardedBy("evictionLock")
+    void evict() {
+        int candidates = evictFromWindow();
+        evictFromMain(candidates);
+    }
+
+    /**
+     * Moves the entries that exceed the admission window's maximum to the tail of the probation
+     * segment, where they are candidates for admission into the main region.
+     *
+     * @return the number of candidates that were moved into the main region
+     */
+    @GuardedBy("evictionLock")
+    int evictFromWindow() {
+        int candidates = 0;
+        while (windowWeightedSize > windowMaximum) {
+            Node<K, V> node = accessOrderWindowDeque.pollFirst();
+            if (node == null) {
+                break;
+            }
+            node.queueType = Node.PROBATION;
+            accessOrderProbationDeque.add(node);
+            windowWeightedSize -= node.policyWeight;
+            candidates++;
+        }
+        return candidates;
+    }
+
+    /**
+     * Evicts entries from the main region while the map exceeds its capacity. The candidates are
+     * at the tail of the probation segment and the victims at its head. Each candidate is compared
+     * to the victim and the one with the lower estimated frequency is evicted. The victim and the
+     * candidate are tracked by separate cursors that advance past the entry that survived a
+     * comparison, so that every candidate is compared against a victim rather than a favored
+     * entry repeatedly consuming the comparisons. Once the candidates are exhausted the victims
+     * are evicted, falling back to the protected segment and the window when the probation
+     * segment is empty.
+     *
+     * @param candidates the number of candidates that were moved into the main region
+     */
+    @GuardedBy("evictionLock")
+    void evictFromMain(int candidates) {
+        int victimQueue = Node.PROBATION;
+        Node<K, V> victim = accessOrderProbationDeque.peekFirst();
+        Node<K, V> candidate = accessOrderProbationDeque.peekLast();
+        while (hasOverflowed()) {
+            // Stop trying to evict candidates and always prefer the victim
+            if (candidates <= 0) {
+                candidate = null;
+            }
+
+            // Try evicting from the protected segment and the window
+            if ((candidate == null) && (victim == null)) {
+                if (victimQueue == Node.PROBATION) {
+                    victim = accessOrderProtectedDeque.peekFirst();
+                    victimQueue = Node.PROTECTED;
+                    continue;
+                } else if (victimQueue == Node.PROTECTED) {
+                    victim = accessOrderWindowDeque.peekFirst();
+                    victimQueue = Node.WINDOW;
+                    continue;
+                }
+
+                // If weighted values are used, then the pending operations will adjust the size
+                // to reflect the correct weight
+                return;
+            }
+
+            // Evict immediately if only one of the entries is present
+            if (victim == null) {
+                Node<K, V> evict = candidate;
+                candidate = candidate.getPreviousInAccessOrder();
+                candidates--;
+                evictEntry(evict);
+                continue;
+            } else if (candidate == null) {
+                Node<K, V> evict = victim;
+                victim = victim.getNextInAccessOrder();
+                evictEntry(evict);
+                continue;
+            }
+
+            // Evict immediately if both selected the same entry
+            if (candidate == victim) {
+                victim = victim.getNextInAccessOrder();
+                evictEntry(candidate);
+                candidates--;
+                candidate = null;
+                continue;
+            }
+
+            // A candidate that cannot fit is evicted rather than flushing the victims
+            if (candidate.policyWeight > capacity.get()) {
+                Node<K, V> evict = candidate;
+                candidate = candidate.getPreviousInAccessOrder();
+                candidates--;
+                evictEntry(evict);
+                continue;
+            }
+
+            // Evict the entry with the lower frequency and advance past the survivor
+            candidates--;
+            if (admit(candidate.key, victim.key)) {
+                Node<K, V> evict = victim;
+                victim = victim.getNextInAccessOrder();
+                evictEntry(evict);
+                candidate = candidate.getPreviousInAccessOrder();
+            } else {
+                Node<K, V> evict = candidate;
+                candidate = candidate.getPreviousInAccessOrder();
+                evictEntry(evict);
+            }
+        }
+    }
+
+    /**
+     * Determines if the candidate should be accepted into the main space, as determined by its
+     * frequency relative to the victim. A small amount of randomness is used to protect against
+     * hash collision attacks, where the victim's frequency is artificially raised so that no new
+     * entries are admitted.
+     *
+     * @param candidateKey the key for the entry being proposed for long term retention
+     * @param victimKey the key for the entry chosen by the eviction policy for replacement
+     * @return if the candidate should be admitted and the victim ejected
+     */
+    @GuardedBy("evictionLock")
+    boolean admit(K candidateKey, K victimKey) {
+        int victimFreq = sketch.frequency(victimKey);
+        int candidateFreq = sketch.frequency(candidateKey);
+        if (candidateFreq > victimFreq) {
+            return true;
+        } else if (candidateFreq < ADMIT_HASHDOS_THRESHOLD) {
+            return false;
+        }
+        int random = ThreadLocalRandom.current().nextInt();
+        return ((random & 127) == 0);
+    }
+
+    /**
+     * Evicts the entry by removing it from the page replacement policy and the data store.
+     *
+     * @param node the entry to evict
+     */
+    @GuardedBy("evictionLock")
+    void evictEntry(Node<K, V> node) {
+        // The victim is eagerly unlinked before the removal task so that if an eviction is still
+        // required then a new victim will be chosen for removal. If the eviction fails due to a
+        // concurrent removal of the victim, that removal may cancel out the addition that
+        // triggered this eviction.
+        removeFromPolicy(node);
+        if (data.remove(node.key, node)) {
+            statsCounter.recordEviction();
+        }
+        makeDead(node);
+    }
+
+    /**
+     * Unlinks the node from the region of the page replacement policy that it resides in, if it is
+     * linked, and adjusts the region's weighted size.
+     *
+     * @param node the entry in the page replacement policy
+     */
+    @GuardedBy("evictionLock")
+    void removeFromPolicy(Node<K, V> node) {
+        if (node.queueType == Node.WINDOW) {
+            if (accessOrderWindowDeque.remove(node)) {
+                windowWeightedSize -= node.policyWeight;
+            }
+        } else if (node.queueType == Node.PROBATION) {
+            accessOrderProbationDeque.remove(node);
+        } else if (accessOrderProtectedDeque.remove(node)) {
+            mainProtectedWeightedSize -= node.policyWeight;
+        }
+        if (expiresAfterWrite()) {
+            writeOrderDeque.remove(node);
+        }
+        if (expiresVariable()) {
+            timerWheel.deschedule(node);
+        }
+    }
+
+    /* ---------------- Expiration Support -------------- */
+
+    /** Returns if the entries expire after a duration since they were last accessed. */
+    boolean expiresAfterAccess() {
+        return (expireAfterAccessNanos >= 0);
+    }
+
+    /** Returns if the entries expire after a duration since they were last written to. */
+    boolean expiresAfterWrite() {
+        return (expireAfterWriteNanos >= 0);
+    }
+
+    /** Returns if the entries expire after a duration computed by the {@link Expiry}. */
+    boolean expiresVariable() {
+        return (expiry != null);
+    }
+
+    /** Returns if the entries expire after a duration. */
+    boolean expires() {
+        return expiresAfterAccess() || expiresAfterWrite() || expiresVariable();
+    }
+
+    /** Returns if the entries are reloaded by a loading cache after a duration since written. */
+    boolean refreshes() {
+        return (refreshAfterWriteNanos >= 0);
+    }
+
+    /** Returns the current time, or zero if the ticker does not need to be read. */
+    long now() {
+        return (expires() || refreshes()) ? ticker.read() : 0L;
+    }
+
+    /**
+     * Returns if the entry has expired. An entry whose value is still being loaded does not
+     * expire, as its lifetime starts when the load completes and the entry is updated.
+     *
+     * @param node the entry in the page replacement policy
+     * @param now the current time, in nanoseconds
+     * @return if the entry has expired after its last access or write
+     */
+    boolean hasExpired(Node<K, V> node, long now) {
+        if (node.isPending()) {
+            return false;
+        }
+        return (expiresAfterAccess() && (now - node.getAccessTime() >= expireAfterAccessNanos))
+                || (expiresAfterWrite() && (now - node.getWriteTime() >= expireAfterWriteNanos))
+                || (expiresVariable() && (now - node.getVariableTime() >= 0));
+    }
+
+    /**
+     * Returns if the value is a future of an asynchronous cache whose load is still in progress.
+     *
+     * @param value the entry's value
+     * @return if the value is not yet available
+     */
+    boolean isPending(V value) {
+        return async && !((CompletableFuture<?>) value).isDone();
+    }
+
+    /**
+     * Returns the time when a newly created entry expires.
+     *
+     * @param node the entry in the page replacement policy
+     * @param value the entry's value
+     * @param now the current time, in nanoseconds
+     * @return the expiration time, in nanoseconds
+     */
+    long expireAfterCreate(Node<K, V> node, V value, long now) {
+        long duration = expiry.expireAfterCreate(node.key, value, now);
+        return now + boundedDuration(duration);
+    }
+
+    /**
+     * Returns the time when an entry expires after its value was replaced. If the entry was
+     * written with a pending value, then its expiration is computed as if it was created now.
+     *
+     * @param node the entry in the page replacement policy
+     * @param value the entry's new value
+     * @param now the current time, in nanoseconds
+     * @return the expiration time, in nanoseconds
+     */
+    long expireAfterUpdate(Node<K, V> node, V value, long now) {
+        long duration;
+        if (node.isPending()) {
+            duration = expiry.expireAfterCreate(node.key, value, now);
+        } else {
+            long currentDuration = Math.max(0L, node.getVariableTime() - now);
+            duration = expiry.expireAfterUpdate(node.key, value, now, currentDuration);
+        }
+        return now + boundedDuration(duration);
+    }
+
+    /**
+     * Returns the time when an entry expires after it was read.
+     *
+     * @param node the entry in the page replacement policy
+     * @param value the entry's value
+     * @param now the current time, in nanoseconds
+     * @return the expiration time, in nanoseconds
+     */
+    long expireAfterRead(Node<K, V> node, V value, long now) {
+        long currentDuration = Math.max(0L, node.getVariableTime() - now);
+        long duration = expiry.expireAfterRead(node.key, value, now, currentDuration);
+        return now + boundedDuration(duration);
+    }
+
+    /** Returns the duration restricted to the range that the time arithmetic supports. */
+    static long boundedDuration(long duration) {
+        return Math.max(0L, Math.min(duration, MAXIMUM_EXPIRY));
+    }
+
+    /**
+     * Removes the entries that have expired from the head of the access and write orders, and
+     * from the timer wheel's buckets that have elapsed. An entry at the head of a deque that is
+     * still being loaded is moved to the tail, as its write and access times are reset when the
+     * load completes, and the scan stops if it returns to that entry.
+     */
+    @GuardedBy("evictionLock")
+    void expireEntries() {
+        if (!expires()) {
+            return;
+        }
+
+        long now = ticker.read();
+        if (expiresAfterAccess()) {
+            expireAfterAccessEntries(accessOrderWindowDeque, now);
+            expireAfterAccessEntries(accessOrderProbationDeque, now);
+            expireAfterAccessEntries(accessOrderProtectedDeque, now);
+        }
+        if (expiresAfterWrite()) {
+            Node<K, V> firstPending = null;
+            for (;;) {
+                Node<K, V> node = writeOrderDeque.peekFirst();
+                if ((node == null) || (node == firstPending)
+                        || (now - node.getWriteTime() < expireAfterWriteNanos)) {
+                    break;
+                } else if (node.isPending()) {
+                    firstPending = (firstPending == null) ? node : firstPending;
+                    writeOrderDeque.moveToBack(node);
+                } else {
+                    evictEntry(node);
+                }
+            }
+        }
+        if (expiresVariable()) {
+            timerWheel.advance(now);
+        }
+    }
+
+    /**
+     * Removes the entries that have expired after their last access from the head of the deque.
+     * An entry that is still being loaded is moved to the tail, so that it does not hold back the
+     * expiration of the entries behind it.
+     *
+     * @param deque the access-ordered region of the page replacement policy
+     * @param now the current time, in nanoseconds
+     */
+    @GuardedBy("evictionLock")
+    void expireAfterAccessEntries(AccessOrderDeque<Node<K, V>> deque, long now) {
+        Node<K, V> firstPending = null;
+        for (;;) {
+            Node<K, V> node = deque.peekFirst();
+            if ((node == null) || (node == firstPending)
+                    || (now - node.getAccessTime() < expireAfterAccessNanos)) {
+                break;
+            } else if (node.isPending()) {
+                firstPending = (firstPending == null) ? node : firstPending;
+                deque.moveToBack(node);
+            } else {
+                evictEntry(node);
+            }
+        }
+    }
+
+    /* ---------------- Statistics Support -------------- */
+
+    /** Returns whether the statistics are being recorded. */
+    boolean isRecordingStats() {
+        return (statsCounter != StatsCounter.disabled());
+    }
+
+    /**
+     * Returns a snapshot of the statistics that were recorded since the map was created. A lookup
+     * by {@link #get} is recorded as a hit or a miss, and an entry that is discarded by the size
+     * bound or by expiration is recorded as an eviction. The other lookups, such as
+     * {@link #getQuietly} and {@link #containsKey}, are not recorded. If the statistics are not
+     * enabled by {@link Builder#recordStats()} then all of the counts are zero.
+     *
+     * @return a snapshot of the statistics
+     */
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    /* ---------------- Buffer Support -------------- */
+
+    /**
+     * Performs the post-processing work required after a read.
+     *
+     * @param node the entry in the page replacement policy
+     * @param now the current time, in nanoseconds
+     */
+    void afterRead(Node<K, V> node, long now) {
+        if (expiresAfterAccess()) {
+            node.setAccessTime(now);
+        }
+        if (expiresVariable()) {
+            node.setVariableTime(expireAfterRead(node, node.getValue(), now));
+        }
+        boolean delayable = (readBuffer.offer(node) != Buffer.FULL);
+        drainOnReadIfNeeded(delayable);
+    }
+
+    /**
+     * Attempts to drain the buffers if it is determined to be needed when post-processing a read.
+     *
+     * @param delayable if the read buffer has room for more reads, so a drain may be delayed
+     */
+    void drainOnReadIfNeeded(boolean delayable) {
+        DrainStatus status = drainStatus.get();
+        if (status.shouldDrainBuffers(delayable)) {
+            tryToDrainBuffers();
+        }
+    }
+
+    /**
+     * Performs the post-processing work required after a write.
+     *
+     * @param task the pending operation to be applied
+     */
+    void afterWrite(Runnable task) {
+        writeBuffer.add(task);
+        scheduleDrainBuffers();
+    }
+
+    /**
+     * Schedules the buffers to be drained and attempts to perform it, such as when a write is
+     * pending or an expired entry was observed.
+     */
+    void scheduleDrainBuffers() {
+        drainStatus.lazySet(DrainStatus.REQUIRED);
+        tryToDrainBuffers();
+    }
+
+    /**
+     * Attempts to acquire the eviction lock and apply the pending operations, up to the amortized
+     * threshold, to the page replacement policy.
+     */
+    void tryToDrainBuffers() {
+        if (evictionLock.tryLock()) {
+            try {
+                drainStatus.lazySet(DrainStatus.PROCESSING);
+                drainBuffers();
+            } finally {
+                drainStatus.compareAndSet(DrainStatus.PROCESSING, DrainStatus.IDLE);
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drains the read and write buffers up to an amortized threshold and then removes the expired
+     * entries.
+     */
+    @GuardedBy("evictionLock")
+    void drainBuffers() {
+        drainReadBuffer();
+        drainWriteBuffer();
+        expireEntries();
+    }
+
+    /** Drains the read buffer, whose stripes are each bounded by their capacity. */
+    @GuardedBy("evictionLock")
+    void drainReadBuffer() {
+        readBuffer.drainTo(this::applyRead);
+    }
+
+    /** Records the access in the frequency sketch and updates the node's location in the policy. */
+    @GuardedBy("evictionLock")
+    void applyRead(Node<K, V> node) {
+        // An entry may be scheduled for reordering despite having been removed. This can occur when
+        // the entry was concurrently read while a writer was removing it. If the entry is no longer
+        // linked then it does not need to be processed.
+        sketch.increment(node.key);
+        if (node.queueType == Node.WINDOW) {
+            if (accessOrderWindowDeque.contains(node)) {
+                accessOrderWindowDeque.moveToBack(node);
+            }
+        } else if (node.queueType == Node.PROBATION) {
+            if (accessOrderProbationDeque.contains(node)) {
+                reorderProbation(node);
+            }
+        } else if (accessOrderProtectedDeque.contains(node)) {
+            accessOrderProtectedDeque.moveToBack(node);
+        }
+        if (expiresVariable()) {
+            timerWheel.reschedule(node);
+        }
+    }
+
+    /** Promotes the entry from the probation segment to the protected segment on an access. */
+    @GuardedBy("evictionLock")
+    void reorderProbation(Node<K, V> node) {
+        accessOrderProbationDeque.remove(node);
+        accessOrderProtectedDeque.add(node);
+        node.queueType = Node.PROTECTED;
+        mainProtectedWeightedSize += node.policyWeight;
+
+        // Demote the least recently used entries if the protected segment overflows
+        while (mainProtectedWeightedSize > mainProtectedMaximum) {
+            Node<K, V> demoted = accessOrderProtectedDeque.pollFirst();
+            if (demoted == null) {
+                break;
+            }
+            demoted.queueType = Node.PROBATION;
+            accessOrderProbationDeque.add(demoted);
+            mainProtectedWeightedSize -= demoted.policyWeight;
+        }
+    }
+
+    /** Drains the write buffer up to an amortized threshold. */
+    @GuardedBy("evictionLock")
+    void drainWriteBuffer() {
+        for (int i = 0; i < WRITE_BUFFER_DRAIN_THRESHOLD; i++) {
+            Runnable task = writeBuffer.poll();
+            if (task == null) {
+                break;
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * Attempts to transition the node from the <tt>alive</tt> state to the <tt>retired</tt> state.
+     *
+     * @param node the entry in the page replacement policy
+     * @param expect the expected weighted value
+     * @return if successful
+     */
+    boolean tryToRetire(Node<K, V> node, WeightedValue<V> expect) {
+        if (expect.isAlive()) {
+            WeightedValue<V> retired = new WeightedValue<V>(expect.value, -expect.weight);
+            return node.compareAndSet(expect, retired);
+        }
+        return false;
+    }
+
+    /**
+     * Atomically transitions the node from the <tt>alive</tt> state to the <tt>retired</tt> state,
+     * if a valid transition.
+     *
+     * @param node the entry in the page replacement policy
+     */
+    void makeRetired(Node<K, V> node) {
+        for (;;) {
+            WeightedValue<V> current = node.get();
+            if (!current.isAlive()) {
+                return;
+            }
+            WeightedValue<V> retired = new WeightedValue<V>(current.value, -current.weight);
+            if (node.compareAndSet(current, retired)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Atomically transitions the node to the <tt>dead</tt> state and decrements the
+     * <tt>weightedSize</tt>.
+     *
+     * @param node the entry in the page replacement policy
+     */
+    @GuardedBy("evictionLock")
+    void makeDead(Node<K, V> node) {
+        for (;;) {
+            WeightedValue<V> current = node.get();
+            WeightedValue<V> dead = new WeightedValue<V>(current.value, 0);
+            if (node.compareAndSet(current, dead)) {
+                weightedSize.lazySet(weightedSize.get() - Math.abs(current.weight));
+                return;
+            }
+        }
+    }
+
+    /** Adds the node to the page replacement policy. */
+    final class AddTask implements Runnable {
+        final Node<K, V> node;
+        final int weight;
+
+        AddTask(Node<K, V> node, int weight) {
+            this.weight = weight;
+            this.node = node;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public void run() {
+            weightedSize.lazySet(weightedSize.get() + weight);
+
+            // Lazily initialize the sketch when the map is close to its maximum size
+            if (sketch.isNotInitialized() && (weightedSize.get() >= (capacity.get() >>> 1))) {
+                sketch.ensureCapacity(capacity.get());
+            }
+            sketch.increment(node.key);
+
+            // ignore out-of-order write operations
+            if (node.get().isAlive()) {
+                // An update may have been applied first, so its weight difference is retained
+                node.policyWeight += weight;
+                windowWeightedSize += node.policyWeight;
+                accessOrderWindowDeque.add(node);
+                if (expiresAfterWrite()) {
+                    writeOrderDeque.add(node);
+                }
+                if (expiresVariable()) {
+                    timerWheel.schedule(node);
+                }
+                evictIfOversized(node);
+                evict();
+            }
+        }
+    }
+
+    /** Removes a node from the page replacement policy. */
+    final class RemovalTask implements Runnable {
+        final Node<K, V> node;
+
+        RemovalTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public void run() {
+            // add may not have been processed yet
+            removeFromPolicy(node);
+            makeDead(node);
+        }
+    }
+
+    /**
+     * Updates the weighted size and the weight of the entry's region, reorders the entry, and
+     * evicts an entry on overflow.
+     */
+    final class UpdateTask implements Runnable {
+        final int weightDifference;
+        final Node<K, V> node;
+
+        UpdateTask(Node<K, V> node, int weightDifference) {
+            this.weightDifference = weightDifference;
+            this.node = node;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public void run() {
+            weightedSize.lazySet(weightedSize.get() + weightDifference);
+            node.policyWeight += weightDifference;
+            if (node.queueType == Node.WINDOW) {
+                if (accessOrderWindowDeque.contains(node)) {
+                    windowWeightedSize += weightDifference;
+                }
+            } else if (node.queueType == Node.PROTECTED) {
+                if (accessOrderProtectedDeque.contains(node)) {
+                    mainProtectedWeightedSize += weightDifference;
+                }
+            }
+            applyRead(node);
+            if (expiresAfterWrite() && writeOrderDeque.contains(node)) {
+                writeOrderDeque.moveToBack(node);
+            }
+            evictIfOversized(node);
+            evict();
+        }
+    }
+
+    /* ---------------- Concurrent Map Support -------------- */
+
+    @Override
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Returns the weighted size of this map.
+     *
+     * @return the combined weight of the values in this map
+     */
+    public long weightedSize() {
+        return Math.max(0, weightedSize.get());
+    }
+
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            // Discard all pending reads
+            readBuffer.drainTo(node -> {});
+
+            // Apply all pending writes, as an add task would otherwise re-link its entry into the
+            // policy after it was discarded
+            Runnable task;
+            while ((task = writeBuffer.poll()) != null) {
+                task.run();
+            }
+
+            // Discard all entries in the policy, which includes a removed entry whose removal task
+            // has not yet been published
+            for (AccessOrderDeque<Node<K, V>> deque : Arrays.asList(accessOrderWindowDeque,
+                    accessOrderProbationDeque, accessOrderProtectedDeque)) {
+                Node<K, V> node;
+                while ((node = deque.pollFirst()) != null) {
+                    if (expiresVariable()) {
+                        timerWheel.deschedule(node);
+                    }
+                    data.remove(node.key, node);
+                    makeDead(node);
+                }
+            }
+            writeOrderDeque.clear();
+            windowWeightedSize = 0L;
+            mainProtectedWeightedSize = 0L;
+
+            // Discard the entries whose add task has not yet been published, which is ignored when
+            // it is applied as the entry is dead
+            for (Node<K, V> node : data.values()) {
+                if (expiresVariable()) {
+                    timerWheel.deschedule(node);
+                }
+                data.remove(node.key, node);
+                makeDead(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Node<K, V> node = data.get(key);
+        return (node != null) && !hasExpired(node, now());
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        requireNonNull(value);
+
+        long now = now();
+        for (Node<K, V> node : data.values()) {
+            if (node.getValue().equals(value) && !hasExpired(node, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public @Nullable V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        long now = now();
+        if (hasExpired(node, now)) {
+            statsCounter.recordMisses(1);
+            scheduleDrainBuffers();
+            return null;
+        }
+        statsCounter.recordHits(1);
+        afterRead(node, now);
+        return node.getValue();
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null} if this map contains
+     * no mapping for the key. This method differs from {@link #get(Object)} in that it does not
+     * record the operation with the page replacement policy.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or {@code null} if this map contains
+     *     no mapping for the key
+     * @throws NullPointerException if the specified key is null
+     */
+    public @Nullable V getQuietly(Object key) {
+        Node<K, V> node = data.get(key);
+        return ((node == null) || hasExpired(node, now())) ? null : node.getValue();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * Adds a node to the list and the data store. If an existing node is found, then its value is
+     * updated if allowed. An existing node that has expired is treated as absent, so it is replaced
+     * by the new node as if it had been removed.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @param onlyIfAbsent a write is performed only if the key is not already associated with a
+     *        value
+     * @return the prior value in the data store or null if no mapping was found
+     */
+    @Nullable V put(K key, V value, boolean onlyIfAbsent) {
+        requireNonNull(key);
+        requireNonNull(value);
+
+        long now = now();
+        int weight = weigh(key, value);
+        WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
+        Node<K, V> node = new Node<K, V>(key, weightedValue, now);
+        node.setPending(isPending(value));
+        if (expiresVariable()) {
+            node.setVariableTime(expireAfterCreate(node, value, now));
+        }
+
+        for (;;) {
+            Node<K, V> prior = data.putIfAbsent(node.key, node);
+            if (prior == null) {
+                afterWrite(new AddTask(node, weight));
+                return null;
+            }
+            if (hasExpired(prior, now)) {
+                // The expired node is retired and swapped out, so that a concurrent expiration
+                // cannot remove the new value. If either step fails then the node was updated or
+                // removed concurrently, and the put is retried.
+                if (tryToRetire(prior, prior.get()) && data.replace(key, prior, node)) {
+                    afterWrite(new RemovalTask(prior));
+                    afterWrite(new AddTask(node, weight));
+                    return null;
+                }
+                continue;
+            } else if (onlyIfAbsent) {
+                afterRead(prior, now);
+                return prior.getValue();
+            }
+            for (;;) {
+                WeightedValue<V> oldWeightedValue = prior.get();
+                if (!oldWeightedValue.isAlive()) {
+                    break;
+                }
+
+                if (prior.compareAndSet(oldWeightedValue, weightedValue)) {
+                    afterUpdate(prior, value, weight - oldWeightedValue.weight, now);
+                    return oldWeightedValue.value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the weight of the entry, as computed by the weigher.
+     *
+     * @param key the entry's key
+     * @param value the entry's value
+     * @return the entry's weight
+     * @throws IllegalArgumentException if the weigher returned a weight that is not positive
+     */
+    int weigh(K key, V value) {
+        int weight = weigher.weigh(key, value);
+        if (weight < 1) {
+            throw new IllegalArgumentException();
+        }
+        return weight;
+    }
+
+    /**
+     * Performs the post-processing work required after the value of an existing entry was
+     * replaced. The entry's write and expiration times are refreshed and, if the weight changed or
+     * the entries expire after a write or a variable duration, the update is scheduled to reorder
+     * the entry in the policy.
+     *
+     * @param node the entry in the page replacement policy
+     * @param value the entry's new value
+     * @param weightedDifference the difference between the new and old weights
+     * @param now the current time, in nanoseconds
+     */
+    void afterUpdate(Node<K, V> node, V value, int weightedDifference, long now) {
+        if (expiresAfterWrite() || refreshes()) {
+            node.setWriteTime(now);
+        }
+        if (expiresVariable()) {
+            node.setVariableTime(expireAfterUpdate(node, value, now));
+        }
+        node.setPending(isPending(value));
+        if ((weightedDifference == 0) && !expiresAfterWrite() && !expiresVariable()) {
+            afterRead(node, now);
+        } else {
+            if (expiresAfterAccess()) {
+                node.setAccessTime(now);
+            }
+            afterWrite(new UpdateTask(node, weightedDifference));
+        }
+    }
+
+    @Override
+    public @Nullable V remove(Object key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+
+        makeRetired(node);
+        afterWrite(new RemovalTask(node));
+        return hasExpired(node, now()) ? null : node.getValue();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Node<K, V> node = data.get(key);
+        if ((node == null) || (value == null)) {
+            return false;
+        }
+
+        WeightedValue<V> weightedValue = node.get();
+        for (;;) {
+            if (weightedValue.contains(value) && !hasExpired(node, now())) {
+                if (tryToRetire(node, weightedValue)) {
+                    if (data.remove(key, node)) {
+                        afterWrite(new RemovalTask(node));
+                        return true;
+                    }
+                } else {
+                    weightedValue = node.get();
+                    if (weightedValue.isAlive()) {
+                        // retry as an intermediate update may have replaced the value with
+                        // an equal instance that has a different reference identity
+                        continue;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public @Nullable V replace(K key, V value) {
+        requireNonNull(key);
+        requireNonNull(value);
+
+        long now = now();
+        int weight = weigh(key, value);
+        WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
+
+        Node<K, V> node = data.get(key);
+        if ((node == null) || hasExpired(node, now)) {
+            return null;
+        }
+        for (;;) {
+            WeightedValue<V> oldWeightedValue = node.get();
+            if (!oldWeightedValue.isAlive()) {
+                return null;
+            }
+            if (node.compareAndSet(oldWeightedValue, weightedValue)) {
+                afterUpdate(node, value, weight - oldWeightedValue.weight, now);
+                return oldWeightedValue.value;
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        requireNonNull(key);
+        requireNonNull(oldValue);
+        requireNonNull(newValue);
+
+        long now = now();
+        int weight = weigh(key, newValue);
+        WeightedValue<V> newWeightedValue = new WeightedValue<V>(newValue, weight);
+
+        Node<K, V> node = data.get(key);
+        if ((node == null) || hasExpired(node, now)) {
+            return false;
+        }
+        for (;;) {
+            WeightedValue<V> weightedValue = node.get();
+            if (!weightedValue.isAlive() || !weightedValue.contains(oldValue)) {
+                return false;
+            }
+            if (node.compareAndSet(weightedValue, newWeightedValue)) {
+                afterUpdate(node, newValue, weight - weightedValue.weight, now);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        return (ks == null) ? (keySet = new KeySet()) : ks;
+    }
+
+    @Override
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs == null) ? (values = new Values()) : vs;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> es = entrySet;
+        return (es == null) ? (entrySet = new EntrySet()) : es;
+    }
+
+    /** The draining status of the buffers. */
+    enum DrainStatus {
+
+        /** A drain is not taking place. */
+        IDLE {
+            @Override boolean shouldDrainBuffers(boolean delayable) {
+                return !delayable;
+            }
+        },
+
+        /** A drain is required due to a pending write modification. */
+        REQUIRED {
+            @Override boolean shouldDrainBuffers(boolean delayable) {
+                return true;
+            }
+        },
+
+        /** A drain is in progress. */
+        PROCESSING {
+            @Override boolean shouldDrainBuffers(boolean delayable) {
+                return false;
+            }
+        };
+
+        /**
+         * Determines whether the buffers should be drained.
+         *
+         * @param delayable if a drain should be delayed until required
+         * @return if a drain should be attempted
+         */
+        abstract boolean shouldDrainBuffers(boolean delayable);
+    }
+
+    /** A value, its weight, and the entry's status. */
+    @Immutable
+    static final class WeightedValue<V> {
+        final int weight;
+        final V value;
+
+        WeightedValue(V value, int weight) {
+            this.weight = weight;
+            this.value = value;
+        }
+
+        boolean contains(Object o) {
+            return (o == value) || value.equals(o);
+        }
+
+        /** If the entry is available in the hash-table and page replacement policy. */
+        boolean isAlive() {
+            return weight > 0;
+        }
+
+        /**
+         * If the entry was removed from the hash-table and is awaiting removal from the page
+         * replacement policy.
+         */
+        boolean isRetired() {
+            return weight < 0;
+        }
+
+        /** If the entry was removed from the hash-table and the page replacement policy. */
+        boolean isDead() {
+            return weight == 0;
+        }
+    }
+
+    /**
+     * A node contains the key, the weighted value, the timestamps used for expiration, and the
+     * linkage pointers on the page-replacement algorithm's data structures.
+     */
+    @SuppressWarnings("serial")
+    static final class Node<K, V> extends AtomicReference<WeightedValue<V>>
+            implements AccessOrder<Node<K, V>>, WriteOrder<Node<K, V>> {
+        static final int WINDOW = 0;
+        static final int PROBATION = 1;
+        static final int PROTECTED = 2;
+
+        @SuppressWarnings("rawtypes")
+        static final AtomicLongFieldUpdater<Node> ACCESS_TIME =
+                AtomicLongFieldUpdater.newUpdater(Node.class, "accessTime");
+        @SuppressWarnings("rawtypes")
+        static final AtomicLongFieldUpdater<Node> WRITE_TIME =
+                AtomicLongFieldUpdater.newUpdater(Node.class, "writeTime");
+        @SuppressWarnings("rawtypes")
+        static final AtomicLongFieldUpdater<Node> VARIABLE_TIME =
+                AtomicLongFieldUpdater.newUpdater(Node.class, "variableTime");
+
+        final K key;
+        volatile long accessTime;
+        volatile long writeTime;
+        volatile long variableTime;
+        volatile boolean pending;
+        @GuardedBy("evictionLock")
+        int queueType;
+        @GuardedBy("evictionLock")
+        int policyWeight;
+        @GuardedBy("evictionLock")
+        Node<K, V> prev;
+        @GuardedBy("evictionLock")
+        Node<K, V> next;
+        @GuardedBy("evictionLock")
+        Node<K, V> prevInWriteOrder;
+        @GuardedBy("evictionLock")
+        Node<K, V> nextInWriteOrder;
+        @GuardedBy("evictionLock")
+        Node<K, V> prevInVariableOrder;
+        @GuardedBy("evictionLock")
+        Node<K, V> nextInVariableOrder;
+
+        /** Creates a new, unlinked node that was last accessed and written to at the given time. */
+        Node(K key, WeightedValue<V> weightedValue, long now) {
+            super(weightedValue);
+            this.key = key;
+            this.accessTime = now;
+            this.writeTime = now;
+        }
+
+        /** Returns the time that the entry was last accessed, in nanoseconds. */
+        long getAccessTime() {
+            return accessTime;
+        }
+
+        /** Sets the time that the entry was last accessed, without a memory fence. */
+        void setAccessTime(long time) {
+            ACCESS_TIME.lazySet(this, time);
+        }
+
+        /** Returns the time that the entry was last written to, in nanoseconds. */
+        long getWriteTime() {
+            return writeTime;
+        }
+
+        /** Sets the time that the entry was last written to, without a memory fence. */
+        void setWriteTime(long time) {
+            WRITE_TIME.lazySet(this, time);
+        }
+
+        /** Returns the time when the entry expires, as computed by the {@link Expiry}. */
+        long getVariableTime() {
+            return variableTime;
+        }
+
+        /** Sets the time when the entry expires, without a memory fence. */
+        void setVariableTime(long time) {
+            VARIABLE_TIME.lazySet(this, time);
+        }
+
+        /** Returns if the value was not yet available when the entry was last written. */
+        boolean isPending() {
+            return pending;
+        }
+
+        /** Sets if the value is not yet available, writing only if the state changed. */
+        void setPending(boolean pending) {
+            if (this.pending != pending) {
+                this.pending = pending;
+            }
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public Node<K, V> getPreviousInAccessOrder() {
+            return prev;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public void setPreviousInAccessOrder(Node<K, V> prev) {
+            this.prev = prev;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public Node<K, V> getNextInAccessOrder() {
+            return next;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public void setNextInAccessOrder(Node<K, V> next) {
+            this.next = next;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public Node<K, V> getPreviousInWriteOrder() {
+            return prevInWriteOrder;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public void setPreviousInWriteOrder(Node<K, V> prev) {
+            this.prevInWriteOrder = prev;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public Node<K, V> getNextInWriteOrder() {
+            return nextInWriteOrder;
+        }
+
+        @Override
+        @GuardedBy("evictionLock")
+        public void setNextInWriteOrder(Node<K, V> next) {
+            this.nextInWriteOrder = next;
+        }
+
+        /** Returns the previous node in the timer wheel's bucket, or null if not scheduled. */
+        @GuardedBy("evictionLock")
+        Node<K, V> getPreviousInVariableOrder() {
+            return prevInVariableOrder;
+        }
+
+        /** Sets the previous node in the timer wheel's bucket. */
+        @GuardedBy("evictionLock")
+        void setPreviousInVariableOrder(Node<K, V> prev) {
+            this.prevInVariableOrder = prev;
+        }
+
+        /** Returns the next node in the timer wheel's bucket, or null if not scheduled. */
+        @GuardedBy("evictionLock")
+        Node<K, V> getNextInVariableOrder() {
+            return nextInVariableOrder;
+        }
+
+        /** Sets the next node in the timer wheel's bucket. */
+        @GuardedBy("evictionLock")
+        void setNextInVariableOrder(Node<K, V> next) {
+            this.nextInVariableOrder = next;
+        }
+
+        /** Retrieves the value held by the current <tt>WeightedValue</tt>. */
+        V getValue() {
+            return get().value;
+        }
+    }
+
+    /** An adapter to safely externalize the keys. */
+    final class KeySet extends AbstractSet<K> {
+        final BoundedLocalCache<K, V> map = BoundedLocalCache.this;
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        @Override
+        public boolean contains(Object obj) {
+            return containsKey(obj);
+        }
+
+        @Override
+        public boolean remove(Object obj) {
+            return (map.remove(obj) != null);
+        }
+    }
+
+    /** An adapter to safely externalize the key iterator. */
+    final class KeyIterator implements Iterator<K> {
+        final NodeIterator iterator = new NodeIterator();
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public K next() {
+            return iterator.next().key;
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+    }
+
+    /** An adapter to safely externalize the values. */
+    final class Values extends AbstractCollection<V> {
+
+        @Override
+        public int size() {
+            return BoundedLocalCache.this.size();
+        }
+
+        @Override
+        public void clear() {
+            BoundedLocalCache.this.clear();
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsValue(o);
+        }
+    }
+
+    /** An adapter to safely externalize the value iterator. */
+    final class ValueIterator implements Iterator<V> {
+        final NodeIterator iterator = new NodeIterator();
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public V next() {
+            return iterator.next().getValue();
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+    }
+
+    /** An adapter to safely externalize the entries. */
+    final class EntrySet extends AbstractSet<Entry<K, V>> {
+        final BoundedLocalCache<K, V> map = BoundedLocalCache.this;
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object obj) {
+            if (!(obj instanceof Entry<?, ?>)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) obj;
+            Node<K, V> node = map.data.get(entry.getKey());
+            return (node != null) && node.getValue().equals(entry.getValue())
+                    && !map.hasExpired(node, map.now());
+        }
+
+        @Override
+        public boolean add(Entry<K, V> entry) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean remove(Object obj) {
+            if (!(obj instanceof Entry<?, ?>)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) obj;
+            return map.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** An adapter to safely externalize the entry iterator. */
+    final class EntryIterator implements Iterator<Entry<K, V>> {
+        final NodeIterator iterator = new NodeIterator();
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            return new WriteThroughEntry(iterator.next());
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+    }
+
+    /**
+     * An iterator over the nodes that skips the entries which had expired when the iteration
+     * started, so that the views agree with {@link #containsKey} and {@link #get}.
+     */
+    final class NodeIterator implements Iterator<Node<K, V>> {
+        final Iterator<Node<K, V>> iterator = data.values().iterator();
+        final long now = now();
+        Node<K, V> current;
+        Node<K, V> next;
+
+        @Override
+        public boolean hasNext() {
+            while ((next == null) && iterator.hasNext()) {
+                Node<K, V> node = iterator.next();
+                if (!hasExpired(node, now)) {
+                    next = node;
+                }
+            }
+            return (next != null);
+        }
+
+        @Override
+        public Node<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = null;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            BoundedLocalCache.this.remove(current.key);
+            current = null;
+        }
+    }
+
+    /** An entry that allows updates to write through to the map. */
+    final class WriteThroughEntry extends SimpleEntry<K, V> {
+        static final long serialVersionUID = 1;
+
+        WriteThroughEntry(Node<K, V> node) {
+            super(node.key, node.getValue());
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+
+        Object writeReplace() {
+            return new SimpleEntry<K, V>(this);
+        }
+    }
+
+    /**
+     * A builder that creates {@link BoundedLocalCache} instances. It provides a flexible approach
+     * for constructing customized instances with a named parameter syntax. It can be used in the
+     * following manner:
+     * <pre>{@code
+     *   ConcurrentMap<Vertex, Set<Edge>> graph = new BoundedLocalCache.Builder<Vertex, Set<Edge>>()
+     *       .maximumSize(1000)
+     *       .build();
+     *   ConcurrentMap<String, Session> sessions = new BoundedLocalCache.Builder<String, Session>()
+     *       .expireAfterAccess(30, TimeUnit.MINUTES)
+     *       .build();
+     *   ConcurrentMap<String, Token> tokens = new BoundedLocalCache.Builder<String, Token>()
+     *       .expireAfter(new TokenExpiry())
+     *       .build();
+     * }</pre>
+     */
+    static final class Builder<K, V> {
+        static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+        long maximumSize = -1L;
+        long maximumWeight = -1L;
+        Weigher<K, V> weigher;
+        int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+        long expireAfterAccessNanos = UNSET_DURATION;
+        long expireAfterWriteNanos = UNSET_DURATION;
+        long refreshAfterWriteNanos = UNSET_DURATION;
+        Ticker ticker = Ticker.systemTicker();
+        boolean recordStats;
+        Executor executor = ForkJoinPool.commonPool();
+        Expiry<K, V> expiry;
+        boolean async;
+
+        /**
+         * Specifies the initial capacity of the hash table (default <tt>16</tt>). This is the
+         * number of key-value pairs that the hash table can hold before a resize operation is
+         * required.
+         *
+         * @param initialCapacity the initial capacity used to size the hash table to accommodate
+         *        this many entries.
+         * @return this builder
+         * @throws IllegalArgumentException if the initialCapacity is negative
+         */
+        public Builder<K, V> initialCapacity(int initialCapacity) {
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException();
+            }
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Specifies the maximum number of entries that the map may hold. This value must be
+         * specified unless the entries expire. The map may temporarily exceed the bound while the
+         * pending writes are being applied to the page replacement policy.
+         *
+         * @param maximumSize the threshold to bound the map by
+         * @return this builder
+         * @throws IllegalArgumentException if the maximumSize is negative
+         */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException();
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Specifies the maximum weight of entries that the map may hold, as determined by the
+         * {@link #weigher}. This may not be combined with {@link #maximumSize}. An entry whose
+         * weight exceeds the maximum is evicted as soon as it is added to the policy, without
+         * evicting the other entries. The map may temporarily exceed the bound while the pending
+         * writes are being applied to the page replacement policy.
+         *
+         * @param maximumWeight the threshold to bound the map by
+         * @return this builder
+         * @throws IllegalArgumentException if the maximumWeight is negative
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight) {
+            if (maximumWeight < 0) {
+                throw new IllegalArgumentException();
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * Specifies the algorithm to determine how many units of capacity an entry consumes. This
+         * must be combined with {@link #maximumWeight}. A weigher that returns a weight that is
+         * not positive causes the write of that entry to fail with an
+         * {@link IllegalArgumentException}.
+         *
+         * @param weigher the algorithm to determine a value's weight
+         * @return this builder
+         * @throws NullPointerException if the weigher is null
+         */
+        public Builder<K, V> weigher(Weigher<K, V> weigher) {
+            this.weigher = requireNonNull(weigher);
+            return this;
+        }
+
+        /**
+         * Specifies that each entry should be removed from the map once the duration has elapsed
+         * after the entry's creation or the most recent replacement of its value.
+         *
+         * @param duration the length of time after an entry is written that it should be removed
+         * @param unit the unit that {@code duration} is expressed in
+         * @return this builder
+         * @throws IllegalArgumentException if the duration is negative
+         */
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException();
+            }
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Specifies that each entry should be removed from the map once the duration has elapsed
+         * after the entry's creation, the most recent replacement of its value, or its last read.
+         *
+         * @param duration the length of time after an entry is last accessed that it should be
+         *        removed
+         * @param unit the unit that {@code duration} is expressed in
+         * @return this builder
+         * @throws IllegalArgumentException if the duration is negative
+         */
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException();
+            }
+            this.expireAfterAccessNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Specifies that an {@link AsyncLoadingCache} should reload an entry once the duration has
+         * elapsed after the entry's creation or the most recent replacement of its value. The
+         * reload is triggered by the first read after the duration has elapsed and is performed
+         * asynchronously, while the reads continue to return the current value. This may only be
+         * used when building a loading cache.
+         *
+         * @param duration the length of time after an entry is written that it should be reloaded
+         * @param unit the unit that {@code duration} is expressed in
+         * @return this builder
+         * @throws IllegalArgumentException if the duration is zero or negative
+         */
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException();
+            }
+            this.refreshAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Specifies that each entry should be removed from the map once a duration has elapsed,
+         * where the duration is computed by the {@link Expiry} when the entry is created, when its
+         * value is replaced, and when it is read. This may not be combined with the fixed
+         * durations of {@link #expireAfterWrite} and {@link #expireAfterAccess}.
+         *
+         * @param expiry the policy that computes each entry's remaining lifetime
+         * @return this builder
+         * @throws NullPointerException if the expiry is null
+         */
+        public Builder<K, V> expireAfter(Expiry<K, V> expiry) {
+            this.expiry = requireNonNull(expiry);
+            return this;
+        }
+
+        /**
+         * Specifies the time source used to determine when the entries expire (default
+         * {@link Ticker#systemTicker()}). This is useful for tests and benchmarks that control the
+         * passage of time.
+         *
+         * @param ticker the time source to read the current time from
+         * @return this builder
+         * @throws NullPointerException if the ticker is null
+         */
+        public Builder<K, V> ticker(Ticker ticker) {
+            this.ticker = requireNonNull(ticker);
+            return this;
+        }
+
+        /**
+         * Enables the recording of the statistics that are reported by
+         * {@link BoundedLocalCache#stats()}. The statistics are disabled by default, in which case
+         * the cache uses a counter that does nothing and does not read the ticker to time the
+         * loads, so that it does not pay for the bookkeeping.
+         *
+         * @return this builder
+         */
+        public Builder<K, V> recordStats() {
+            this.recordStats = true;
+            return this;
+        }
+
+        /**
+         * Specifies the executor that runs the loads of an {@link AsyncLoadingCache} (default
+         * {@link ForkJoinPool#commonPool()}).
+         *
+         * @param executor the executor to run the loader with
+         * @return this builder
+         * @throws NullPointerException if the executor is null
+         */
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = requireNonNull(executor);
+            return this;
+        }
+
+        /**
+         * Creates a new {@link BoundedLocalCache} instance.
+         *
+         * @return a new, empty cache
+         * @throws IllegalStateException if neither a maximum nor an expiration was set, if the
+         *         maximum size was combined with a maximum weight, if a maximum weight and a
+         *         weigher were not set together, if a variable expiration was combined with a
+         *         fixed one, or if a refresh was set
+         */
+        public BoundedLocalCache<K, V> build() {
+            if (refreshAfterWriteNanos >= 0) {
+                throw new IllegalStateException();
+            }
+            return buildCache();
+        }
+
+        /** Creates a new {@link BoundedLocalCache} instance that may be used by a loading cache. */
+        BoundedLocalCache<K, V> buildCache() {
+            boolean fixed = (expireAfterAccessNanos >= 0) || (expireAfterWriteNanos >= 0);
+            if (fixed && (expiry != null)) {
+                throw new IllegalStateException();
+            }
+            if ((maximumSize >= 0) && (maximumWeight >= 0)) {
+                throw new IllegalStateException();
+            } else if ((weigher == null) != (maximumWeight < 0)) {
+                throw new IllegalStateException();
+            }
+            boolean expires = fixed || (expiry != null);
+            boolean bounded = (maximumSize >= 0) || (maximumWeight >= 0);
+            if (!bounded && !expires) {
+                throw new IllegalStateException();
+            }
+            if (!bounded) {
+                maximumSize = MAXIMUM_CAPACITY;
+            }
+            return new BoundedLocalCache<>(this);
+        }
+
+        /**
+         * Creates a new {@link AsyncLoadingCache} instance that computes its absent values with
+         * the loader. The cache is bounded by the settings of this builder, where an entry that is
+         * being loaded does not expire until the load completes, at which point its lifetime
+         * starts. If a
+         * refresh duration was set then the entries are reloaded with {@link CacheLoader#reload}.
+         *
+         * @param loader the loader that computes the values
+         * @return a new, empty cache
+         * @throws NullPointerException if the loader is null
+         * @throws IllegalStateException if neither a maximum nor an expiration was set, if the
+         *         maximum size was combined with a maximum weight, if a maximum weight and a
+         *         weigher were not set together, or if a variable expiration was combined with a
+         *         fixed one
+         */
+        public AsyncLoadingCache<K, V> buildAsync(CacheLoader<K, V> loader) {
+            requireNonNull(loader);
+            Builder<K, CompletableFuture<V>> builder = new Builder<>();
+            builder.maximumSize = maximumSize;
+            builder.maximumWeight = maximumWeight;
+            builder.initialCapacity = initialCapacity;
+            builder.expireAfterAccessNanos = expireAfterAccessNanos;
+            builder.expireAfterWriteNanos = expireAfterWriteNanos;
+            builder.refreshAfterWriteNanos = refreshAfterWriteNanos;
+            builder.ticker = ticker;
+            builder.recordStats = recordStats;
+            builder.async = true;
+            if (expiry != null) {
+                builder.expiry = new AsyncExpiry<>(expiry);
+            }
+            if (weigher != null) {
+                builder.weigher = new AsyncWeigher<>(weigher);
+            }
+            return new AsyncLoadingCache<>(builder.buildCache(), loader, executor);
+        }
+    }
+
+    /* ---------------- Serialization Support -------------- */
+
+    static final long serialVersionUID = 1L;
+
+    Object writeReplace() {
+        return new SerializationProxy<K, V>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /**
+     * A proxy that is serialized instead of the map. The page-replacement algorithm's data
+     * structures are not serialized so the deserialized instance contains only the entries. This
+     * is acceptable as caches hold transient data that is recomputable and serialization would
+     * tend to be used as a fast warm-up process. The ticker is not serialized, so the deserialized
+     * instance uses the system ticker and the entries' expiration durations restart. Whether the
+     * statistics are recorded is retained, but the counts are not, so they restart at zero. If an
+     * {@link Expiry} or {@link Weigher} is used then it must be serializable for the map to be
+     * serialized.
+     */
+    static final class SerializationProxy<K, V> implements Serializable {
+        final Map<K, V> data;
+        final long capacity;
+        final Weigher<K, V> weigher;
+        final long expireAfterAccessNanos;
+        final long expireAfterWriteNanos;
+        final Expiry<K, V> expiry;
+        final boolean recordStats;
+
+        SerializationProxy(BoundedLocalCache<K, V> map) {
+            this.data = new LinkedHashMap<>(map);
+            this.capacity = map.capacity.get();
+            this.weigher = map.weigher;
+            this.expireAfterAccessNanos = map.expireAfterAccessNanos;
+            this.expireAfterWriteNanos = map.expireAfterWriteNanos;
+            this.expiry = map.expiry;
+            this.recordStats = map.isRecordingStats();
+        }
+
+        Object readResolve() {
+            Builder<K, V> builder = new Builder<K, V>().maximumWeight(capacity).weigher(weigher);
+            builder.expireAfterAccessNanos = expireAfterAccessNanos;
+            builder.expireAfterWriteNanos = expireAfterWriteNanos;
+            builder.expiry = expiry;
+            builder.recordStats = recordStats;
+            BoundedLocalCache<K, V> map = builder.build();
+            map.putAll(data);
+            return map;
+        }
+
+        static final long serialVersionUID = 1;
+    }
+}
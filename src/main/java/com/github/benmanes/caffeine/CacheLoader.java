@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Computes the values of a loading cache when they are absent. The loader is called by the
+ * cache's executor rather than by the thread that requested the value, and it is called at most
+ * once at a time for a key, as concurrent requests for a key that is being loaded wait for the
+ * same result.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+@ThreadSafe
+interface CacheLoader<K, V> {
+
+    /**
+     * Computes the value corresponding to the key.
+     *
+     * @param key the non-null key whose value should be loaded
+     * @return the value associated with the key, or {@code null} if not found
+     * @throws Exception if unable to load the value, which fails the request
+     */
+    @Nullable V load(K key) throws Exception;
+
+    /**
+     * Computes a replacement value for an entry that is being refreshed. The current value remains
+     * in the cache and is returned by the reads until the reload completes. The default
+     * implementation loads the key as if it were absent.
+     *
+     * @param key the non-null key whose value should be reloaded
+     * @param oldValue the non-null value currently associated with the key
+     * @return the new value associated with the key, or {@code null} if it should be removed
+     * @throws Exception if unable to reload the value, in which case the old value is retained
+     */
+    default @Nullable V reload(K key, V oldValue) throws Exception {
+        return load(key);
+    }
+
+    /**
+     * Computes the values corresponding to the keys. This method is called when a request for
+     * multiple keys finds any of them absent, so that a loader which can retrieve them
+     * in a single call to its data source, such as a batch query, avoids a call per key. The
+     * default implementation loads each key individually.
+     * <p>
+     * A key that is absent from the returned map is treated as not found. The map may contain
+     * additional entries, which are ignored.
+     *
+     * @param keys the unique, non-null keys whose values should be loaded
+     * @return a map of the keys to their values
+     * @throws Exception if unable to load the values, which fails the request for all of the keys
+     */
+    default Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+        Map<K, V> result = new HashMap<>();
+        for (K key : keys) {
+            V value = load(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+}
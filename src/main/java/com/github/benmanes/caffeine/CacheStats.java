@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * An immutable snapshot of the statistics recorded by a {@link StatsCounter}. The counts are
+ * cumulative since the cache was created, so the activity during an interval is obtained by
+ * subtracting the snapshot taken at its start from the snapshot taken at its end with
+ * {@link #minus}. Because the counters are read one at a time while operations are in progress,
+ * a snapshot is not an atomic view.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@Immutable
+final class CacheStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final CacheStats EMPTY_STATS = new CacheStats(0L, 0L, 0L, 0L, 0L, 0L);
+
+    final long hitCount;
+    final long missCount;
+    final long loadSuccessCount;
+    final long loadFailureCount;
+    final long totalLoadTime;
+    final long evictionCount;
+
+    /**
+     * Creates a snapshot of the statistics.
+     *
+     * @throws IllegalArgumentException if any of the counts are negative
+     */
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+            long totalLoadTime, long evictionCount) {
+        if ((hitCount < 0) || (missCount < 0) || (loadSuccessCount < 0)
+                || (loadFailureCount < 0) || (totalLoadTime < 0) || (evictionCount < 0)) {
+            throw new IllegalArgumentException();
+        }
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+    }
+
+    /** Returns a snapshot where all of the counts are zero. */
+    public static CacheStats empty() {
+        return EMPTY_STATS;
+    }
+
+    /** Returns the number of times that a lookup returned a cached value. */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /** Returns the number of times that a lookup did not find a cached value. */
+    public long missCount() {
+        return missCount;
+    }
+
+    /** Returns the number of lookups, which is the sum of the hits and the misses. */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /** Returns the ratio of the lookups that were hits, or {@code 1.0} if there were none. */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /** Returns the ratio of the lookups that were misses, or {@code 0.0} if there were none. */
+    public double missRate() {
+        long requestCount = requestCount();
+        return (requestCount == 0) ? 0.0 : (double) missCount / requestCount;
+    }
+
+    /** Returns the number of times that the loader computed a value successfully. */
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Returns the number of times that the loader failed, either by throwing an exception or by
+     * not finding a value.
+     */
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /** Returns the number of times that the loader was called, successfully or not. */
+    public long loadCount() {
+        return loadSuccessCount + loadFailureCount;
+    }
+
+    /** Returns the ratio of the loads that failed, or {@code 0.0} if there were none. */
+    public double loadFailureRate() {
+        long loadCount = loadCount();
+        return (loadCount == 0) ? 0.0 : (double) loadFailureCount / loadCount;
+    }
+
+    /** Returns the total number of nanoseconds that the loader spent computing values. */
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /** Returns the average number of nanoseconds spent per load, or {@code 0.0} if none. */
+    public double averageLoadPenalty() {
+        long loadCount = loadCount();
+        return (loadCount == 0) ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    /** Returns the number of entries that were evicted by the size bound or by expiration. */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the sum of this snapshot and the other, such as to combine the statistics of the
+     * caches in a tier.
+     *
+     * @param other the statistics to add
+     * @return the combined statistics
+     */
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(
+                hitCount + other.hitCount,
+                missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount,
+                loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime,
+                evictionCount + other.evictionCount);
+    }
+
+    /**
+     * Returns the difference of this snapshot and the other, such as to obtain the activity
+     * during an interval. A count that would be negative is floored at zero, as the counts only
+     * increase and a negative difference indicates that the snapshots were given out of order.
+     *
+     * @param other the statistics to subtract
+     * @return the difference of the statistics
+     */
+    public CacheStats minus(CacheStats other) {
+        return new CacheStats(
+                Math.max(0L, hitCount - other.hitCount),
+                Math.max(0L, missCount - other.missCount),
+                Math.max(0L, loadSuccessCount - other.loadSuccessCount),
+                Math.max(0L, loadFailureCount - other.loadFailureCount),
+                Math.max(0L, totalLoadTime - other.totalLoadTime),
+                Math.max(0L, evictionCount - other.evictionCount));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        } else if (!(o instanceof CacheStats)) {
+            return false;
+        }
+        CacheStats other = (CacheStats) o;
+        return (hitCount == other.hitCount)
+                && (missCount == other.missCount)
+                && (loadSuccessCount == other.loadSuccessCount)
+                && (loadFailureCount == other.loadFailureCount)
+                && (totalLoadTime == other.totalLoadTime)
+                && (evictionCount == other.evictionCount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hitCount, missCount, loadSuccessCount,
+                loadFailureCount, totalLoadTime, evictionCount);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("hitCount", hitCount)
+                .add("missCount", missCount)
+                .add("loadSuccessCount", loadSuccessCount)
+                .add("loadFailureCount", loadFailureCount)
+                .add("totalLoadTime", totalLoadTime)
+                .add("evictionCount", evictionCount)
+                .toString();
+    }
+}
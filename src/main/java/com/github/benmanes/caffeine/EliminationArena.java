@@ -0,0 +1,483 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An elimination arena where a thread performing an operation can be paired with a thread that is
+ * concurrently performing the operation with the reverse semantics, such as a push and a pop, so
+ * that both complete without updating the shared data structure. A producer transfers its element
+ * through a slot in the arena and a consumer receives it, either by finding the other party
+ * already waiting in a slot or by waiting briefly (by spinning) for one to arrive. How a waiting
+ * thread pauses between its polls of the slot is determined by the arena's {@link Backoff}.
+ * <p>
+ * The arena is used as a back-off strategy by the data structures in this package, such as
+ * {@link EliminationStack} and {@link EliminationQueue}, when an update to their shared state fails
+ * due to contention.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class EliminationArena<E> {
+
+    /*
+     * This implementation borrows optimizations from {@link java.util.concurrent.Exchanger} for
+     * choosing an arena location and awaiting a match.
+     *
+     * The effective width of the arena is adapted per instance, similar to Exchanger's bound. The
+     * arena starts with a single slot so that a lightly loaded data structure does not waste spins
+     * probing slots that no other thread will visit. When a thread collides with another operation
+     * of the same kind in a slot (a failed slot CAS, or finding a slot occupied by an operation
+     * that it cannot be matched with) then the width is doubled, up to the maximum arena length.
+     * When a thread spins on a slot without any partner arriving then the width is halved. The
+     * bound is stamped with a sequence number so that only one of the threads that observed the
+     * same bound resizes it, which prevents stale views from compounding the adjustments.
+     *
+     * A thread starts its search of the arena at its probe, the per-thread hash code that is
+     * shared with the striped buffers. A thread that fails to eliminate advances its probe, so
+     * that threads which repeatedly collide on the same slots spread apart, while a thread that
+     * succeeds retains it and returns to the slot where it found a partner. This is the approach
+     * used by {@link java.util.concurrent.atomic.LongAdder} to select a cell, and avoids the
+     * fixed placement of hashing the thread's id, where threads that land on the same slots do so
+     * on every attempt.
+     *
+     * The slots are stored in a single array where they are spaced apart by a stride, with the
+     * first slot a stride past the array's header and the last a stride before its end. This
+     * guarantees that the slots do not share a cache line with each other or with a neighboring
+     * object regardless of where the collector places the array, and a probe reads the slot
+     * directly rather than first loading a reference to a separately allocated holder.
+     *
+     * The slots are accessed through {@link ArenaSlots}, which the multi-release jar replaces on
+     * JDK 9 and later with a variant that uses the weakest memory ordering that suffices. A slot is
+     * read in opaque mode, both when scanning and when polling while waiting, as the value read is
+     * only a hint that is confirmed by the compare-and-exchange that acts on it. The exception is a
+     * scan by a consumer with a condition, which reads the slot in acquire mode so that the
+     * condition is evaluated after the element was observed. A producer publishes its element into
+     * a slot with release semantics and a consumer takes it with acquire semantics, which pairs
+     * the two so that the consumer observes the element's state as written by the producer. The
+     * transitions that do not hand off an element, such as a consumer announcing itself with the
+     * waiter marker or a thread withdrawing from a slot, need only be atomic and use release
+     * semantics. On Java 8 every access is volatile.
+     */
+
+    /** The number of CPUs */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** The bits of the arena bound that hold the mask of the effective arena width. */
+    static final int MMASK = 0xff;
+
+    /** The increment of the arena bound's sequence number, which is stored above the mask bits. */
+    static final int SEQ = MMASK + 1;
+
+    /** The maximum number of slots in the elimination array. */
+    static final int ARENA_LENGTH = Math.min(ceilingNextPowerOfTwo(NCPU), MMASK + 1);
+
+    /** The mask value for indexing into the arena at its maximum width. */
+    static final int ARENA_MASK = ARENA_LENGTH - 1;
+
+    /**
+     * The distance between the slots in the array, to avoid them sharing a cache line. This is 64
+     * bytes with compressed references and 128 bytes otherwise.
+     */
+    static final int STRIDE = 16;
+
+    /** The number of times to step ahead, probe, and try to match. */
+    static final int LOOKAHEAD = Math.min(4, NCPU);
+
+    /**
+     * The number of times to spin (doing nothing except polling a memory location) before giving up
+     * while waiting to eliminate an operation. Should be zero on uniprocessors. On mutiprocessors,
+     * this value should be large enough so that two threads exchanging items as fast as possible
+     * block only when one of them is stalled (due to GC or preemption), but not much longer, to avoid
+     * wasting CPU resources. Seen differently, this value is a little over half the number of cycles
+     * of an average context switch time on most systems. The value here is approximately the average
+     * of those accross a range of tested systems.
+     */
+    static final int SPINS = (NCPU == 1) ? 0 : 2000;
+
+    /** The number of times to spin per lookahead step */
+    static final int SPINS_PER_STEP = (SPINS / LOOKAHEAD);
+
+    /** A marker indicating that the arena slot is free. */
+    static final Object FREE = null;
+
+    /** A marker indicating that a thread is waiting in that slot to be transfered an element. */
+    static final Object WAITER = new Object();
+
+    /** A condition that always accepts a transfer. */
+    static final BooleanSupplier ALWAYS = () -> true;
+
+    static int ceilingNextPowerOfTwo(int x) {
+        // From Hacker's Delight, Chapter 3, Harry S. Warren Jr.
+        return 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(x - 1));
+    }
+
+    /** The slots where an exchange can be performed, spaced apart by the stride. */
+    final ArenaSlots slots;
+
+    /** The sequence stamped mask of the arena's effective width. */
+    final AtomicInteger bound;
+
+    /** The recorder of the spins and collisions in the arena. */
+    final EliminationStatsRecorder recorder;
+
+    /** The strategy for pausing between the polls of a slot while waiting. */
+    final Backoff backoff;
+
+    /**
+     * Creates an arena with a single slot in use that does not record statistics and that spins
+     * while waiting.
+     */
+    EliminationArena() {
+        this(EliminationStatsRecorder.disabled(), Backoff.spin());
+    }
+
+    /**
+     * Creates an arena with a single slot in use.
+     *
+     * @param recorder the recorder of the spins and collisions in the arena
+     * @param backoff the strategy for pausing between the polls of a slot while waiting
+     */
+    EliminationArena(EliminationStatsRecorder recorder, Backoff backoff) {
+        this.recorder = requireNonNull(recorder);
+        this.backoff = requireNonNull(backoff);
+        bound = new AtomicInteger();
+        slots = new ArenaSlots((ARENA_LENGTH + 1) * STRIDE);
+    }
+
+    /**
+     * Attempts to transfer the element to a waiting consumer, advancing the current thread's probe
+     * if unsuccessful.
+     * 
+     * @param e the element to try to exchange
+     * @return if the element was successfully transferred
+     */
+    boolean tryTransfer(E e) {
+        int start = startIndex();
+        int b = bound.get();
+        if (scanAndTransferToWaiter(e, start, b) || awaitExchange(e, start, b)) {
+            return true;
+        }
+        rehash(start);
+        return false;
+    }
+
+    /**
+     * Scans the arena searching for a waiting consumer to exchange with.
+     * 
+     * @param e the element to try to exchange
+     * @param start the arena location to start at
+     * @param b the arena bound that was read when the attempt started
+     * @return if the element was successfully transfered
+     */
+    boolean scanAndTransferToWaiter(E e, int start, int b) {
+        int mask = b & MMASK;
+        for (int i=0; i <= mask; i++) {
+            int index = slotIndex((start + i) & mask);
+            // if some thread is waiting to receive an element then attempt to provide it
+            if ((slots.read(index) == WAITER) && slots.casRelease(index, WAITER, e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for (by spinning) to have the element transfered to another thread. The element is
+     * filled into an empty slot in the arena an spun on until it is transfered or a per-slot spin
+     * limit is reached.This search and wait strategy is repeated by selecting another slot until a
+     * total spin limit is reached. Each unsuccessful poll of the slot is followed by a pause of the
+     * backoff strategy, which is charged against the spin limits.
+     * 
+     * @param e the element to transfer
+     * @param start the arena location to start at
+     * @param b the arena bound that was read when the attempt started
+     * @return if an exchange was completed succesfully
+     */
+    boolean awaitExchange(E e, int start, int b) {
+        int mask = b & MMASK;
+        int totalSpins = 0;
+        int attempts = 0;
+        for (int step = 0; (step <= mask) && (totalSpins < SPINS); step++) {
+            int index = slotIndex((start + step) & mask);
+
+            Object found = slots.read(index);
+            if ((found == WAITER) && slots.casRelease(index, WAITER, e)) {
+                recorder.recordSpins(totalSpins);
+                return true;
+            } else if ((found == FREE) && slots.casRelease(index, FREE, e)) {
+                int slotSpins = 0;
+                for (;;) {
+                    found = slots.read(index);
+                    if (found  != e) {
+                        recorder.recordSpins(totalSpins + slotSpins);
+                        return true;
+                    } else if ((slotSpins >= SPINS_PER_STEP) && slots.casRelease(index, e, FREE)) {
+                        // failed to transfer the element; try a new slot
+                        totalSpins += slotSpins;
+                        shrinkArena(b);
+                        break;
+                    }
+                    slotSpins += pause(attempts++);
+                }
+            } else {
+                // collided with another thread in the slot
+                growArena(b);
+            }
+        }
+        // failed to transfer the element; give up
+        recorder.recordSpins(totalSpins);
+        return false;
+    }
+
+    /** 
+     * Attempts to receive an element from a waiting provider, advancing the current thread's probe
+     * if unsuccessful.
+     * 
+     * @return an element if successfully transferred or null if unsuccessful
+    */
+    @Nullable E tryReceive() {
+        int start = startIndex();
+        E e = tryReceive(start);
+        if (e == null) {
+            rehash(start);
+        }
+        return e;
+    }
+
+    /**
+     * Attempts to receive an element from a waiting provider, starting the search at the given
+     * arena location. The current thread's probe is not advanced, which lets a caller that retries
+     * in a loop step its start index locally with {@link #nextIndex}.
+     *
+     * @param start the arena location to start at
+     * @return an element if successfully transferred or null if unsuccessful
+     */
+    @Nullable E tryReceive(int start) {
+        int b = bound.get();
+        E e = scanAndMatch(start, b);
+        return (e == null) ? awaitMatch(start, b) : e;
+    }
+
+    /**
+     * Scans the arena searching for a waiting producer to transfer from.
+     *
+     * @param start the arena location to start at
+     * @param b the arena bound that was read when the attempt started
+     * @return an element if successfully transferred or null if unsuccessful
+     */
+    @Nullable E scanAndMatch(int start, int b) {
+        return scanAndMatch(start, b, ALWAYS);
+    }
+
+    /**
+     * Scans the arena searching for a waiting producer to transfer from, accepting the transfer only
+     * if the condition holds after the element was observed in its slot. This allows a consumer to
+     * validate that the element may be eliminated, such as when a FIFO queue is empty, before taking
+     * it from the producer.
+     *
+     * @param start the arena location to start at
+     * @param b the arena bound that was read when the attempt started
+     * @param condition the condition that must hold for a transfer to be accepted
+     * @return an element if successfully transferred or null if unsuccessful
+     */
+    @Nullable E scanAndMatch(int start, int b, BooleanSupplier condition) {
+        int mask = b & MMASK;
+        for (int i=0; i <= mask; i++) {
+            int index = slotIndex((start + i) & mask);
+
+            // accept a transfer if an element is available
+            Object found = slots.readAcquire(index);
+            if ((found != FREE) && (found != WAITER)
+                    && condition.getAsBoolean() && slots.casAcquire(index, found, FREE)) {
+                @SuppressWarnings("unchecked")
+                E e = (E) found;
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for (by spinning) to have an element transfered from another thread. A marker is filled
+     * into an empty slot in the arena and spun on until it is replaced with an element or a per-slot
+     * spin limit is reached. This search and wait strategy is repeated by selecting another slot
+     * until a total spin limit is reached. Each unsuccessful poll of the slot is followed by a
+     * pause of the backoff strategy, which is charged against the spin limits.
+     *
+     * @param start the arena location to start at
+     * @param b the arena bound that was read when the attempt started
+     * @return an element if successfully transferred or null if unsuccessful
+     */
+    @Nullable E awaitMatch(int start, int b) {
+        int mask = b & MMASK;
+        int totalSpins = 0;
+        int attempts = 0;
+        for (int step = 0; (step <= mask) && (totalSpins < SPINS); step++) {
+            int index = slotIndex((start + step) & mask);
+            Object found = slots.read(index);
+
+            if (found == FREE) {
+                if (slots.casRelease(index, FREE, WAITER)) {
+                    int slotSpins = 0;
+                    for (;;) {
+                        found = slots.read(index);
+                        if ((found != WAITER) && slots.casAcquire(index, found, FREE)) {
+                            recorder.recordSpins(totalSpins + slotSpins);
+                            @SuppressWarnings("unchecked")
+                            E e = (E) found;
+                            return e;
+                        } else if ((slotSpins >= SPINS_PER_STEP) && (found == WAITER)
+                                && slots.casRelease(index, WAITER, FREE)) {
+                            // failed to receive an element; try a new slot
+                            totalSpins += slotSpins;
+                            shrinkArena(b);
+                            break;
+                        }
+                        slotSpins += pause(attempts++);
+                    }
+                } else {
+                    // lost the race to another thread
+                    growArena(b);
+                }
+            } else if ((found != WAITER) && slots.casAcquire(index, found, FREE)) {
+                recorder.recordSpins(totalSpins);
+                @SuppressWarnings("unchecked")
+                E e = (E) found;
+                return e;
+            } else {
+                // collided with another consumer, or lost the race for the element
+                growArena(b);
+            }
+        }
+        // failed to receive an element; give up
+        recorder.recordSpins(totalSpins);
+        return null;
+    }
+
+    /**
+     * Pauses the current thread with the backoff strategy and returns the number of spins that the
+     * pause is charged as. The charge is at least one, so that a strategy that returns less cannot
+     * keep the thread waiting in the slot indefinitely, and at most the per-slot limit, so that
+     * the count cannot overflow.
+     *
+     * @param attempt the number of consecutive unsuccessful polls before this one
+     * @return the number of spins that the pause is charged as
+     */
+    int pause(int attempt) {
+        int spins = backoff.pause(attempt);
+        return Math.max(1, Math.min(spins, SPINS_PER_STEP));
+    }
+
+    /**
+     * Records a collision in an arena slot and doubles the effective width of the arena, unless it
+     * has been resized since the bound was read or is already at its maximum width.
+     *
+     * @param b the arena bound that was read when the attempt started
+     */
+    void growArena(int b) {
+        recorder.recordCollision();
+        int mask = b & MMASK;
+        if (mask < ARENA_MASK) {
+            bound.compareAndSet(b, ((b + SEQ) & ~MMASK) | ((mask << 1) | 1));
+        }
+    }
+
+    /**
+     * Halves the effective width of the arena, unless it has been resized since the bound was read
+     * or is already a single slot.
+     *
+     * @param b the arena bound that was read when the attempt started
+     */
+    void shrinkArena(int b) {
+        int mask = b & MMASK;
+        if (mask != 0) {
+            bound.compareAndSet(b, ((b + SEQ) & ~MMASK) | (mask >>> 1));
+        }
+    }
+
+    /** Returns the number of slots in the arena's current effective width. */
+    int width() {
+        return (bound.get() & MMASK) + 1;
+    }
+
+    /** Returns the number of slots that currently hold a waiting producer or consumer. */
+    int occupiedSlots() {
+        int occupied = 0;
+        for (int i = 0; i < ARENA_LENGTH; i++) {
+            if (slots.read(slotIndex(i)) != FREE) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    /** Returns the position in the array of the slot at the arena location. */
+    static int slotIndex(int location) {
+        return (location + 1) * STRIDE;
+    }
+
+    /**
+     * Returns the start index to begin searching the arena with, which is the current thread's
+     * probe. The probe is retained until the thread fails to eliminate and calls {@link #rehash}.
+     */
+    static int startIndex() {
+        return StripedBuffer.getProbe();
+    }
+
+    /**
+     * Advances the current thread's probe after it failed to eliminate, so that its next search
+     * starts at a different slot.
+     *
+     * @param start the start index that the failed search used
+     */
+    static void rehash(int start) {
+        StripedBuffer.advanceProbe(start);
+    }
+
+    /**
+     * Returns the start index that follows the given one, without recording it as the current
+     * thread's probe.
+     *
+     * @param start the start index that the failed search used
+     * @return the start index for the next search
+     */
+    static int nextIndex(int start) {
+        return StripedBuffer.xorshift(start);
+    }
+
+    /** An {@link AtomicReference} padded to reduce the likelihood of false sharing. */
+    static final class PaddedAtomicReference<T> extends AtomicReference<T> {
+        private static final long serialVersionUID = 1L;
+
+        PaddedAtomicReference() {}
+
+        PaddedAtomicReference(T value) {
+            super(value);
+        }
+
+        @SuppressWarnings("unused")
+        long q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, qa, qb, qc, qd, qe;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An unbounded thread-safe {@linkplain BlockingQueue blocking queue} that orders elements LIFO
+ * (last-in-first-out), backed by an {@link EliminationStack}. The <em>head</em> of this queue is
+ * the top of the stack, so {@link #offer}, {@link #put} and {@link #push} insert at the head and
+ * {@link #poll}, {@link #take} and {@link #pop} retrieve from the head. Like most other concurrent
+ * collection implementations, this class does not permit the use of {@code null} elements.
+ * <p>
+ * A consumer that finds the stack empty waits briefly in the elimination arena and then parks, as
+ * described by {@link EliminationStack.Builder#blockingPop()}, and is unparked by a producer that
+ * hands its element over directly without modifying the stack. This extends the elimination of
+ * pushes and pops to consumers that are blocked, where an element is transferred from the
+ * producer to the waiting consumer. As waiting is implemented with {@link LockSupport} and does
+ * not hold a monitor, a blocked virtual thread does not pin its carrier thread, so this class
+ * scales to a large number of waiting consumers.
+ * <p>
+ * Iterators are <i>weakly consistent</i>, as described by {@link EliminationStack}.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class EliminationBlockingStack<E> extends AbstractQueue<E>
+        implements BlockingQueue<E>, Serializable {
+
+    /*
+     * The stack's elimination arena cannot be used by blocked consumers, as it has too few slots
+     * for a large number of waiters and a slot would be occupied for an unbounded duration. The
+     * stack is therefore built with a WaiterQueue, which holds the consumers that gave up waiting
+     * in the arena, so that a producer hands its element to the consumer waiting for the longest
+     * time or signals it after pushing.
+     */
+
+    /** The stack holding the elements. */
+    final EliminationStack<E> stack;
+
+    /** Creates a {@code EliminationBlockingStack} that is initially empty. */
+    public EliminationBlockingStack() {
+        stack = new EliminationStack.Builder<E>().blockingPop().build();
+    }
+
+    /**
+     * Creates a {@code EliminationBlockingStack} initially containing the elements of the given
+     * collection, added in traversal order of the collection's iterator.
+     *
+     * @param c the collection of elements to initially contain
+     * @throws NullPointerException if the specified collection or any of its elements are null
+     */
+    public EliminationBlockingStack(Collection<? extends E> c) {
+        this();
+        stack.pushAll(c);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return stack.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return stack.size();
+    }
+
+    @Override
+    public void clear() {
+        stack.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return stack.contains(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return stack.remove(o);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return stack.iterator();
+    }
+
+    @Override
+    public @Nullable E peek() {
+        return stack.peek();
+    }
+
+    /**
+     * Pushes an element onto the stack, handing it directly to a waiting consumer if there is one.
+     *
+     * @param e the element to push
+     */
+    public void push(E e) {
+        stack.push(e);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        push(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the top of this stack. As the stack is unbounded, this
+     * method will never block.
+     */
+    @Override
+    public void put(E e) {
+        push(e);
+    }
+
+    /**
+     * Inserts the specified element at the top of this stack. As the stack is unbounded, this
+     * method will never block or return {@code false}.
+     */
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        push(e);
+        return true;
+    }
+
+    /**
+     * Removes and returns the top element or returns <tt>null</tt> if this stack is empty.
+     *
+     * @return the top of this stack, or <tt>null</tt> if this stack is empty
+     */
+    public @Nullable E pop() {
+        return stack.pop();
+    }
+
+    @Override
+    public @Nullable E poll() {
+        return stack.pop();
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return stack.pop(false, 0L);
+    }
+
+    @Override
+    public @Nullable E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return stack.pop(timeout, unit);
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        return stack.drainTo(c, maxElements);
+    }
+
+    /* ---------------- Serialization Support -------------- */
+
+    static final long serialVersionUID = 1L;
+
+    Object writeReplace() {
+        return new SerializationProxy<E>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /** A proxy that is serialized instead of the stack, containing the elements in LIFO order. */
+    static final class SerializationProxy<E> implements Serializable {
+        final List<E> elements;
+
+        SerializationProxy(EliminationBlockingStack<E> stack) {
+            this.elements = new ArrayList<>(stack);
+        }
+
+        Object readResolve() {
+            return new EliminationBlockingStack<>(Lists.reverse(elements));
+        }
+
+        static final long serialVersionUID = 1;
+    }
+}
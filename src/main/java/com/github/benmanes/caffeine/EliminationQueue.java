@@ -0,0 +1,378 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BooleanSupplier;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.github.benmanes.caffeine.EliminationArena.PaddedAtomicReference;
+
+/**
+ * An unbounded thread-safe queue based on linked nodes. This queue orders elements FIFO
+ * (first-in-first-out). The <em>head</em> of the queue is that element that has been on the queue
+ * the longest time. The <em>tail</em> of the queue is that element that has been on the queue the
+ * shortest time. New elements are inserted at the tail of the queue, and the queue retrieval
+ * operations obtain elements at the head of the queue. Like most other concurrent collection
+ * implementations, this class does not permit the use of {@code null} elements.
+ * <p>
+ * This implementation employs elimination to transfer elements between threads that are offering
+ * and polling concurrently when the queue is empty. This technique avoids contention on the tail
+ * by allowing an enqueue and a dequeue to cancel out without modifying the linked list. This
+ * approach is described in
+ * <a href="http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.108.6422">Using elimination to
+ * implement scalable and lock-free FIFO queues</a>.
+ * <p>
+ * Iterators are <i>weakly consistent</i>, returning elements reflecting the state of the queue at
+ * some point at or since the creation of the iterator. They do <em>not</em> throw {@link
+ * java.util.ConcurrentModificationException}, and may proceed concurrently with other operations.
+ * Elements contained in the queue since the creation of the iterator will be returned exactly once.
+ * <p>
+ * Beware that, unlike in most collections, the {@code size} method is <em>NOT</em> a
+ * constant-time operation. Because of the asynchronous nature of these queues, determining the
+ * current number of elements requires a traversal of the elements, and so may report inaccurate
+ * results if this collection is modified during traversal.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class EliminationQueue<E> extends AbstractQueue<E> implements Serializable {
+
+    /*
+     * A Michael-Scott queue is represented as a singly-linked list with a sentinel node, where the
+     * head references the sentinel and the tail references the last node or one that lags behind
+     * it. An enqueue links its node after the last node with a compare-and-swap and then attempts
+     * to swing the tail to it, while any thread that finds the tail lagging helps to advance it. A
+     * dequeue swings the head to the first node, which becomes the new sentinel, and claims its
+     * element by clearing the value. The removal of an interior element also clears the node's
+     * value, which leaves a dead node that is skipped by the other operations.
+     *
+     * The queue is augmented with an elimination arena to reduce contention on the tail [1]. Unlike
+     * a stack, an enqueue cannot be paired with an arbitrary concurrent dequeue, as the element
+     * would overtake those already in the queue. An element may only be eliminated if it would be
+     * at the head of the queue, which this implementation approximates by requiring that the queue
+     * is empty. If a thread that observed an empty queue fails to link its node then it backs off
+     * to the arena and waits for a consumer to arrive. A consumer that finds the queue empty scans
+     * the arena for a waiting producer and, after observing the element in its slot, verifies that
+     * the queue is still empty before accepting the transfer. As the producer's operation was in
+     * progress at that time, both operations can be linearized at the point where the queue was
+     * found to be empty. Consumers never wait in the arena, so a poll of an empty queue does not
+     * spin and a producer never hands its element to a consumer that has not validated the queue.
+     *
+     * [1] Using elimination to implement scalable and lock-free fifo queues
+     * http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.108.6422
+     */
+
+    /** The sentinel node preceding the first element in the queue. */
+    final AtomicReference<Node<E>> head;
+
+    /** The last node in the queue, or a node that lags behind it. */
+    final AtomicReference<Node<E>> tail;
+
+    /** The arena where slots can be used to perform an exchange */
+    final EliminationArena<E> arena;
+
+    /** The condition that must hold for a consumer to accept a transfer from the arena. */
+    final BooleanSupplier isEmpty;
+
+    /** Creates a {@code EliminationQueue} that is initially empty. */
+    public EliminationQueue() {
+        Node<E> sentinel = new Node<E>(null);
+        head = new PaddedAtomicReference<>(sentinel);
+        tail = new PaddedAtomicReference<>(sentinel);
+        arena = new EliminationArena<>();
+        isEmpty = this::isEmpty;
+    }
+
+    /**
+     * Creates a {@code EliminationQueue} initially containing the elements of the given collection,
+     * added in traversal order of the collection's iterator.
+     *
+     * @param c the collection of elements to initially contain
+     * @throws NullPointerException if the specified collection or any of its elements are null
+     */
+    public EliminationQueue(Collection<? extends E> c) {
+        this();
+        addAll(c);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (first() == null);
+    }
+
+    /**
+     * Returns the number of elements in this queue.
+     * <p>
+     * Beware that, unlike most collections, this method is <em>NOT</em> a constant-time
+     * operation. Because of the asynchronous nature of these queues, determining the current
+     * number of elements requires an O(n) traversal. Additionally if elements are added or
+     * removed during execution of this method, the returned result may be inaccurate. Thus,
+     * this method is typically not very useful in concurrent applications.
+     *
+     * @return the number of elements in this queue
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Node<E> node = head.get().next; node != null; node = node.next) {
+            if (node.get() != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {}
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        requireNonNull(o);
+
+        for (Node<E> node = head.get().next; node != null; node = node.next) {
+            E value = node.get();
+            if (o.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public @Nullable E peek() {
+        for (Node<E> node = head.get().next; node != null; node = node.next) {
+            E e = node.get();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the first node holding an element, or null if the queue is empty. */
+    @Nullable Node<E> first() {
+        for (Node<E> node = head.get().next; node != null; node = node.next) {
+            if (node.get() != null) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        requireNonNull(e);
+
+        Node<E> node = new Node<E>(e);
+        for (;;) {
+            Node<E> t = tail.get();
+            Node<E> next = t.next;
+            if (t != tail.get()) {
+                continue;
+            } else if (next != null) {
+                // the tail is lagging behind, so help to advance it
+                tail.compareAndSet(t, next);
+                continue;
+            }
+
+            // Attempt to link the node, backing off to the elimination array if contended while
+            // the queue is empty
+            boolean wasEmpty = (t == head.get());
+            if (t.casNext(null, node)) {
+                tail.compareAndSet(t, node);
+                return true;
+            } else if (wasEmpty && tryTransfer(e)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public @Nullable E poll() {
+        for (;;) {
+            Node<E> h = head.get();
+            Node<E> t = tail.get();
+            Node<E> first = h.next;
+            if (h != head.get()) {
+                continue;
+            } else if (first == null) {
+                return tryReceive();
+            } else if (h == t) {
+                // the tail is lagging behind, so help to advance it
+                tail.compareAndSet(t, first);
+            } else if (head.compareAndSet(h, first)) {
+                // the first node is now the sentinel; claim its element unless it was removed
+                E e = first.getAndSet(null);
+                if (e != null) {
+                    return e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        requireNonNull(o);
+
+        for (Node<E> node = head.get().next; node != null; node = node.next) {
+            E value = node.get();
+            if (o.equals(value) && node.compareAndSet(value, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            Node<E> next = first();
+            E nextValue = (next == null) ? null : next.get();
+            Node<E> lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return (next != null);
+            }
+
+            @Override
+            public E next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                E e = nextValue;
+                lastReturned = next;
+                advance();
+                return e;
+            }
+
+            /** Advances to the next node holding an element, capturing it if found. */
+            void advance() {
+                for (next = next.next; next != null; next = next.next) {
+                    nextValue = next.get();
+                    if (nextValue != null) {
+                        return;
+                    }
+                }
+                nextValue = null;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                lastReturned.lazySet(null);
+                lastReturned = null;
+            }
+        };
+    }
+
+    /**
+     * Attempts to transfer the element to a consumer that finds the queue empty, advancing the
+     * current thread's probe if unsuccessful.
+     *
+     * @param e the element to try to exchange
+     * @return if the element was successfully transferred
+     */
+    boolean tryTransfer(E e) {
+        int start = EliminationArena.startIndex();
+        if (arena.awaitExchange(e, start, arena.bound.get())) {
+            return true;
+        }
+        EliminationArena.rehash(start);
+        return false;
+    }
+
+    /**
+     * Attempts to receive an element from a waiting producer, accepting it only if the queue is
+     * still empty once the element was found. The current thread's probe is advanced if
+     * unsuccessful.
+     *
+     * @return an element if successfully transferred or null if unsuccessful
+     */
+    @Nullable E tryReceive() {
+        int start = EliminationArena.startIndex();
+        E e = arena.scanAndMatch(start, arena.bound.get(), isEmpty);
+        if (e == null) {
+            EliminationArena.rehash(start);
+        }
+        return e;
+    }
+
+    /* ---------------- Serialization Support -------------- */
+
+    static final long serialVersionUID = 1L;
+
+    Object writeReplace() {
+        return new SerializationProxy<E>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /** A proxy that is serialized instead of the queue, containing the elements in FIFO order. */
+    static final class SerializationProxy<E> implements Serializable {
+        final List<E> elements;
+
+        SerializationProxy(EliminationQueue<E> queue) {
+            this.elements = new ArrayList<>(queue);
+        }
+
+        Object readResolve() {
+            return new EliminationQueue<>(elements);
+        }
+
+        static final long serialVersionUID = 1;
+    }
+
+    /** An item in the queue, where a null value indicates the sentinel or a removed element. */
+    static final class Node<E> extends AtomicReference<E> {
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("rawtypes")
+        static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+        volatile Node<E> next;
+
+        Node(@Nullable E value) {
+            super(value);
+        }
+
+        boolean casNext(Node<E> expect, Node<E> update) {
+            return NEXT.compareAndSet(this, expect, update);
+        }
+    }
+}
@@ -26,18 +26,24 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import com.github.benmanes.caffeine.EliminationArena.PaddedAtomicReference;
+import com.github.benmanes.caffeine.WaiterQueue.Waiter;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ForwardingIterator;
 import com.google.common.collect.Lists;
 
 /**
- * An unbounded thread-safe stack based on linked nodes. This stack orders elements LIFO
+ * An optionally-bounded thread-safe stack based on linked nodes. This stack orders elements LIFO
  * (last-in-first-out). The <em>top</em> of the stack is that element that has been on the stack
  * the shortest time. New elements are inserted at and retrieved from the top of the stack. A
  * {@code EliminationStack} is an appropriate choice when many threads will exchange elements
@@ -58,7 +64,23 @@ import com.google.common.collect.Lists;
  * Beware that, unlike in most collections, the {@code size} methos is <em>NOT</em> a 
  * constant-time operation. Because of the asynchronous nature of these stacks, determining the 
  * current number of elements requires a traversal of the elements, and so may report inaccurate
- * results if this collection is modified during traversal
+ * results if this collection is modified during traversal. A stack may instead be built with a
+ * striped counter by using {@link Builder#countSize()}, in which case the {@code size} and
+ * {@code isEmpty} methods are constant-time estimates.
+ * <p>
+ * The optional capacity bound, specified by {@link Builder#maximumSize(long)}, is a means of
+ * applying backpressure to producers that outpace the consumers. If unspecified, the capacity is
+ * unbounded. When the stack is bounded, {@link #offer} returns {@code false} and {@link #push}
+ * throws an {@link IllegalStateException} if the stack is full.
+ * <p>
+ * A stack built with {@link Builder#recordStats()} records the contention on the top of the stack
+ * and the activity in its elimination arena, which is exposed by {@link #stats()}.
+ * <p>
+ * A thread that waits in the elimination arena, or that retries a contended update of the top of
+ * the stack, pauses between its attempts as directed by the stack's {@link Backoff} strategy. The
+ * default busy-polls, which has the least latency when each thread has a core of its own, and
+ * {@link Builder#backoff(Backoff)} selects a strategy that gives up the processor when there are
+ * more runnable threads than cores.
  * 
  * @author Ben Manes (ben.manes@gmail.com)
  */
@@ -78,8 +100,36 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
      * not successful the the thread repeats the process until the element is added to the stack or
      * a cancellation occurs.
      * 
-     * This implementation borrows optimizations from {@link java.util.concurrent.Exchanger} for
-     * choosing an arena location and awaiting a match [4].
+     * The arena is implemented by {@link EliminationArena}, which borrows optimizations from
+     * {@link java.util.concurrent.Exchanger} for choosing an arena location and awaiting a match [4].
+     *
+     * An element is removed from the interior of the stack by clearing its node's value, which
+     * leaves a dead node in the list. A dead node at the top is popped by peek and isEmpty, and the
+     * traversals (remove, contains, size and iteration) unlink the dead interior nodes that they
+     * pass by writing the link of the preceding live node. This amortized compaction keeps the cost
+     * of a traversal proportional to the number of live elements plus the removals since the
+     * previous traversal. A plain write is sufficient because nodes are never reused and a dead
+     * node never becomes live again, and interior links are only modified to skip dead nodes. A
+     * racing unlink may resurrect a dead node that another thread skipped, which is benign as it
+     * will be unlinked by a later traversal, but it can never unlink a live node. As an unlink may
+     * redirect a node that was concurrently detached by drainTo, that method records the nodes it
+     * detaches rather than following their links to the end of the detached prefix.
+     *
+     * A bounded stack maintains the striped counter and compares its sum to the capacity before
+     * linking a node, so the bound does not add a shared variable that every push must update.
+     * The check and the push are not atomic, so the stack may transiently exceed its capacity by
+     * up to the number of concurrent producers. A producer that finds the stack full may still
+     * complete by elimination, as a push that is cancelled by a concurrent pop never grows the
+     * stack.
+     *
+     * A timed pop that spun without finding an element parks. Unless the stack was built with
+     * Builder#blockingPop(), a push does not signal it, so the consumer polls the stack between
+     * parks that double up to MAX_PARK_NANOS. A blocking pop instead publishes a waiter in a
+     * WaiterQueue, which a producer checks before linking its node, to hand the element directly
+     * to a waiting consumer, and afterwards, to signal one to retry. The check is a read of the
+     * queue's head, so only a stack that opts in pays for it on every push. If a consumer was
+     * handed an element while it popped another then that element is given to another consumer
+     * or pushed back, regardless of the capacity.
      * 
      * [1] A Scalable Lock-free Stack Algorithm
      * http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.156.8728
@@ -91,89 +141,96 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
      * http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.59.7396
      */
 
-    /** The number of CPUs */
-    static final int NCPU = Runtime.getRuntime().availableProcessors();
-
-    /** The number of slots in the elimination array. */
-    static final int ARENA_LENGTH = ceilingNextPowerOfTwo((NCPU + 1)/2);
+    /**
+     * The initial duration that a timed push parks for when the stack is full, and that a timed
+     * pop that is not signaled by a push parks for once it has spun without finding an element.
+     */
+    static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
 
-    /** The mask value for indexing into the arena. */
-    static int ARENA_MASK = ARENA_LENGTH - 1;
+    /** The maximum duration that a timed push, or a timed pop that is not signaled, parks for. */
+    static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
-    /** The number of times to step ahead, probe, and try to match. */
-    static final int LOOKAHEAD = Math.min(4, NCPU);
+    /** The top of the stack. */
+    final AtomicReference<Node<E>> top;
 
-    /**
-     * The number of times to spin (doing nothing except polling a memory location) before giving up
-     * while waiting to eliminate an operation. Should be zero on uniprocessors. On mutiprocessors,
-     * this value should be large enough so that two threads exchanging items as fast as possible
-     * block only when one of them is stalled (due to GC or preemption), but not much longer, to avoid
-     * wasting CPU resources. Seen differently, this value is a little over half the number of cycles
-     * of an average context switch time on most systems. The value here is approximately the average
-     * of those accross a range of tested systems.
-     */
-     static final int SPINS = (NCPU == 1) ? 0 : 2000;
+    /** The arena where slots can be used to perform an exchange */
+    final EliminationArena<E> arena;
 
-     /** The number of times to spin per lookahead step */
-     static final int SPINS_PER_STEP = (SPINS / LOOKAHEAD);
+    /** The number of elements on the stack, if maintained. */
+    @Nullable final LongAdder count;
 
-     /** A marker indicating that the arena slot is free. */
-     static final Object FREE = null;
+    /** The maximum number of elements, or {@link Long#MAX_VALUE} if unbounded. */
+    final long maximumSize;
 
-     /** A marker indicating that a thread is waiting in that slot to be transfered an element. */
-     static final Object WAITER = new Object();
+    /** The recorder of the contention and elimination statistics. */
+    final EliminationStatsRecorder recorder;
 
-     static in ceilingNextPowerOfTwo(int x) {
-        // From Hacker's Delight, Chapter 3, Harry S. Warren Jr.
-        return 1 << (Integer.SIZE - Integer.numberOfLeadingZeroes(x - 1));
-     }
+    /** The strategy for pausing between the attempts of a contended operation. */
+    final Backoff backoff;
 
-     /** The top of the stack. */
-     final AtomicReference<Node<E>> top;
+    /** The consumers that are parked in a blocking pop until an element is pushed, if enabled. */
+    @Nullable final WaiterQueue<E> waiters;
 
-     /** The arena where slots can be used to perform an exchange */
-     final PaddedAtomicReference<Object>[] arena;
+    /** Creates a {@code EliminationStack} that is initially empty. */
+    public EliminationStack() {
+        top = new PaddedAtomicReference<>();
+        recorder = EliminationStatsRecorder.disabled();
+        backoff = Backoff.spin();
+        arena = new EliminationArena<>(recorder, backoff);
+        maximumSize = Long.MAX_VALUE;
+        waiters = null;
+        count = null;
+    }
 
-     /** Creates a {@code EliminationStack} that is initially empty. */
-     @SuppressWarnings("unchecked")
-     public EliminationStack() {
+    /** Creates a {@code EliminationStack} with the settings of the builder. */
+    EliminationStack(Builder<E> builder) {
         top = new PaddedAtomicReference<>();
-        arena = new PaddedAtomicReference[ARENA_LENGTH];
-        for (int i=0; i < ARENA_LENGTH; i++) {
-            arena[i] = new PaddedAtomicReference<Object>();
-        }
-     }
-
-     /** 
-      * Creates a {@code EliminationStack} initially containing the elements of the given collection, 
-      * added in travel order of the collection's iterator.
-      *
-      * @param c the collection of elements to initially contain
-      * @throws NullPointerException if the specified collection or any of its elements are null
+        recorder = builder.recordStats
+                ? EliminationStatsRecorder.striped()
+                : EliminationStatsRecorder.disabled();
+        backoff = builder.backoff;
+        arena = new EliminationArena<>(recorder, backoff);
+        waiters = builder.blockingPop ? new WaiterQueue<>() : null;
+        maximumSize = builder.maximumSize;
+        count = (builder.countSize || isBounded()) ? new LongAdder() : null;
+    }
+
+    /**
+     * Creates a {@code EliminationStack} initially containing the elements of the given collection,
+     * added in traversal order of the collection's iterator.
+     *
+     * @param c the collection of elements to initially contain
+     * @throws NullPointerException if the specified collection or any of its elements are null
      */
-    public EliminationStack() {
+    public EliminationStack(Collection<? extends E> c) {
         this();
         addAll(c);
     }
 
     /**
      * Returns <tt>true</tt> if this stack contains no elements.
+     * <p>
+     * If the stack maintains a counter then the result is a constant-time estimate, with the same
+     * accuracy as {@link #size()}.
      * 
      * @return <tt>true</tt> if this stack contains no elements
      */
     @Override
     public boolean isEmpty() {
-        for(;;) {
+        if (count != null) {
+            return (count.sum() <= 0);
+        }
+        for (;;) {
             Node<E> node = top.get();
             if (node == null) {
                 return true;
             }
-        }
-        E e = node.get();
-        if (e == null) {
-            top.compareAndSet(node, node.next)
-        } else {
-            return false;
+            E e = node.get();
+            if (e == null) {
+                top.compareAndSet(node, node.next);
+            } else {
+                return false;
+            }
         }
     }
 
@@ -185,24 +242,47 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
      * number of elements requires an O(n) tranversal. Additionally if elements are added or
      * removed during execution of this method, the returned result may be inaccurate. Thus,
      * this method is typically not very useful in concurrent applications.
+     * <p>
+     * If the stack maintains a counter then this method is a constant-time estimate instead. The
+     * counter is updated after an element is added or removed, so while those operations are in
+     * progress the estimate may differ from the number of elements on the stack by up to the
+     * number of concurrent operations, and a transient negative count is reported as zero. When
+     * the stack is quiescent the estimate is exact. Pairs of operations that are eliminated never
+     * modify the stack and are not counted.
      * 
      * @return the number of elements in this stack
      */
     @Override
     public int size() {
+        if (count != null) {
+            return (int) Math.max(0L, Math.min(count.sum(), Integer.MAX_VALUE));
+        }
         int size = 0;
-        for (Node<E> node = top.get(); node != null; node = node.next) {
-            if (node.get() != null) {
+        for (Node<E> pred = null, node = top.get(); node != null;) {
+            Node<E> next = node.next;
+            if (node.get() == null) {
+                unlink(pred, node, next);
+            } else {
+                pred = node;
                 size++;
             }
+            node = next;
         }
         return size;
     }
 
     /** Removes all of the elements of this stack. */
     @Override
-    public void clear() { 
-        top.set(null); 
+    public void clear() {
+        if (count == null) {
+            top.set(null);
+        } else {
+            for (Node<E> node = top.getAndSet(null); node != null; node = node.next) {
+                if (node.getAndSet(null) != null) {
+                    count.decrement();
+                }
+            }
+        }
     }
 
     /**
@@ -217,11 +297,17 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
     public boolean contains(Object o) {
         requireNonNull(o);
 
-        for (Node<E> node = top.get(); node != null; node = node.next) {
+        for (Node<E> pred = null, node = top.get(); node != null;) {
+            Node<E> next = node.next;
             E value = node.get();
-            if (o.equals(value)) {
+            if (value == null) {
+                unlink(pred, node, next);
+            } else if (o.equals(value)) {
                 return true;
+            } else {
+                pred = node;
             }
+            node = next;
         }
         return false;
     }
@@ -232,7 +318,7 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
      * 
      * @return the top of the stack or <tt>null</tt> if this stack is empty
      */
-    public peek() {
+    public @Nullable E peek() {
         for (;;) {
             Node<E> node = top.get();
             if (node == null) {
@@ -253,6 +339,7 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
      * @return the top of this stack, or <tt>null</tt> if this stack is empty
      */
     public @Nullable E pop() {
+        int attempts = 0;
         for (;;) {
             Node<E> current = top.get();
             if (current == null) {
@@ -261,60 +348,515 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
 
             //Attempt to pop from the stack, backing off to the elimination array if contended
             if ((top.get() == current) && top.compareAndSet(current,current.next)) {
-                return current.get();
+                // claim the element, as it may be concurrently removed
+                E e = current.getAndSet(null);
+                if (e == null) {
+                    continue;
+                } else if (count != null) {
+                    count.decrement();
+                }
+                return e;
             }
+            recorder.recordCasFailure();
             E e = tryReceive();
             if (e != null) {
                 return e;
             }
+            backoff.pause(attempts++);
+        }
+    }
+
+    /**
+     * Attempts to receive an element from a concurrent push through the arena.
+     *
+     * @return an element if successfully transferred or null if unsuccessful
+     */
+    @Nullable E tryReceive() {
+        recorder.recordAttempt();
+        E e = arena.tryReceive();
+        if (e != null) {
+            recorder.recordReceive();
+        }
+        return e;
+    }
+
+    /**
+     * Attempts to receive an element from a concurrent push through the arena, starting the search
+     * at the given arena location.
+     *
+     * @param start the arena location to start at
+     * @return an element if successfully transferred or null if unsuccessful
+     */
+    @Nullable E tryReceive(int start) {
+        recorder.recordAttempt();
+        E e = arena.tryReceive(start);
+        if (e != null) {
+            recorder.recordReceive();
+        }
+        return e;
+    }
+
+    /**
+     * Removes and returns the top element, waiting up to the specified wait time if necessary for
+     * an element to become available. A consumer that finds the stack empty waits in the arena for
+     * a concurrent push to transfer its element. If none arrives then the consumer pauses as
+     * directed by the stack's {@link Backoff} strategy and retries from another arena location.
+     * Once the pauses have been charged as many spins as the arena's spin limit, the consumer
+     * parks. On a uniprocessor the arena does not spin, so the consumer parks as soon as it finds
+     * the stack empty.
+     * <p>
+     * If the stack was built with {@link Builder#blockingPop()} then the consumer parks until a
+     * push unparks it or the wait time elapses. Otherwise a push does not signal the consumer, so
+     * it retries after parking for a duration that starts at a microsecond and doubles up to a
+     * millisecond, bounded by the remaining wait time. A pushed element may then wait for up to a
+     * millisecond before it is popped.
+     *
+     * @param timeout how long to wait before giving up, in units of {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the {@code timeout} parameter
+     * @return the top of this stack, or <tt>null</tt> if the specified waiting time elapses before
+     *         an element is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public @Nullable E pop(long timeout, TimeUnit unit) throws InterruptedException {
+        return pop(true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes and returns the top element, waiting if necessary for an element to become
+     * available, as described by {@link #pop(long, TimeUnit)}.
+     *
+     * @param timed if the wait is bounded by a timeout
+     * @param nanos the maximum time to wait, if timed
+     * @return the top of this stack, or <tt>null</tt> if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Nullable E pop(boolean timed, long nanos) throws InterruptedException {
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        long parkNanos = MIN_PARK_NANOS;
+        int start = EliminationArena.startIndex();
+        Waiter waiter = null;
+        int attempts = 0;
+        int spins = 0;
+        for (;;) {
+            if (Thread.interrupted()) {
+                E handed = (waiter == null) ? null : cancel(waiter, null);
+                if (handed != null) {
+                    // the element was handed over, so return it and preserve the interrupt
+                    Thread.currentThread().interrupt();
+                    return handed;
+                }
+                throw new InterruptedException();
+            }
+            E e = pop();
+            if ((e != null) || ((e = tryReceive(start)) != null)) {
+                return (waiter == null) ? e : cancel(waiter, e);
+            }
+            long remaining = timed ? (deadline - System.nanoTime()) : Long.MAX_VALUE;
+            if (remaining <= 0L) {
+                EliminationArena.rehash(start);
+                return (waiter == null) ? null : cancel(waiter, null);
+            }
+            start = EliminationArena.nextIndex(start);
+            if (spins < EliminationArena.SPINS) {
+                spins += arena.pause(attempts++);
+                continue;
+            } else if (waiters == null) {
+                LockSupport.parkNanos(this, Math.min(parkNanos, remaining));
+                parkNanos = Math.min(2 * parkNanos, MAX_PARK_NANOS);
+                continue;
+            }
+
+            Object state = (waiter == null) ? WaiterQueue.RETRY : waiter.get();
+            if (state == WaiterQueue.RETRY) {
+                // retry after publishing the waiter, as an element may have been pushed since
+                recorder.recordAttempt();
+                waiter = waiters.add(Thread.currentThread());
+            } else if (state != null) {
+                recorder.recordReceive();
+                @SuppressWarnings("unchecked")
+                E handed = (E) state;
+                return handed;
+            } else if (timed) {
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
         }
     }
 
+    /**
+     * Cancels the waiter of a consumer that stopped waiting and returns the element that the
+     * consumer completes with. If a producer handed the waiter an element then that element is
+     * returned, unless the consumer already has one, in which case it is given to another consumer
+     * or pushed back.
+     *
+     * @param waiter the waiter to cancel
+     * @param e the element that the consumer popped, or null if none
+     * @return the element that the consumer completes with, or null if none
+     */
+    @Nullable E cancel(Waiter waiter, @Nullable E e) {
+        E handed = waiters.cancel(waiter);
+        if (handed == null) {
+            return e;
+        } else if (e == null) {
+            recorder.recordReceive();
+            return handed;
+        } else if (!waiters.transfer(handed)) {
+            pushBack(handed);
+        }
+        return e;
+    }
+
+    /**
+     * Pushes an element that a consumer was handed but cannot return, regardless of whether the
+     * stack is full, so that the element is not lost.
+     *
+     * @param e the element to push
+     */
+    void pushBack(E e) {
+        Node<E> node = new Node<E>(e);
+        int attempts = 0;
+        for (;;) {
+            node.next = top.get();
+            if ((top.get() == node.next) && top.compareAndSet(node.next, node)) {
+                break;
+            }
+            recorder.recordCasFailure();
+            backoff.pause(attempts++);
+        }
+        if (count != null) {
+            count.increment();
+        }
+        waiters.signal(1);
+    }
+
     /**
      * Pushes an element onto the stack (in other words, adds an element at the top of this stack).
      * 
      * @param e the element to push
+     * @throws IllegalStateException if the element cannot be added because the stack is full
      */
     public void push(E e) {
+        if (!offer(e)) {
+            throw new IllegalStateException("Stack full");
+        }
+    }
+
+    /**
+     * Pushes an element onto the stack if it is possible to do so immediately without exceeding
+     * the capacity, returning {@code true} upon success and {@code false} if the stack is full. An
+     * unbounded stack is never full.
+     *
+     * @param e the element to push
+     * @return {@code true} if the element was added to this stack, else {@code false}
+     */
+    public boolean offer(E e) {
         requireNonNull(e);
 
-        Node<E> node = new Node<E>(e);
-        for(;;) {
+        if ((waiters != null) && !waiters.isEmpty() && tryTransferToWaiter(e)) {
+            return true;
+        }
+
+        Node<E> node = null;
+        int attempts = 0;
+        for (;;) {
+            if (isBounded() && isFull()) {
+                // a full stack may only transfer the element to a concurrent pop
+                return tryTransfer(e);
+            } else if (node == null) {
+                node = new Node<E>(e);
+            }
             node.next = top.get();
 
             // Attempt to push to the stack, backing off to the elimination array if contended
             if ((top.get() == node.next) && top.compareAndSet(node.next,node)) {
-                return;
+                if (count != null) {
+                    count.increment();
+                }
+                if (waiters != null) {
+                    waiters.signal(1);
+                }
+                return true;
             }
+            recorder.recordCasFailure();
             if (tryTransfer(e)) {
-                return;
+                return true;
             }
+            backoff.pause(attempts++);
         }
     }
 
+    /**
+     * Attempts to transfer the element to a concurrent pop through the arena.
+     *
+     * @param e the element to try to exchange
+     * @return if the element was successfully transferred
+     */
+    boolean tryTransfer(E e) {
+        recorder.recordAttempt();
+        if (arena.tryTransfer(e)) {
+            recorder.recordTransfer();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Attempts to transfer the element to a consumer that is parked in a blocking pop.
+     *
+     * @param e the element to transfer
+     * @return if the element was successfully transferred
+     */
+    boolean tryTransferToWaiter(E e) {
+        recorder.recordAttempt();
+        if (waiters.transfer(e)) {
+            recorder.recordTransfer();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Pushes an element onto the stack, waiting up to the specified wait time if necessary for
+     * space to become available. As a pop does not signal waiting producers, a producer that finds
+     * the stack full retries after parking for a duration that doubles on each attempt, up to a
+     * small limit.
+     *
+     * @param e the element to push
+     * @param timeout how long to wait before giving up, in units of {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the {@code timeout} parameter
+     * @return {@code true} if successful, or {@code false} if the specified waiting time elapses
+     *         before space is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + nanos;
+        long parkNanos = MIN_PARK_NANOS;
+        for (;;) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else if (offer(e)) {
+                return true;
+            }
+            nanos = deadline - System.nanoTime();
+            if (nanos <= 0L) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(parkNanos, nanos));
+            parkNanos = Math.min(2 * parkNanos, MAX_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Returns the number of additional elements that this stack can accept without exceeding its
+     * capacity, or {@code Long.MAX_VALUE} if unbounded. This is an estimate with the same accuracy
+     * as {@link #size()}, so an attempt to push an element may fail even if the result is positive.
+     *
+     * @return the remaining capacity
+     */
+    public long remainingCapacity() {
+        return isBounded() ? Math.max(0L, maximumSize - count.sum()) : Long.MAX_VALUE;
+    }
+
+    /** Returns if the stack has a capacity bound. */
+    boolean isBounded() {
+        return (maximumSize != Long.MAX_VALUE);
+    }
+
+    /** Returns if the estimated number of elements has reached the capacity of a bounded stack. */
+    boolean isFull() {
+        return (count.sum() >= maximumSize);
+    }
+
     @Override
     public boolean add(E e) {
         push(e);
         return true;
     }
 
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        pushAll(c);
+        return !c.isEmpty();
+    }
+
+    /**
+     * Pushes all of the elements in the specified collection onto the stack, in the traversal order
+     * of the collection's iterator, so that the last element traversed becomes the top of the stack.
+     * The elements are linked into a chain that is spliced onto the stack by a single update of the
+     * top reference, rather than by an update per element.
+     *
+     * @param c the elements to push
+     * @throws NullPointerException if the specified collection or any of its elements are null
+     * @throws IllegalStateException if the elements cannot be added because the capacity would be
+     *         exceeded
+     */
+    public void pushAll(Collection<? extends E> c) {
+        requireNonNull(c);
+
+        int length = 0;
+        Node<E> first = null;
+        Node<E> last = null;
+        for (E e : c) {
+            requireNonNull(e);
+            Node<E> node = new Node<E>(e);
+            if (first == null) {
+                last = node;
+            } else {
+                node.next = first;
+            }
+            first = node;
+            length++;
+        }
+        if (first == null) {
+            return;
+        } else if (isBounded() && (length > remainingCapacity())) {
+            throw new IllegalStateException("Stack full");
+        }
+
+        // The chain cannot be eliminated as a unit, so retry until it is spliced onto the stack
+        int attempts = 0;
+        for (;;) {
+            last.next = top.get();
+            if ((top.get() == last.next) && top.compareAndSet(last.next, first)) {
+                if (count != null) {
+                    count.add(length);
+                }
+                if (waiters != null) {
+                    waiters.signal(length);
+                }
+                return;
+            }
+            recorder.recordCasFailure();
+            backoff.pause(attempts++);
+        }
+    }
+
+    /**
+     * Removes all of the elements from this stack by detaching the linked list with a single update
+     * of the top reference.
+     *
+     * @return the elements that were removed, in LIFO order
+     */
+    public List<E> popAll() {
+        List<E> elements = new ArrayList<>();
+        for (Node<E> node = top.getAndSet(null); node != null; node = node.next) {
+            E e = node.getAndSet(null);
+            if (e != null) {
+                elements.add(e);
+            }
+        }
+        if (count != null) {
+            count.add(-elements.size());
+        }
+        return elements;
+    }
+
+    /**
+     * Removes at most the given number of elements from the top of this stack and adds them to the
+     * given collection, in LIFO order. The elements are detached as a prefix of the linked list with
+     * a single update of the top reference. A failure encountered while attempting to add elements
+     * to collection {@code c} may result in elements being in neither, either or both collections
+     * when the associated exception is thrown.
+     *
+     * @param c the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     * @throws NullPointerException if the specified collection is null
+     * @throws IllegalArgumentException if the specified collection is this stack
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        } else if (maxElements <= 0) {
+            return 0;
+        }
+
+        int attempts = 0;
+        for (;;) {
+            Node<E> first = top.get();
+            if (first == null) {
+                return 0;
+            }
+
+            // Find the end of the prefix containing the live elements to detach
+            List<Node<E>> prefix = new ArrayList<>(Math.min(maxElements, 16));
+            Node<E> end = first;
+            for (; (end != null) && (prefix.size() < maxElements); end = end.next) {
+                if (end.get() != null) {
+                    prefix.add(end);
+                }
+            }
+
+            if ((top.get() == first) && top.compareAndSet(first, end)) {
+                int drained = 0;
+                try {
+                    for (Node<E> node : prefix) {
+                        E e = node.getAndSet(null);
+                        if (e != null) {
+                            drained++;
+                            c.add(e);
+                        }
+                    }
+                } finally {
+                    if (count != null) {
+                        count.add(-drained);
+                    }
+                }
+                return drained;
+            }
+            recorder.recordCasFailure();
+            backoff.pause(attempts++);
+        }
+    }
+
     @Override
     public boolean remove (Object o) {
         requireNonNull(o);
 
-        for (Node<E> node=top.get(); node != null; node = node.next) {
+        for (Node<E> pred = null, node = top.get(); node != null;) {
+            Node<E> next = node.next;
             E value = node.get();
-            if (o.equals(value) && node.compareAndSet(value, null)) {
+            if (value == null) {
+                unlink(pred, node, next);
+            } else if (o.equals(value) && node.compareAndSet(value, null)) {
+                if (count != null) {
+                    count.decrement();
+                }
+                unlink(pred, node, next);
                 return true;
+            } else {
+                pred = node;
             }
+            node = next;
         }
         return false;
     }
 
+    /**
+     * Unlinks the dead node from the stack. If the node has no live predecessor then it is popped
+     * if it is still the top of the stack, otherwise the predecessor is linked to the successor.
+     *
+     * @param pred the closest live node preceding the dead node, or null if there is none
+     * @param node the dead node
+     * @param next the node that followed the dead node
+     */
+    void unlink(@Nullable Node<E> pred, Node<E> node, @Nullable Node<E> next) {
+        if (pred == null) {
+            top.compareAndSet(node, next);
+        } else {
+            pred.next = next;
+        }
+    }
+
     @Override
     public Iterator<E> iterator() {
         final class ReadOnlyIterator extends AbstractIterator<E> {
             Node<E> current = top.get();
+            Node<E> computed;
+            Node<E> computedPred;
 
             @Override
             protected E computeNext() {
@@ -322,9 +864,15 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
                     if (current == null) {
                         return endOfData();
                     }
+                    Node<E> next = current.next;
                     E e = current.get();
-                    current = current.next;
-                    if (e != null) {
+                    if (e == null) {
+                        unlink(computed, current, next);
+                        current = next;
+                    } else {
+                        computedPred = computed;
+                        computed = current;
+                        current = next;
                         return e;
                     }
                 }
@@ -332,13 +880,35 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
         };
         return new ForwardingIterator<E>() {
             final ReadOnlyIterator delegate = new ReadOnlyIterator();
+            Node<E> lastReturned;
+            Node<E> lastPred;
+            E lastValue;
+
+            @Override
+            public E next() {
+                // the delegate computes ahead, so capture the node before it advances
+                if (!delegate.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = delegate.computed;
+                lastPred = delegate.computedPred;
+                lastValue = delegate.next();
+                return lastValue;
+            }
 
             @Override
             public void remove() {
-                if (delegate.current == null) {
+                if (lastReturned == null) {
                     throw new IllegalStateException();
                 }
-                delegate.current.lazySet(null);
+                if (lastReturned.compareAndSet(lastValue, null)) {
+                    if (count != null) {
+                        count.decrement();
+                    }
+                    unlink(lastPred, lastReturned, lastReturned.next);
+                }
+                lastReturned = null;
+                lastValue = null;
             }
 
             @Override
@@ -348,6 +918,17 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
         };
     }
 
+    /**
+     * Returns a snapshot of the statistics recorded by this stack. If the stack was not built with
+     * {@link Builder#recordStats()} then the counters are zero and only the arena's current width
+     * and occupancy are reported.
+     *
+     * @return a snapshot of the contention and elimination statistics
+     */
+    public EliminationStats stats() {
+        return recorder.snapshot(arena);
+    }
+
     /**
      * Returns a view as a last-in-first-out (Lifo) {@link Queue}. Method <tt>add</tt> is mapped to
      * <tt>push</tt>, <tt>remove</tt> is mapped to <tt>pop</tt> and so on. This view can be useful
@@ -360,103 +941,216 @@ final class EliminationStack <E> extends AbstractCollection<E> implements Serial
     }
 
     /**
-     * Attempts to transfer the element to a waiting consumer.
-     * 
-     * @param e the element to try to exchange
-     * @return if the element was successfully transferred
+     * A builder that creates {@link EliminationStack} instances. It provides a flexible approach
+     * for constructing customized instances with a named parameter syntax. It can be used in the
+     * following manner:
+     * <pre>{@code
+     *   EliminationStack<Task> stack = new EliminationStack.Builder<Task>()
+     *       .countSize()
+     *       .recordStats()
+     *       .backoff(Backoff.spinThenPark())
+     *       .build();
+     * }</pre>
      */
-    boolean tryTransfer() {
-        int start = startIndex();
-        return scanAndTransferToWaiter(e, start) || awaitExchange(e, start);
-    }
+    static final class Builder<E> {
+        long maximumSize = Long.MAX_VALUE;
+        Backoff backoff = Backoff.spin();
+        boolean recordStats;
+        boolean blockingPop;
+        boolean countSize;
 
-    /**
-     * Scans the arena searching for a waiting consumer to exchange with.
-     * 
-     * @param e the element to try to exchange
-     * @return if the element was successfully transfered
-     */
-    boolean scanAndTransferToWaiter(E e, int start) {
-        for (int i=0; i < ARENA_LENGTH; i++) {
-            int index = (start + i) & ARENA_MASK;
-            AtomicReference<Object> slot = arena[index];
-            // if some thread is waiting to receive an element then attempt to provide it
-            if ((slot.get() == WAITER) && slot.compareAndSet(WAITER, e)) {
-                return true;
+        /**
+         * Specifies that the stack maintains a striped counter of its elements, so that
+         * {@link EliminationStack#size()} and {@link EliminationStack#isEmpty()} are constant-time
+         * estimates rather than traversals. This adds an uncontended update of the counter to every
+         * operation that modifies the stack.
+         *
+         * @return this builder
+         */
+        public Builder<E> countSize() {
+            countSize = true;
+            return this;
+        }
+
+        /**
+         * Specifies that the stack records the failed updates of its top, the operations that
+         * complete by elimination, and the spins and collisions in its arena. The counters are
+         * striped so that recording does not add a shared point of contention, and a stack that
+         * does not record statistics incurs no cost for them.
+         *
+         * @return this builder
+         */
+        public Builder<E> recordStats() {
+            recordStats = true;
+            return this;
+        }
+
+        /**
+         * Specifies that a consumer in {@link EliminationStack#pop(long, TimeUnit)}, once it has
+         * spun in the arena without finding an element, parks until a push hands it an element or
+         * signals it to retry, rather than polling the stack. This adds a check for a waiting
+         * consumer to every push.
+         *
+         * @return this builder
+         */
+        public Builder<E> blockingPop() {
+            blockingPop = true;
+            return this;
+        }
+
+        /**
+         * Specifies the maximum number of elements that the stack may contain. A bounded stack
+         * maintains a striped counter of its elements, as if {@link #countSize()} was specified,
+         * and the bound is enforced approximately by comparing it to the counter's estimate.
+         *
+         * @param maximumSize the maximum number of elements
+         * @return this builder
+         * @throws IllegalArgumentException if {@code maximumSize} is negative
+         */
+        public Builder<E> maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException();
             }
+            this.maximumSize = maximumSize;
+            return this;
         }
-        return false;
+
+        /**
+         * Specifies the strategy for pausing between the attempts of a contended operation, both
+         * while waiting in the elimination arena and before retrying an update of the top of the
+         * stack (default {@link Backoff#spin()}).
+         *
+         * @param backoff the strategy for pausing between attempts
+         * @return this builder
+         * @throws NullPointerException if the backoff is null
+         */
+        public Builder<E> backoff(Backoff backoff) {
+            this.backoff = requireNonNull(backoff);
+            return this;
+        }
+
+        /**
+         * Creates a new {@link EliminationStack} instance.
+         *
+         * @return a new, empty stack
+         */
+        public EliminationStack<E> build() {
+            return new EliminationStack<>(this);
+        }
+    }
+
+    /* ---------------- Serialization Support -------------- */
+
+    static final long serialVersionUID = 1L;
+
+    Object writeReplace() {
+        return new SerializationProxy<E>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
     }
 
     /**
-     * Waits for (by spinning) to have the element transfered to another thread. The element is
-     * filled into an empty slot in the arena an spun on until it is transfered or a per-slot spin
-     * limit is reached.This search and wait strategy is repeated by selecting another slot until a
-     * total spin limit is reached.
-     * 
-     * @param e the element to transfer
-     * @param start the arena location to start at
-     * @return if an exchange was completed succesfully
+     * A proxy that is serialized instead of the stack, containing the elements in LIFO order. If a
+     * custom {@link Backoff} is used then it must be serializable for the stack to be serialized.
      */
-    boolean awaitExchange(E e, int start) {
-        for (int step = 0, totalSpins = 0; (step < ARENA_LENGTH) && (totalSpins < SPINS); step++) {
-            int index = (start + step) & ARENA_MASK;
-            AtomicReference<Object> slot = arena[index];
+    static final class SerializationProxy<E> implements Serializable {
+        final List<E> elements;
+        final boolean countSize;
+        final boolean recordStats;
+        final boolean blockingPop;
+        final long maximumSize;
+        final Backoff backoff;
 
-            Object found = slot.get();
-            if ((found == WAITER) && slot.compareAndSet(WAITER, e)) {
-                return true;
-            } else if ((found == FREE) && slot.compareAndSet(FREE, e)) {
-                int slotSpins = 0;
-                for (;;) {
-                    found = slot.get();
-                    if (found  != e) {
-                        return true;
-                    } else if ((slotSpins >= SPINS_PER_STEP) && (slot.compareAndSet(e, FREE))) {
-                        // failed to transfer the element; try a new slot
-                        totalSpins += slotSpins;
-                        break;
-                    }
-                    slotSpins++;
-                }
-            }
+        SerializationProxy(EliminationStack<E> stack) {
+            this.elements = new ArrayList<>(stack);
+            this.countSize = (stack.count != null);
+            this.maximumSize = stack.maximumSize;
+            this.recordStats = (stack.recorder != EliminationStatsRecorder.disabled());
+            this.blockingPop = (stack.waiters != null);
+            this.backoff = stack.backoff;
         }
-        // failed to transfer the element; give up
-        return false;
+
+        Object readResolve() {
+            Builder<E> builder = new Builder<>();
+            builder.countSize = countSize;
+            builder.recordStats = recordStats;
+            builder.blockingPop = blockingPop;
+            builder.maximumSize = maximumSize;
+            builder.backoff = backoff;
+            EliminationStack<E> stack = builder.build();
+            stack.pushAll(Lists.reverse(elements));
+            return stack;
+        }
+
+        static final long serialVersionUID = 1;
     }
 
-    /** 
-     * Attempts to receive an element from a waiting provider
-     * 
-     * @return an element if successfully transferred or null if unsuccessful
-    */
-    @Nullable E tryReceive() {
-        int start = startIndex();
-        E e = scanAndMatch(start);
-        return (e == null)
-            ? awaitMatch(start)
-            : e;
+    /** An item on the stack. The node is mutable prior to being inserted to avoid object churn. */
+    static final class Node<E> extends AtomicReference<E> {
+        private static final long serialVersionUID = 1L;
+
+        Node<E> next;
+
+        Node(E value) {
+            super(value);
+        }
     }
 
-    /**
-     * Scans the arena searching for a waiting producer to transfer from.
-     * 
-     * @param start the arena location to start at
-     * @return an element if successfully transferred or null if unsuccessful
-     */
-    @Nullable E scanAndMatch(int start) {
-        for (int i=0; i<ARENA_LENGTH; i++) {
-            int index = (start + i) & ARENA_MASK;
-            AtomicReference<Object> slot = arena[index];
-
-            // accept a transfer if an element is available
-            Object found = slot.get();
-            if ((found != FREE) && (found != WAITER) && slot.compareAndSet(found, FREE)) {
-                @SuppressWarnings("unchecked")
-                E e = (E) found;
-                return e;
-            }
+    /** A view as a last-in-first-out (Lifo) {@link Queue}. */
+    static final class AsLifoQueue<E> extends AbstractQueue<E> implements Queue<E>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final EliminationStack<E> stack;
+
+        AsLifoQueue(EliminationStack<E> stack) {
+            this.stack = stack;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return stack.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return stack.size();
+        }
+
+        @Override
+        public void clear() {
+            stack.clear();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return stack.contains(o);
+        }
+
+        @Override
+        public boolean offer(E e) {
+            return stack.offer(e);
+        }
+
+        @Override
+        public E peek() {
+            return stack.peek();
+        }
+
+        @Override
+        public E poll() {
+            return stack.pop();
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return stack.remove(o);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return stack.iterator();
         }
-        return null;
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * An immutable snapshot of the statistics recorded by an {@link EliminationStatsRecorder}. The
+ * counters are cumulative since the data structure was created, while the arena's width and the
+ * number of occupied slots are sampled when the snapshot is taken. Because the counters are read
+ * one at a time while operations are in progress, a snapshot is not an atomic view.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@Immutable
+final class EliminationStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final long casFailures;
+    final long attempts;
+    final long transfers;
+    final long receives;
+    final long spins;
+    final long collisions;
+    final int arenaWidth;
+    final int occupiedSlots;
+
+    EliminationStats(long casFailures, long attempts, long transfers, long receives, long spins,
+            long collisions, int arenaWidth, int occupiedSlots) {
+        this.casFailures = casFailures;
+        this.attempts = attempts;
+        this.transfers = transfers;
+        this.receives = receives;
+        this.spins = spins;
+        this.collisions = collisions;
+        this.arenaWidth = arenaWidth;
+        this.occupiedSlots = occupiedSlots;
+    }
+
+    /** Returns the number of times that an update of the shared state failed. */
+    public long casFailures() {
+        return casFailures;
+    }
+
+    /**
+     * Returns the number of times that an operation entered the arena to attempt an exchange,
+     * whether after a failed update of the shared state or because the operation could not
+     * complete without a partner, such as a push onto a full stack or a timed pop of an empty one.
+     * A producer that offers its element to a consumer parked in a timed pop, and a consumer that
+     * parks to wait for one, also count as attempts.
+     */
+    public long attempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns the number of elements that producers transferred to consumers through the arena or
+     * handed to a consumer parked in a timed pop.
+     */
+    public long transfers() {
+        return transfers;
+    }
+
+    /**
+     * Returns the number of elements that consumers received from producers through the arena or
+     * were handed while parked in a timed pop.
+     */
+    public long receives() {
+        return receives;
+    }
+
+    /**
+     * Returns the number of elements that were exchanged through the arena, or handed to a parked
+     * consumer, rather than the shared state. Each exchange completes both a producer and a consumer, so it is counted once, as the
+     * producer's transfer.
+     */
+    public long eliminations() {
+        return transfers;
+    }
+
+    /**
+     * Returns the total number of times that threads spun while waiting in the arena, where a
+     * pause of the {@link Backoff} strategy counts as the number of spins that it is charged as.
+     */
+    public long spins() {
+        return spins;
+    }
+
+    /** Returns the number of times that threads collided in an arena slot. */
+    public long collisions() {
+        return collisions;
+    }
+
+    /** Returns the number of arena slots that were in use when the snapshot was taken. */
+    public int arenaWidth() {
+        return arenaWidth;
+    }
+
+    /** Returns the number of arena slots that held a waiting thread when the snapshot was taken. */
+    public int occupiedSlots() {
+        return occupiedSlots;
+    }
+
+    /**
+     * Returns the fraction of the attempts in the arena that completed by an exchange, as either
+     * the producer or the consumer, or {@code 0.0} if the arena was not entered. The rate is at
+     * most {@code 1.0}, as every transfer and receive was preceded by its own attempt.
+     */
+    public double eliminationRate() {
+        return (attempts == 0) ? 0.0 : (double) (transfers + receives) / attempts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        } else if (!(o instanceof EliminationStats)) {
+            return false;
+        }
+        EliminationStats other = (EliminationStats) o;
+        return (casFailures == other.casFailures)
+                && (attempts == other.attempts)
+                && (transfers == other.transfers)
+                && (receives == other.receives)
+                && (spins == other.spins)
+                && (collisions == other.collisions)
+                && (arenaWidth == other.arenaWidth)
+                && (occupiedSlots == other.occupiedSlots);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(casFailures, attempts, transfers, receives, spins,
+                collisions, arenaWidth, occupiedSlots);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("casFailures", casFailures)
+                .add("attempts", attempts)
+                .add("transfers", transfers)
+                .add("receives", receives)
+                .add("spins", spins)
+                .add("collisions", collisions)
+                .add("arenaWidth", arenaWidth)
+                .add("occupiedSlots", occupiedSlots)
+                .toString();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records the contention on a data structure's shared state and the activity in its elimination
+ * arena, so that the arena's width and spin limits can be tuned for a workload. The recording
+ * methods are called on the hot path of every contended operation, so an implementation must be
+ * cheap and must not introduce a shared point of contention.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+interface EliminationStatsRecorder {
+
+    /** Records that an update of the shared state failed its compare-and-swap. */
+    void recordCasFailure();
+
+    /** Records that an operation entered the arena to attempt an exchange. */
+    void recordAttempt();
+
+    /** Records that an element was transferred to a consumer, through the arena or directly. */
+    void recordTransfer();
+
+    /** Records that an element was received from a producer, through the arena or directly. */
+    void recordReceive();
+
+    /**
+     * Records the number of times that a thread spun while waiting in the arena for a match.
+     *
+     * @param spins the number of spins
+     */
+    void recordSpins(int spins);
+
+    /** Records that a thread collided with another operation of the same kind in an arena slot. */
+    void recordCollision();
+
+    /**
+     * Returns a snapshot of the recorded statistics, combined with a sample of the arena's current
+     * width and occupancy.
+     *
+     * @param arena the arena to sample
+     * @return a snapshot of the statistics
+     */
+    EliminationStats snapshot(EliminationArena<?> arena);
+
+    /**
+     * Returns a recorder that does not record any statistics. The snapshot reports zero for the
+     * counters and only samples the arena.
+     *
+     * @return a recorder that discards the statistics
+     */
+    static EliminationStatsRecorder disabled() {
+        return DisabledStatsRecorder.INSTANCE;
+    }
+
+    /**
+     * Returns a recorder that maintains the counters with striped {@link LongAdder}s.
+     *
+     * @return a new recorder
+     */
+    static EliminationStatsRecorder striped() {
+        return new StripedStatsRecorder();
+    }
+
+    /** A recorder that discards the statistics, so that its calls are optimized away. */
+    enum DisabledStatsRecorder implements EliminationStatsRecorder {
+        INSTANCE;
+
+        @Override public void recordCasFailure() {}
+        @Override public void recordAttempt() {}
+        @Override public void recordTransfer() {}
+        @Override public void recordReceive() {}
+        @Override public void recordSpins(int spins) {}
+        @Override public void recordCollision() {}
+
+        @Override
+        public EliminationStats snapshot(EliminationArena<?> arena) {
+            return new EliminationStats(0L, 0L, 0L, 0L, 0L, 0L,
+                    arena.width(), arena.occupiedSlots());
+        }
+    }
+
+    /** A recorder that maintains its counters with striped adders to avoid contention. */
+    final class StripedStatsRecorder implements EliminationStatsRecorder {
+        final LongAdder casFailures = new LongAdder();
+        final LongAdder attempts = new LongAdder();
+        final LongAdder transfers = new LongAdder();
+        final LongAdder receives = new LongAdder();
+        final LongAdder spins = new LongAdder();
+        final LongAdder collisions = new LongAdder();
+
+        @Override
+        public void recordCasFailure() {
+            casFailures.increment();
+        }
+
+        @Override
+        public void recordAttempt() {
+            attempts.increment();
+        }
+
+        @Override
+        public void recordTransfer() {
+            transfers.increment();
+        }
+
+        @Override
+        public void recordReceive() {
+            receives.increment();
+        }
+
+        @Override
+        public void recordSpins(int spins) {
+            if (spins > 0) {
+                this.spins.add(spins);
+            }
+        }
+
+        @Override
+        public void recordCollision() {
+            collisions.increment();
+        }
+
+        @Override
+        public EliminationStats snapshot(EliminationArena<?> arena) {
+            return new EliminationStats(casFailures.sum(), attempts.sum(), transfers.sum(),
+                    receives.sum(), spins.sum(), collisions.sum(),
+                    arena.width(), arena.occupiedSlots());
+        }
+    }
+}
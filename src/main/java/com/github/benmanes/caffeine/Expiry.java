@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Calculates when the entries of a cache expire. A duration is computed when an entry is created,
+ * when its value is replaced, and when it is read, so that each entry may have its own lifetime,
+ * such as the <tt>max-age</tt> of an HTTP response. The durations are in nanoseconds and are
+ * relative to the current time that is passed to each method, which is read from the cache's
+ * {@link Ticker}.
+ * <p>
+ * The methods are called by the thread performing the operation and while no lock is held, so
+ * they should be fast and must not block. A duration that is negative or zero expires the entry
+ * immediately, and a duration that exceeds approximately 146 years is capped at that limit.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+@ThreadSafe
+interface Expiry<K, V> {
+
+    /**
+     * Specifies that the entry should be automatically removed from the cache once the duration
+     * has elapsed after the entry's creation. To indicate no expiration an entry may be given an
+     * excessively long period, such as {@code Long.MAX_VALUE}.
+     *
+     * @param key the key that was written
+     * @param value the value that was written
+     * @param currentTime the current time, in nanoseconds
+     * @return the length of time before the entry expires, in nanoseconds
+     */
+    long expireAfterCreate(K key, V value, long currentTime);
+
+    /**
+     * Specifies that the entry should be automatically removed from the cache once the duration
+     * has elapsed after the replacement of its value. To indicate no change, the
+     * {@code currentDuration} may be returned.
+     *
+     * @param key the key that was written
+     * @param value the new value that was written
+     * @param currentTime the current time, in nanoseconds
+     * @param currentDuration the entry's remaining lifetime, in nanoseconds
+     * @return the length of time before the entry expires, in nanoseconds
+     */
+    long expireAfterUpdate(K key, V value, long currentTime, long currentDuration);
+
+    /**
+     * Specifies that the entry should be automatically removed from the cache once the duration
+     * has elapsed after its last read. To indicate no change, the {@code currentDuration} may be
+     * returned.
+     *
+     * @param key the key that was read
+     * @param value the value that was read
+     * @param currentTime the current time, in nanoseconds
+     * @param currentDuration the entry's remaining lifetime, in nanoseconds
+     * @return the length of time before the entry expires, in nanoseconds
+     */
+    long expireAfterRead(K key, V value, long currentTime, long currentDuration);
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.github.benmanes.caffeine.EliminationArena.PaddedAtomicReference;
+
+/**
+ * An unbounded multiple-producer / single-consumer queue backed by a linked list of array chunks.
+ * This queue orders elements FIFO (first-in-first-out) and does not permit the use of {@code null}
+ * elements. Unlike a linked queue, an insertion does not allocate a node, as the elements are
+ * stored directly into the chunks and a new chunk is allocated only once every
+ * <tt>1,024</tt> insertions.
+ * <p>
+ * Any thread may insert elements, but it is the responsibility of the caller to ensure that only
+ * one thread at a time retrieves them, such as by guarding the consumer with a lock. This
+ * implementation does <em>not</em> include fail-fast behavior to guard against incorrect consumer
+ * usage. For this reason the class does not implement {@link java.util.Queue}, whose inspection
+ * methods may be called by any thread.
+ * <p>
+ * Beware that an insertion is not visible until it completes, and that the consumer observes the
+ * elements in the order that the producers claimed their positions. A producer that has claimed a
+ * position but not yet published its element causes the consumer to stop at that position, even
+ * if the elements after it have been published, until the insertion completes.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <E> the type of elements held in this queue
+ */
+@ThreadSafe
+final class MpscChunkedArrayQueue<E> {
+
+    /*
+     * The queue is a sequence of positions, where the producer index is the next position to be
+     * claimed and the consumer index is the next position to be read. The positions are stored in
+     * fixed-size chunks that are linked in order, so that the chunk holding a position is found
+     * by walking forward from an earlier chunk and a position's offset is found by masking.
+     *
+     * A producer claims a position with a getAndIncrement of the producer index, which always
+     * succeeds and so the producers do not retry under contention. The producer then walks from
+     * the producer chunk to the chunk holding its position, appending chunks with a CAS if the
+     * list is too short, and publishes its element with a lazySet into the chunk. A losing append
+     * discards its chunk and follows the winner's. The producer chunk is a hint that is advanced
+     * with a CAS to skip the chunks that are already filled. It is read before the position is
+     * claimed, so it never refers to a chunk beyond the producer's position: the hint is only
+     * moved to a chunk holding a position that was claimed before the hint was read.
+     *
+     * The consumer reads the slot at its index and stops when the slot is null, which means that
+     * the queue is empty or the producer of that position has not yet published. A consumed slot
+     * is cleared so that the element may be garbage collected. When the consumer reaches the end of
+     * a chunk it moves to the next chunk, after which the old chunk is unreachable once the
+     * producer hint has moved past it. The consumer index is published with a lazySet so that the
+     * size may be estimated by other threads.
+     */
+
+    /** The number of elements per chunk. */
+    static final int CHUNK_SIZE = 1_024;
+
+    /** Mask value for indexing into a chunk. */
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** The next position to be claimed by a producer. */
+    final PaddedAtomicLong producerIndex;
+
+    /** The chunk holding a recently claimed position, which may lag behind the producer index. */
+    final PaddedAtomicReference<Chunk<E>> producerChunk;
+
+    /** The next position to be read by the consumer. */
+    final PaddedAtomicLong consumerIndex;
+
+    /** The chunk holding the consumer's position, or its predecessor at the chunk's boundary. */
+    Chunk<E> consumerChunk;
+
+    /** Creates a {@code MpscChunkedArrayQueue} that is initially empty. */
+    public MpscChunkedArrayQueue() {
+        Chunk<E> chunk = new Chunk<>(0L);
+        producerIndex = new PaddedAtomicLong(0L);
+        consumerIndex = new PaddedAtomicLong(0L);
+        producerChunk = new PaddedAtomicReference<>(chunk);
+        consumerChunk = chunk;
+    }
+
+    /**
+     * Returns if this queue contains no elements, including insertions that are in progress.
+     *
+     * @return {@code true} if this queue contains no elements
+     */
+    public boolean isEmpty() {
+        return (size() == 0);
+    }
+
+    /**
+     * Returns the estimated number of elements in this queue, which includes the insertions that
+     * are in progress. This method is a constant-time operation.
+     *
+     * @return the number of elements in this queue, capped at {@link Integer#MAX_VALUE}
+     */
+    public int size() {
+        // The consumer index is read first so that the producer index is never less than it
+        long consumed = consumerIndex.get();
+        long produced = producerIndex.get();
+        return (int) Math.min(produced - consumed, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue. As the queue is unbounded, this
+     * method will never return {@code false}.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link java.util.Queue#offer})
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        requireNonNull(e);
+
+        Chunk<E> hint = producerChunk.get();
+        long index = producerIndex.getAndIncrement();
+        Chunk<E> chunk = chunkFor(hint, index);
+        if (chunk != hint) {
+            producerChunk.compareAndSet(hint, chunk);
+        }
+        chunk.lazySet((int) (index & CHUNK_MASK), e);
+        return true;
+    }
+
+    /**
+     * Returns the chunk holding the position, appending chunks to the list if needed.
+     *
+     * @param chunk a chunk at or before the position's chunk
+     * @param index the position in the queue
+     * @return the chunk holding the position
+     */
+    static <E> Chunk<E> chunkFor(Chunk<E> chunk, long index) {
+        long base = (index & ~CHUNK_MASK);
+        while (chunk.base != base) {
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                Chunk<E> created = new Chunk<>(chunk.base + CHUNK_SIZE);
+                next = chunk.casNext(created) ? created : chunk.next;
+            }
+            chunk = next;
+        }
+        return chunk;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue. This method may only be called by the
+     * consumer.
+     *
+     * @return the head of this queue, or {@code null} if this queue is empty or the insertion of
+     *         the head is in progress
+     */
+    public @Nullable E poll() {
+        long index = consumerIndex.get();
+        Chunk<E> chunk = consumerChunk;
+        if (chunk.base + CHUNK_SIZE == index) {
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                return null;
+            }
+            consumerChunk = chunk = next;
+        }
+
+        int offset = (int) (index & CHUNK_MASK);
+        E e = chunk.get(offset);
+        if (e == null) {
+            return null;
+        }
+        chunk.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return e;
+    }
+
+    /**
+     * Removes up to the given number of elements from the head of this queue and performs the
+     * action on each of them, in FIFO order. The consumer index is published once per batch
+     * rather than once per element. This method may only be called by the consumer.
+     * <p>
+     * If the action throws an exception then the element it was performed on is removed, this
+     * method stops and the exception is relayed to the caller.
+     *
+     * @param consumer the action to perform on each element
+     * @param limit the maximum number of elements to remove
+     * @return the number of elements removed
+     * @throws NullPointerException if the specified action is null
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        requireNonNull(consumer);
+
+        long index = consumerIndex.get();
+        Chunk<E> chunk = consumerChunk;
+        int drained = 0;
+        try {
+            while (drained < limit) {
+                if (chunk.base + CHUNK_SIZE == index) {
+                    Chunk<E> next = chunk.next;
+                    if (next == null) {
+                        break;
+                    }
+                    chunk = next;
+                }
+
+                int offset = (int) (index & CHUNK_MASK);
+                E e = chunk.get(offset);
+                if (e == null) {
+                    break;
+                }
+                chunk.lazySet(offset, null);
+                index++;
+                drained++;
+                consumer.accept(e);
+            }
+        } finally {
+            consumerChunk = chunk;
+            consumerIndex.lazySet(index);
+        }
+        return drained;
+    }
+
+    /** A fixed-size array holding the elements for a contiguous range of positions. */
+    static final class Chunk<E> extends AtomicReferenceArray<E> {
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("rawtypes")
+        static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+
+        /** The position of the first element in this chunk. */
+        final long base;
+
+        /** The chunk holding the following positions, or null if not yet appended. */
+        volatile Chunk<E> next;
+
+        Chunk(long base) {
+            super(CHUNK_SIZE);
+            this.base = base;
+        }
+
+        /** Attempts to link the chunk after this one. */
+        boolean casNext(Chunk<E> chunk) {
+            return NEXT.compareAndSet(this, null, chunk);
+        }
+    }
+}
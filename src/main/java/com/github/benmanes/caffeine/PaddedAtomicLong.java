@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AtomicLong} padded to reduce the likelihood of false sharing, for a counter or stamped
+ * word that is updated by many threads.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+final class PaddedAtomicLong extends AtomicLong {
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("unused")
+    long q0, q1, q2, q3, q4, q5, q6, q7, q8, q9, qa, qb, qc, qd, qe;
+
+    PaddedAtomicLong(long value) {
+        super(value);
+    }
+}
@@ -0,0 +1,499 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An unbounded thread-safe stack based on linked nodes that are recycled, so that pushing and
+ * popping elements does not allocate once the stack has reached its steady state size. This stack
+ * orders elements LIFO (last-in-first-out) and, like {@link EliminationStack}, employs elimination
+ * to transfer elements between threads that are pushing and popping concurrently. Like most other
+ * concurrent collection implementations, this class does not permit the use of {@code null}
+ * elements.
+ * <p>
+ * This implementation is an alternative to {@link EliminationStack} for when the allocation rate
+ * of the stack's nodes is significant. A node that is popped is returned to a free list and is
+ * reused by a later push, so the stack retains as many nodes as the largest number of elements
+ * that it has held. The memory is not released when the stack shrinks.
+ * <p>
+ * Iterators are <i>weakly consistent</i>, but unlike {@link EliminationStack} they are not
+ * guaranteed to return every element contained since their creation if the stack is modified
+ * concurrently, as a node may be recycled while it is being traversed. The traversal is bounded
+ * and will not fail, but may end early. The same caveat applies to the bulk operations that
+ * traverse the stack, such as {@code size}, {@code contains} and {@code remove}. A traversal may
+ * also reach a recycled node that a concurrent push has not yet published, in which case a
+ * removal of its element completes that push as though the element was pushed and then removed.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class PooledEliminationStack<E> extends AbstractCollection<E> implements Serializable {
+
+    /*
+     * A Treiber's stack whose nodes are recycled is subject to the ABA problem. A thread that reads
+     * the top node A and its successor B may be delayed while A is popped, recycled and pushed
+     * again with a different successor, after which its compare-and-swap from A to B would succeed
+     * and corrupt the stack. A garbage collected stack is immune because A cannot be reused while
+     * the delayed thread holds a reference to it.
+     *
+     * To prevent this, the nodes are registered in a table and the links between them are indexes
+     * into that table. The top of the stack is a single word that packs the index of the top node
+     * with a stamp that is incremented on every update, so a compare-and-swap that observed a stale
+     * top fails even if the same node has returned to the top of the stack. This requires that
+     * the stack is represented by an AtomicLong rather than a reference to a node, which avoids
+     * allocating a stamped pair on every update as an AtomicStampedReference would.
+     *
+     * The free nodes are kept in striped free lists, which are stamped Treiber stacks using the
+     * same representation. A thread releases and acquires nodes from the stripe selected by its
+     * arena index, and scans the other stripes before allocating a new node. A node is either in
+     * the stack, in a free list, or owned by the thread that is pushing or has popped it, so the
+     * node's link is only written by its owner. A thread that reads a stale link will fail its
+     * compare-and-swap because the stamp will have changed.
+     *
+     * A push that is eliminated never publishes its node, so the node is released immediately.
+     * As a traversal may reach a recycled node before the push that owns it has published it, the
+     * push takes its element back from the node before offering it in the arena. If that fails
+     * then the element was removed, and the push completes without transferring it, so that a
+     * removed element is never also delivered to a pop.
+     * The table only grows, under a lock, when a node is allocated because all of the free lists
+     * were empty.
+     */
+
+    /** The index indicating the end of a list. */
+    static final int NIL = -1;
+
+    /** The number of free list stripes. */
+    static final int STRIPES = EliminationArena.ARENA_LENGTH;
+
+    /** The mask value for selecting a free list stripe. */
+    static final int STRIPE_MASK = STRIPES - 1;
+
+    /** The distance between the free list stripes, to avoid them sharing a cache line. */
+    static final int STRIDE = 16;
+
+    /** The initial capacity of the node table. */
+    static final int INITIAL_CAPACITY = 16;
+
+    /** The stamped index of the top of the stack. */
+    final AtomicLong top;
+
+    /** The stamped indexes of the tops of the free lists. */
+    final AtomicLongArray freeLists;
+
+    /** The arena where slots can be used to perform an exchange */
+    final EliminationArena<E> arena;
+
+    /** The registered nodes, indexed by their position in the table. */
+    volatile Node<E>[] nodes;
+
+    @GuardedBy("this")
+    int allocated;
+
+    /** Creates a {@code PooledEliminationStack} that is initially empty. */
+    public PooledEliminationStack() {
+        top = new PaddedAtomicLong(pack(0, NIL));
+        freeLists = new AtomicLongArray(STRIPES * STRIDE);
+        for (int i = 0; i < STRIPES; i++) {
+            freeLists.lazySet(i * STRIDE, pack(0, NIL));
+        }
+        nodes = newTable(INITIAL_CAPACITY);
+        arena = new EliminationArena<>();
+    }
+
+    /**
+     * Creates a {@code PooledEliminationStack} initially containing the elements of the given
+     * collection, added in traversal order of the collection's iterator.
+     *
+     * @param c the collection of elements to initially contain
+     * @throws NullPointerException if the specified collection or any of its elements are null
+     */
+    public PooledEliminationStack(Collection<? extends E> c) {
+        this();
+        addAll(c);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (peek() == null);
+    }
+
+    /**
+     * Returns the number of elements in this stack.
+     * <p>
+     * Beware that, unlike most collections, this method is <em>NOT</em> a constant-time
+     * operation. Because of the asynchronous nature of these stacks, determining the current
+     * number of elements requires an O(n) traversal. Additionally if elements are added or
+     * removed during execution of this method, the returned result may be inaccurate. Thus,
+     * this method is typically not very useful in concurrent applications.
+     *
+     * @return the number of elements in this stack
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Node<E> node : traversal()) {
+            if (node.get() != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /** Removes all of the elements of this stack, returning their nodes to the free lists. */
+    @Override
+    public void clear() {
+        for (;;) {
+            long current = top.get();
+            if (index(current) == NIL) {
+                return;
+            } else if (top.compareAndSet(current, pack(stamp(current) + 1, NIL))) {
+                Node<E>[] table = nodes;
+                for (int i = index(current); i != NIL;) {
+                    Node<E> node = table[i];
+                    i = node.next;
+                    node.lazySet(null);
+                    release(node);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        requireNonNull(o);
+
+        for (Node<E> node : traversal()) {
+            if (o.equals(node.get())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves, but does not remove, the top of the stack (in other words, the last element
+     * pushed), or returns <tt>null</tt> if this stack is empty.
+     *
+     * @return the top of the stack or <tt>null</tt> if this stack is empty
+     */
+    public @Nullable E peek() {
+        for (Node<E> node : traversal()) {
+            E e = node.get();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes and returns the top element or returns <tt>null</tt> if this stack is empty.
+     *
+     * @return the top of this stack, or <tt>null</tt> if this stack is empty
+     */
+    public @Nullable E pop() {
+        for (;;) {
+            long current = top.get();
+            int index = index(current);
+            if (index == NIL) {
+                return null;
+            }
+
+            // Attempt to pop from the stack, backing off to the elimination array if contended
+            Node<E> node = nodes[index];
+            int next = node.next;
+            if ((top.get() == current)
+                    && top.compareAndSet(current, pack(stamp(current) + 1, next))) {
+                E e = node.getAndSet(null);
+                release(node);
+                if (e != null) {
+                    return e;
+                }
+                // the element was removed, so try again
+                continue;
+            }
+            E e = arena.tryReceive();
+            if (e != null) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * Pushes an element onto the stack (in other words, adds an element at the top of this stack).
+     *
+     * @param e the element to push
+     */
+    public void push(E e) {
+        requireNonNull(e);
+
+        Node<E> node = acquire();
+        node.lazySet(e);
+        for (;;) {
+            long current = top.get();
+            node.next = index(current);
+
+            // Attempt to push to the stack, backing off to the elimination array if contended
+            if ((top.get() == current)
+                    && top.compareAndSet(current, pack(stamp(current) + 1, node.index))) {
+                return;
+            }
+
+            // take the element back before offering it, so that it cannot also be removed
+            if (!node.compareAndSet(e, null)) {
+                // a traversal that reached the unpublished node removed the element
+                release(node);
+                return;
+            } else if (arena.tryTransfer(e)) {
+                // the node was never published, so it can be reused immediately
+                release(node);
+                return;
+            }
+            node.lazySet(e);
+        }
+    }
+
+    @Override
+    public boolean add(E e) {
+        push(e);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        requireNonNull(o);
+
+        for (Node<E> node : traversal()) {
+            E value = node.get();
+            if (o.equals(value) && node.compareAndSet(value, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            final Iterator<Node<E>> nodes = traversal().iterator();
+            @Nullable Node<E> nextNode;
+            @Nullable E nextValue;
+            @Nullable Node<E> lastReturned;
+            @Nullable E lastValue;
+
+            @Override
+            public boolean hasNext() {
+                while ((nextValue == null) && nodes.hasNext()) {
+                    nextNode = nodes.next();
+                    nextValue = nextNode.get();
+                }
+                return (nextValue != null);
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = nextNode;
+                lastValue = nextValue;
+                nextValue = null;
+                return lastValue;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                // only clears the node if it still holds the returned element. A node that was
+                // recycled for the same element is cleared too, which removes that occurrence,
+                // or completes its unpublished push, as remove(Object) would
+                lastReturned.compareAndSet(lastValue, null);
+                lastReturned = null;
+                lastValue = null;
+            }
+        };
+    }
+
+    /**
+     * Returns the nodes reachable from the top of the stack. The number of steps is bounded by the
+     * size of the node table, so that a traversal that follows a recycled node terminates.
+     */
+    Iterable<Node<E>> traversal() {
+        return () -> new Iterator<Node<E>>() {
+            final Node<E>[] table = nodes;
+            int next = index(top.get());
+            int steps;
+
+            @Override
+            public boolean hasNext() {
+                return (next != NIL) && (next < table.length) && (table[next] != null)
+                        && (steps < table.length);
+            }
+
+            @Override
+            public Node<E> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Node<E> node = table[next];
+                next = node.next;
+                steps++;
+                return node;
+            }
+        };
+    }
+
+    /* ---------------- Node Pooling -------------- */
+
+    /**
+     * Returns a free node, preferring the free list of the current thread's stripe and otherwise
+     * allocating a new node if all of the free lists are empty.
+     */
+    Node<E> acquire() {
+        int start = EliminationArena.startIndex();
+        for (int i = 0; i < STRIPES; i++) {
+            int offset = ((start + i) & STRIPE_MASK) * STRIDE;
+            for (;;) {
+                long current = freeLists.get(offset);
+                int index = index(current);
+                if (index == NIL) {
+                    break;
+                }
+                Node<E> node = nodes[index];
+                int next = node.next;
+                if (freeLists.compareAndSet(offset, current, pack(stamp(current) + 1, next))) {
+                    return node;
+                }
+            }
+        }
+        return allocate();
+    }
+
+    /** Returns the node to the free list of the current thread's stripe. */
+    void release(Node<E> node) {
+        int offset = (EliminationArena.startIndex() & STRIPE_MASK) * STRIDE;
+        for (;;) {
+            long current = freeLists.get(offset);
+            node.next = index(current);
+            if (freeLists.compareAndSet(offset, current, pack(stamp(current) + 1, node.index))) {
+                return;
+            }
+        }
+    }
+
+    /** Creates a new node and registers it in the table, growing the table if necessary. */
+    synchronized Node<E> allocate() {
+        Node<E>[] table = nodes;
+        int index = allocated++;
+        Node<E> node = new Node<>(index);
+        if (index == table.length) {
+            table = Arrays.copyOf(table, 2 * table.length);
+            table[index] = node;
+            nodes = table;
+        } else {
+            table[index] = node;
+        }
+        return node;
+    }
+
+    /** Returns a node table of the given length. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <E> Node<E>[] newTable(int length) {
+        return new Node[length];
+    }
+
+    /** Returns the word representing the stamp and index. */
+    static long pack(int stamp, int index) {
+        return ((long) stamp << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    /** Returns the stamp of the word. */
+    static int stamp(long word) {
+        return (int) (word >>> 32);
+    }
+
+    /** Returns the index of the word. */
+    static int index(long word) {
+        return (int) word;
+    }
+
+    /* ---------------- Serialization Support -------------- */
+
+    static final long serialVersionUID = 1L;
+
+    Object writeReplace() {
+        return new SerializationProxy<E>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /** A proxy that is serialized instead of the stack, containing the elements in LIFO order. */
+    static final class SerializationProxy<E> implements Serializable {
+        final List<E> elements;
+
+        SerializationProxy(PooledEliminationStack<E> stack) {
+            this.elements = new ArrayList<>(stack);
+        }
+
+        Object readResolve() {
+            return new PooledEliminationStack<>(Lists.reverse(elements));
+        }
+
+        static final long serialVersionUID = 1;
+    }
+
+    /**
+     * A recyclable item on the stack. The node's link is the table index of the next node and is
+     * only written by the thread that owns the node, before it is published.
+     */
+    static final class Node<E> extends AtomicReference<E> {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+        int next;
+
+        Node(int index) {
+            this.index = index;
+            this.next = NIL;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records the hits, misses, loads, and evictions of a cache. The recording methods are called on
+ * the hot path of every lookup, so an implementation must be cheap and must not introduce a shared
+ * point of contention.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+interface StatsCounter {
+
+    /**
+     * Records cache hits.
+     *
+     * @param count the number of hits to record
+     */
+    void recordHits(int count);
+
+    /**
+     * Records cache misses.
+     *
+     * @param count the number of misses to record
+     */
+    void recordMisses(int count);
+
+    /**
+     * Records that the loader computed a value successfully.
+     *
+     * @param loadTime the number of nanoseconds the loader spent computing the value
+     */
+    void recordLoadSuccess(long loadTime);
+
+    /**
+     * Records that the loader threw an exception or did not find a value.
+     *
+     * @param loadTime the number of nanoseconds the loader spent before failing
+     */
+    void recordLoadFailure(long loadTime);
+
+    /** Records that an entry was evicted by the size bound or by expiration. */
+    void recordEviction();
+
+    /**
+     * Returns a snapshot of the recorded statistics.
+     *
+     * @return a snapshot of the statistics
+     */
+    CacheStats snapshot();
+
+    /**
+     * Returns a counter that does not record any statistics. The counter is a constant whose
+     * methods are empty, so that when it is the only counter in use the calls are inlined and
+     * eliminated by the compiler.
+     *
+     * @return a counter that discards the statistics
+     */
+    static StatsCounter disabled() {
+        return DisabledStatsCounter.INSTANCE;
+    }
+
+    /**
+     * Returns a counter that maintains the statistics with striped {@link LongAdder}s.
+     *
+     * @return a new counter
+     */
+    static StatsCounter striped() {
+        return new StripedStatsCounter();
+    }
+
+    /** A counter that discards the statistics, so that its calls are optimized away. */
+    enum DisabledStatsCounter implements StatsCounter {
+        INSTANCE;
+
+        @Override public void recordHits(int count) {}
+        @Override public void recordMisses(int count) {}
+        @Override public void recordLoadSuccess(long loadTime) {}
+        @Override public void recordLoadFailure(long loadTime) {}
+        @Override public void recordEviction() {}
+
+        @Override
+        public CacheStats snapshot() {
+            return CacheStats.empty();
+        }
+    }
+
+    /** A counter that maintains its statistics with striped adders to avoid contention. */
+    final class StripedStatsCounter implements StatsCounter {
+        final LongAdder hitCount = new LongAdder();
+        final LongAdder missCount = new LongAdder();
+        final LongAdder loadSuccessCount = new LongAdder();
+        final LongAdder loadFailureCount = new LongAdder();
+        final LongAdder totalLoadTime = new LongAdder();
+        final LongAdder evictionCount = new LongAdder();
+
+        @Override
+        public void recordHits(int count) {
+            hitCount.add(count);
+        }
+
+        @Override
+        public void recordMisses(int count) {
+            missCount.add(count);
+        }
+
+        @Override
+        public void recordLoadSuccess(long loadTime) {
+            loadSuccessCount.increment();
+            totalLoadTime.add(loadTime);
+        }
+
+        @Override
+        public void recordLoadFailure(long loadTime) {
+            loadFailureCount.increment();
+            totalLoadTime.add(loadTime);
+        }
+
+        @Override
+        public void recordEviction() {
+            evictionCount.increment();
+        }
+
+        @Override
+        public CacheStats snapshot() {
+            return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(),
+                    loadFailureCount.sum(), totalLoadTime.sum(), evictionCount.sum());
+        }
+    }
+}
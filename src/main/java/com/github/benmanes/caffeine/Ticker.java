@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A time source that returns a time value representing the number of nanoseconds elapsed since
+ * some fixed but arbitrary point in time. A cache reads the ticker to determine when its entries
+ * expire, so a test or benchmark can supply a ticker that it advances manually instead of waiting
+ * for the time to pass.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+interface Ticker {
+
+    /**
+     * Returns the number of nanoseconds elapsed since this ticker's fixed point of reference. The
+     * value is only meaningful when compared to other values read from the same ticker.
+     *
+     * @return the current time in nanoseconds
+     */
+    long read();
+
+    /**
+     * Returns a ticker that reads the current time using {@link System#nanoTime}.
+     *
+     * @return a ticker that reads the system time
+     */
+    static Ticker systemTicker() {
+        return SystemTicker.INSTANCE;
+    }
+
+    /**
+     * Returns a ticker that always reads zero, such as to avoid the cost of reading the time when
+     * the elapsed duration is not needed.
+     *
+     * @return a ticker that does not advance
+     */
+    static Ticker disabledTicker() {
+        return DisabledTicker.INSTANCE;
+    }
+
+    /** A ticker that reads the system's high-resolution time source. */
+    enum SystemTicker implements Ticker {
+        INSTANCE;
+
+        @Override public long read() {
+            return System.nanoTime();
+        }
+    }
+
+    /** A ticker that does not advance. */
+    enum DisabledTicker implements Ticker {
+        INSTANCE;
+
+        @Override public long read() {
+            return 0L;
+        }
+    }
+}
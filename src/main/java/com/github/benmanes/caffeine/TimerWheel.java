@@ -0,0 +1,279 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.github.benmanes.caffeine.BoundedLocalCache.Node;
+
+/**
+ * A hierarchical timer wheel that schedules the entries of a cache by their expiration times. An
+ * entry is scheduled, rescheduled, and descheduled in O(1) time, and the expired entries are
+ * removed in batches as the wheel is advanced to the current time.
+ * <p>
+ * This class is not thread-safe and must be guarded by an external lock.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <K> the type of keys maintained by the cache
+ * @param <V> the type of mapped values
+ */
+@NotThreadSafe
+final class TimerWheel<K, V> {
+
+    /*
+     * A timer wheel [1] stores timer events in buckets on a circular buffer. A bucket represents a
+     * coarse time span, e.g. one second, and holds a doubly-linked list of events. The wheels are
+     * structured in a hierarchy (seconds, minutes, hours, days) so that events scheduled in the
+     * distant future are cascaded to lower buckets when the wheels rotate. This allows for events
+     * to be added, removed, and expired in O(1) time, where expiration occurs for the entire
+     * bucket, and the penalty of cascading is amortized by the rotations.
+     *
+     * The time spans are powers of two so that a time is mapped to a bucket by shifting and
+     * masking. A bucket is a circular list whose head is a sentinel node, so that an entry may be
+     * unlinked using only its own links without knowing which bucket holds it. An entry whose
+     * links are null is not scheduled.
+     *
+     * When the wheel is advanced, each bucket whose time span has passed is detached and its
+     * entries are either expired or, if their expiration time is still in the future, rescheduled
+     * into the bucket that now holds their time. An entry is rescheduled when its expiration time
+     * was extended after it was placed in a bucket, or when it is cascaded from a coarser wheel.
+     *
+     * [1] Hashed and Hierarchical Timing Wheels
+     * http://www.cs.columbia.edu/~nahum/w6998/papers/ton97-timing-wheels.pdf
+     */
+
+    /** The number of buckets in each wheel, from the finest to the coarsest time span. */
+    static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+    /** The time span of a bucket in each wheel, followed by the span of the coarsest wheel. */
+    static final long[] SPANS = {
+        ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+        ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+        ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)),   // 1.22h
+        ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),    // 1.63d
+        BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+        BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+    };
+
+    /** The number of bits to shift a time by to obtain the bucket's tick in each wheel. */
+    static final long[] SHIFT = {
+        Long.numberOfTrailingZeros(SPANS[0]),
+        Long.numberOfTrailingZeros(SPANS[1]),
+        Long.numberOfTrailingZeros(SPANS[2]),
+        Long.numberOfTrailingZeros(SPANS[3]),
+        Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    final Consumer<Node<K, V>> evictor;
+    final Node<K, V>[][] wheel;
+
+    long nanos;
+
+    /**
+     * Creates a timer wheel whose time starts at the given value.
+     *
+     * @param evictor the action that removes an expired entry from the cache
+     * @param nanos the current time, in nanoseconds
+     */
+    TimerWheel(Consumer<Node<K, V>> evictor, long nanos) {
+        this.evictor = requireNonNull(evictor);
+        this.wheel = newWheel();
+        this.nanos = nanos;
+    }
+
+    /** Returns the wheels, where each bucket is an empty circular list. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <K, V> Node<K, V>[][] newWheel() {
+        Node<K, V>[][] wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                wheel[i][j] = newSentinel();
+            }
+        }
+        return wheel;
+    }
+
+    /** Returns an empty circular list's head, which is never expired. */
+    static <K, V> Node<K, V> newSentinel() {
+        Node<K, V> sentinel = new Node<>(null, null, 0L);
+        sentinel.setPreviousInVariableOrder(sentinel);
+        sentinel.setNextInVariableOrder(sentinel);
+        return sentinel;
+    }
+
+    /**
+     * Advances the timer and evicts entries that have expired.
+     *
+     * @param currentTimeNanos the current time, in nanoseconds
+     */
+    void advance(long currentTimeNanos) {
+        long previousTimeNanos = nanos;
+        nanos = currentTimeNanos;
+
+        // If wrapping then temporarily shift the clock for a positive comparison
+        long previous = previousTimeNanos;
+        long current = currentTimeNanos;
+        if ((previous < 0) && (current > 0)) {
+            previous += Long.MAX_VALUE;
+            current += Long.MAX_VALUE;
+        }
+
+        try {
+            for (int i = 0; i < SHIFT.length; i++) {
+                long previousTicks = (previous >>> SHIFT[i]);
+                long currentTicks = (current >>> SHIFT[i]);
+                long delta = (currentTicks - previousTicks);
+                if (delta <= 0L) {
+                    break;
+                }
+                expire(i, previousTicks, delta);
+            }
+        } catch (Throwable t) {
+            nanos = previousTimeNanos;
+            throw t;
+        }
+    }
+
+    /**
+     * Expires entries or reschedules into the proper bucket if still active.
+     *
+     * @param index the wheel being operated on
+     * @param previousTicks the previous number of ticks
+     * @param delta the number of additional ticks
+     */
+    void expire(int index, long previousTicks, long delta) {
+        Node<K, V>[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+
+        // A bucket is visited at most once, as a full rotation covers every bucket
+        int steps = (int) Math.min(1 + delta, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+
+        for (int i = start; i < end; i++) {
+            Node<K, V> sentinel = timerWheel[i & mask];
+            Node<K, V> prev = sentinel.getPreviousInVariableOrder();
+            Node<K, V> node = sentinel.getNextInVariableOrder();
+            sentinel.setPreviousInVariableOrder(sentinel);
+            sentinel.setNextInVariableOrder(sentinel);
+
+            while (node != sentinel) {
+                Node<K, V> next = node.getNextInVariableOrder();
+                node.setPreviousInVariableOrder(null);
+                node.setNextInVariableOrder(null);
+
+                try {
+                    if ((node.getVariableTime() - nanos) > 0) {
+                        schedule(node);
+                    } else {
+                        evictor.accept(node);
+                    }
+                    node = next;
+                } catch (Throwable t) {
+                    // Relink the unprocessed entries so that they are not lost
+                    node.setPreviousInVariableOrder(sentinel.getPreviousInVariableOrder());
+                    node.setNextInVariableOrder(next);
+                    sentinel.getPreviousInVariableOrder().setNextInVariableOrder(node);
+                    sentinel.setPreviousInVariableOrder(prev);
+                    throw t;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules a timer event for the node.
+     *
+     * @param node the entry in the cache
+     */
+    void schedule(Node<K, V> node) {
+        Node<K, V> sentinel = findBucket(node.getVariableTime());
+        link(sentinel, node);
+    }
+
+    /**
+     * Reschedules an active timer event for the node, if it is scheduled.
+     *
+     * @param node the entry in the cache
+     */
+    void reschedule(Node<K, V> node) {
+        if (node.getNextInVariableOrder() != null) {
+            unlink(node);
+            schedule(node);
+        }
+    }
+
+    /**
+     * Removes a timer event for this entry if present.
+     *
+     * @param node the entry in the cache
+     */
+    void deschedule(Node<K, V> node) {
+        unlink(node);
+        node.setNextInVariableOrder(null);
+        node.setPreviousInVariableOrder(null);
+    }
+
+    /**
+     * Determines the bucket that the timer event should be added to.
+     *
+     * @param time the time when the event fires
+     * @return the sentinel at the head of the bucket
+     */
+    Node<K, V> findBucket(long time) {
+        long duration = time - nanos;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = (time >>> SHIFT[i]);
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    /** Adds the entry at the tail of the bucket's list. */
+    void link(Node<K, V> sentinel, Node<K, V> node) {
+        node.setPreviousInVariableOrder(sentinel.getPreviousInVariableOrder());
+        node.setNextInVariableOrder(sentinel);
+
+        sentinel.getPreviousInVariableOrder().setNextInVariableOrder(node);
+        sentinel.setPreviousInVariableOrder(node);
+    }
+
+    /** Removes the entry from its bucket, if scheduled. */
+    void unlink(Node<K, V> node) {
+        Node<K, V> next = node.getNextInVariableOrder();
+        if (next != null) {
+            Node<K, V> prev = node.getPreviousInVariableOrder();
+            next.setPreviousInVariableOrder(prev);
+            prev.setNextInVariableOrder(next);
+        }
+    }
+
+    /** Returns the smallest power of two that is greater than or equal to the value. */
+    static long ceilingPowerOfTwo(long x) {
+        // From Hacker's Delight, Chapter 3, Harry S. Warren Jr.
+        return 1L << (Long.SIZE - Long.numberOfLeadingZeros(x - 1));
+    }
+}
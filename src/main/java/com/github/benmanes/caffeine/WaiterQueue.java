@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A queue of the consumers that are parked while waiting for an element, where a producer may
+ * either hand an element to a waiting consumer directly or signal it to retry taking one from the
+ * data structure. This is used by {@link EliminationStack} to wake a consumer that is blocked in a
+ * timed pop when an element is pushed.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class WaiterQueue<E> {
+
+    /*
+     * The waiting consumers are kept in a lock-free FIFO queue, so that the consumer waiting for
+     * the longest time is served first. A waiter's state is null while it waits and is set exactly
+     * once by a compare-and-swap to either an element handed off by a producer, to the RETRY
+     * marker, or to the CANCELLED marker by the consumer itself.
+     *
+     * A producer that adds an element to the data structure instead of handing it off signals a
+     * waiter afterwards. To avoid a lost wake-up the consumer retries taking an element after
+     * publishing its waiter, and as long as the waiter queue and the data structure are both
+     * updated with sequentially consistent operations, at least one of the two threads observes
+     * the other.
+     *
+     * A cancelled waiter is not unlinked when it is cancelled, as removing an arbitrary element
+     * from the queue requires a scan and many consumers may time out while there are no elements.
+     * Instead a producer discards the cancelled waiters that it polls, and once enough waiters
+     * were cancelled the queue is swept of them in a single pass, similar to LinkedTransferQueue.
+     * The sweep is performed after at least as many cancellations as there were waiters remaining
+     * after the previous sweep, and no fewer than SWEEP_THRESHOLD, so the cost of a sweep is
+     * amortized over the cancellations that paid for it. This bounds the garbage when there are
+     * no producers while keeping the cost of a cancellation constant on average.
+     */
+
+    /** A marker indicating that the waiter should retry taking an element. */
+    static final Object RETRY = new Object();
+
+    /** A marker indicating that the waiter gave up. */
+    static final Object CANCELLED = new Object();
+
+    /** The minimum number of cancellations after which the cancelled waiters are unlinked. */
+    static final int SWEEP_THRESHOLD = 32;
+
+    /** The consumers waiting for an element. */
+    final Queue<Waiter> queue;
+
+    /** The number of cancellations since the cancelled waiters were last unlinked. */
+    final AtomicInteger cancellations;
+
+    /** The number of cancellations after which the cancelled waiters are next unlinked. */
+    volatile int sweepThreshold;
+
+    /** Creates a {@code WaiterQueue} that is initially empty. */
+    WaiterQueue() {
+        queue = new ConcurrentLinkedQueue<>();
+        cancellations = new AtomicInteger();
+        sweepThreshold = SWEEP_THRESHOLD;
+    }
+
+    /** Returns if there may be a consumer waiting for an element. */
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Publishes a waiter for the thread. The consumer must retry taking an element afterwards, as
+     * one may have been added before a producer could observe the waiter.
+     *
+     * @param thread the consumer that will park
+     * @return the published waiter
+     */
+    Waiter add(Thread thread) {
+        Waiter waiter = new Waiter(thread);
+        queue.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Attempts to hand the element to a waiting consumer.
+     *
+     * @param e the element to transfer
+     * @return if the element was transferred
+     */
+    boolean transfer(E e) {
+        for (Waiter w; (w = queue.poll()) != null;) {
+            if (w.compareAndSet(null, e)) {
+                LockSupport.unpark(w.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Signals up to the given number of waiting consumers that elements may be available.
+     *
+     * @param elements the number of elements that were added
+     */
+    void signal(int elements) {
+        for (Waiter w; (elements > 0) && ((w = queue.poll()) != null);) {
+            if (w.compareAndSet(null, RETRY)) {
+                LockSupport.unpark(w.thread);
+                elements--;
+            }
+        }
+    }
+
+    /**
+     * Cancels the waiter. If the waiter was handed an element concurrently then it is returned,
+     * and if it was signaled to retry then the signal is passed on to another waiter.
+     *
+     * @param w the waiter to cancel
+     * @return the element that was handed to the waiter, or null if none
+     */
+    @Nullable E cancel(Waiter w) {
+        if (w.compareAndSet(null, CANCELLED)) {
+            sweepIfNeeded();
+            return null;
+        }
+        Object state = w.get();
+        if (state == RETRY) {
+            signal(1);
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        E e = (E) state;
+        return e;
+    }
+
+    /**
+     * Unlinks the cancelled waiters from the queue once the number of cancellations reaches the
+     * threshold. A single thread performs the sweep, which skips the waiters that a producer has
+     * already discarded, and sets the next threshold to the number of waiters that remain.
+     */
+    void sweepIfNeeded() {
+        int count = cancellations.incrementAndGet();
+        if ((count >= sweepThreshold) && cancellations.compareAndSet(count, 0)) {
+            int remaining = 0;
+            for (Iterator<Waiter> i = queue.iterator(); i.hasNext();) {
+                if (i.next().get() == CANCELLED) {
+                    i.remove();
+                } else {
+                    remaining++;
+                }
+            }
+            sweepThreshold = Math.max(SWEEP_THRESHOLD, remaining);
+        }
+    }
+
+    /** A consumer that is parked while waiting for an element or a signal to retry. */
+    static final class Waiter extends AtomicReference<Object> {
+        private static final long serialVersionUID = 1L;
+
+        final Thread thread;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
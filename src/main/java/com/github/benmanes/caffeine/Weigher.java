@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Calculates the weights of the entries of a cache, which determine how much of the cache's
+ * maximum weight each entry consumes. The weight is computed when an entry is created and when its
+ * value is replaced, and remains unchanged while the entry is not modified.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+@ThreadSafe
+interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of a cache entry. There is no unit for entry weights; rather they are
+     * simply relative to each other.
+     *
+     * @param key the key to weigh
+     * @param value the value to weigh
+     * @return the weight of the entry, which must be positive
+     */
+    int weigh(K key, V value);
+
+    /**
+     * Returns a weigher where an entry has a weight of <tt>1</tt>, so that the maximum weight is
+     * the maximum number of entries.
+     *
+     * @return a weigher where each entry takes one unit of capacity
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> Weigher<K, V> singleton() {
+        return (Weigher<K, V>) SingletonWeigher.INSTANCE;
+    }
+
+    /** A weigher where each entry takes one unit of capacity. */
+    enum SingletonWeigher implements Weigher<Object, Object> {
+        INSTANCE;
+
+        @Override public int weigh(Object key, Object value) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The slots of an {@link EliminationArena}, which names the memory ordering that each access of a
+ * slot requires. This is the JDK 9 variant, which replaces the Java 8 class in the multi-release
+ * jar. It accesses the slots with a {@link VarHandle} in the mode that each method names, rather
+ * than with the full volatile semantics of an
+ * {@link java.util.concurrent.atomic.AtomicReferenceArray}.
+ * <p>
+ * On x86 the opaque and acquire reads are plain loads and the compare-and-exchanges are the same
+ * instruction regardless of the mode, so the gain is on weaker memory models such as AArch64,
+ * where a volatile read or write requires a barrier.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class ArenaSlots {
+    static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    final Object[] slots;
+
+    /**
+     * Creates the slots, all initially free.
+     *
+     * @param length the length of the array
+     */
+    ArenaSlots(int length) {
+        slots = new Object[length];
+    }
+
+    /**
+     * Returns the value of the slot in opaque mode, as the value is only a hint.
+     *
+     * @param index the position in the array
+     * @return the current value
+     */
+    Object read(int index) {
+        return SLOTS.getOpaque(slots, index);
+    }
+
+    /**
+     * Returns the value of the slot with the semantics of an acquire read.
+     *
+     * @param index the position in the array
+     * @return the current value
+     */
+    Object readAcquire(int index) {
+        return SLOTS.getAcquire(slots, index);
+    }
+
+    /**
+     * Atomically sets the slot to the given updated value if its current value is the expected
+     * value, with the semantics of a release write if successful.
+     *
+     * @param index the position in the array
+     * @param expect the expected value
+     * @param update the new value
+     * @return if successful
+     */
+    boolean casRelease(int index, Object expect, Object update) {
+        return (SLOTS.compareAndExchangeRelease(slots, index, expect, update) == expect);
+    }
+
+    /**
+     * Atomically sets the slot to the given updated value if its current value is the expected
+     * value, with the semantics of an acquire read of the current value.
+     *
+     * @param index the position in the array
+     * @param expect the expected value
+     * @param update the new value
+     * @return if successful
+     */
+    boolean casAcquire(int index, Object expect, Object update) {
+        return (SLOTS.compareAndExchangeAcquire(slots, index, expect, update) == expect);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.benmanes.caffeine.EliminationArena.PaddedAtomicReference;
+
+/**
+ * A benchmark of the cost of scanning the {@link EliminationArena} for a waiting partner, as
+ * performed by <tt>scanAndTransferToWaiter</tt> and <tt>scanAndMatch</tt> before a thread waits in
+ * a slot. The scan reads every slot in the arena's width, none of which hold a partner, so it
+ * measures the probes alone.
+ * <p>
+ * The <tt>paddedAtomicReference</tt> benchmark scans the arena's previous representation, an
+ * array of padded holders where each probe first loads the reference to the holder and then its
+ * value. The holders are allocated with unrelated objects in between and are shuffled, as their
+ * placement in the heap is otherwise determined by the collector. The <tt>stridedArray</tt>
+ * benchmark scans the current representation, where the slots are spaced apart within a single
+ * array so that each probe is a single load at a computed offset. It reads the slots through
+ * {@link ArenaSlots}, so it measures the opaque reads of the JDK 9 variant when it is run on
+ * JDK 9 or later with the multi-release jar.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArenaProbeBenchmark {
+    static final Object WAITER = new Object();
+    static final int STRIDE = EliminationArena.STRIDE;
+
+    @Param({"4", "16", "64"})
+    int width;
+
+    AtomicReference<Object>[] holders;
+    ArenaSlots strided;
+    List<Object> filler;
+    int start;
+    int mask;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        mask = width - 1;
+        Random random = new Random(1L);
+        List<AtomicReference<Object>> list = new ArrayList<>(width);
+        filler = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            list.add(new PaddedAtomicReference<>());
+            filler.add(new byte[random.nextInt(1024)]);
+        }
+        Collections.shuffle(list, random);
+        holders = (AtomicReference<Object>[]) list.toArray(new AtomicReference<?>[width]);
+        strided = new ArenaSlots((width + 1) * STRIDE);
+    }
+
+    @Benchmark
+    public boolean paddedAtomicReference() {
+        int start = this.start++;
+        for (int i = 0; i <= mask; i++) {
+            AtomicReference<Object> slot = holders[(start + i) & mask];
+            if (slot.get() == WAITER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean stridedArray() {
+        int start = this.start++;
+        for (int i = 0; i <= mask; i++) {
+            int index = (((start + i) & mask) + 1) * STRIDE;
+            if (strided.read(index) == WAITER) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
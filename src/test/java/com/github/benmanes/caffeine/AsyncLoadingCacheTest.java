@@ -0,0 +1,352 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that an {@link AsyncLoadingCache} coalesces the concurrent loads of a key, and that it
+ * reloads an entry once its refresh duration has elapsed, where the time is advanced by a
+ * {@link FakeTicker}.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class AsyncLoadingCacheTest {
+    static final int MAXIMUM = 100;
+
+    FakeTicker ticker;
+
+    @BeforeMethod
+    public void setUp() {
+        ticker = new FakeTicker();
+    }
+
+    @Test
+    public void get_coalesced() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        AsyncLoadingCache<Integer, Integer> cache = builder()
+                .executor(task -> new Thread(task).start())
+                .buildAsync(key -> {
+                    loads.incrementAndGet();
+                    done.await();
+                    return key;
+                });
+
+        // the requests that find the key loading join the load instead of starting another
+        List<CompletableFuture<CompletableFuture<Integer>>> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(CompletableFuture.supplyAsync(() -> cache.get(1)));
+        }
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (CompletableFuture<CompletableFuture<Integer>> request : requests) {
+            futures.add(request.get(1, TimeUnit.MINUTES));
+        }
+        assertThat(futures.get(0).isDone()).isFalse();
+
+        done.countDown();
+        for (CompletableFuture<Integer> future : futures) {
+            assertThat(future.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_failure() {
+        AtomicInteger loads = new AtomicInteger();
+        AsyncLoadingCache<Integer, Integer> cache = builder().buildAsync(key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException();
+            }
+            return key;
+        });
+
+        // the failed load is removed, so the next request loads the key again
+        assertThat(cache.get(1).isCompletedExceptionally()).isTrue();
+        assertThat(cache.getIfPresent(1)).isNull();
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_null() {
+        AtomicInteger loads = new AtomicInteger();
+        AsyncLoadingCache<Integer, Integer> cache = builder().buildAsync(
+                key -> (loads.incrementAndGet() == 1) ? null : key);
+
+        // the load that did not find a value is removed, so the next request loads the key again
+        assertThat(cache.get(1).join()).isNull();
+        assertThat(cache.getIfPresent(1)).isNull();
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void getAll_coalesced() {
+        AtomicInteger loads = new AtomicInteger();
+        List<List<Integer>> batches = new ArrayList<>();
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        AsyncLoadingCache<Integer, Integer> cache = builder()
+                .executor(tasks::add)
+                .buildAsync(new CacheLoader<Integer, Integer>() {
+                    @Override public Integer load(Integer key) {
+                        loads.incrementAndGet();
+                        return key;
+                    }
+                    @Override
+                    public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+                        List<Integer> batch = new ArrayList<>();
+                        keys.forEach(batch::add);
+                        batches.add(batch);
+                        return batch.stream().collect(Collectors.toMap(key -> key, key -> key));
+                    }
+                });
+        cache.get(1);
+        tasks.remove().run();
+        CompletableFuture<Integer> loading = cache.get(2);
+
+        // only the absent keys are loaded, in a single call, and the loading key is joined
+        CompletableFuture<Map<Integer, Integer>> result = cache.getAll(Arrays.asList(1, 2, 3, 4));
+        assertThat(tasks).hasSize(2);
+        runAll(tasks);
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactly(3, 4);
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(loading.join()).isEqualTo(2);
+        assertThat(result.join()).containsExactly(
+                entry(1, 1), entry(2, 2), entry(3, 3), entry(4, 4));
+    }
+
+    @Test
+    public void getAll_absent() {
+        AsyncLoadingCache<Integer, Integer> cache = builder()
+                .buildAsync(new CacheLoader<Integer, Integer>() {
+                    @Override public Integer load(Integer key) {
+                        throw new AssertionError();
+                    }
+                    @Override
+                    public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+                        return Collections.singletonMap(1, 1);
+                    }
+                });
+
+        // the keys that the loader did not return are not found, and are not retained
+        assertThat(cache.getAll(Arrays.asList(1, 2, 3)).join()).containsExactly(entry(1, 1));
+        assertThat(cache.asMap().keySet()).containsExactly(1);
+    }
+
+    @Test
+    public void refresh_notElapsed() {
+        AtomicInteger reloads = new AtomicInteger();
+        AsyncLoadingCache<Integer, Integer> cache = refreshing(new CacheLoader<Integer, Integer>() {
+            @Override public Integer load(Integer key) {
+                return key;
+            }
+            @Override public Integer reload(Integer key, Integer oldValue) {
+                reloads.incrementAndGet();
+                return oldValue + 1;
+            }
+        });
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        ticker.advance(59, TimeUnit.SECONDS);
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(reloads.get()).isZero();
+    }
+
+    @Test
+    public void refresh_stale() {
+        AtomicInteger reloads = new AtomicInteger();
+        AsyncLoadingCache<Integer, Integer> cache = refreshing(new CacheLoader<Integer, Integer>() {
+            @Override public Integer load(Integer key) {
+                return key;
+            }
+            @Override public Integer reload(Integer key, Integer oldValue) {
+                reloads.incrementAndGet();
+                return oldValue + 1;
+            }
+        });
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // the read that triggers the reload returns the stale value, and the next read the new one
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(reloads.get()).isEqualTo(1);
+        assertThat(cache.get(1).join()).isEqualTo(2);
+        assertThat(reloads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void refresh_concurrent() throws Exception {
+        AtomicInteger reloads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AsyncLoadingCache<Integer, Integer> cache = refreshing(new CacheLoader<Integer, Integer>() {
+            @Override public Integer load(Integer key) {
+                return key;
+            }
+            @Override public Integer reload(Integer key, Integer oldValue) throws Exception {
+                reloads.incrementAndGet();
+                started.countDown();
+                done.await();
+                return oldValue + 1;
+            }
+        });
+        cache.get(1).join();
+        cache.get(2).join();
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // the first reader runs the reload and is held inside the loader
+        CompletableFuture<Integer> refreshing = CompletableFuture.supplyAsync(
+                () -> cache.get(1).join());
+        started.await();
+
+        // the other readers of the key see the stale value without starting another reload
+        List<CompletableFuture<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            readers.add(CompletableFuture.supplyAsync(() -> cache.get(1).join()));
+        }
+        for (CompletableFuture<Integer> reader : readers) {
+            assertThat(reader.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+        }
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(reloads.get()).isEqualTo(1);
+
+        done.countDown();
+        assertThat(refreshing.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+        assertThat(cache.get(1).join()).isEqualTo(2);
+
+        // each key is reloaded on its own
+        assertThat(cache.get(2).join()).isEqualTo(2);
+        assertThat(cache.get(2).join()).isEqualTo(3);
+        assertThat(reloads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void refresh_failure() {
+        AtomicInteger reloads = new AtomicInteger();
+        AsyncLoadingCache<Integer, Integer> cache = refreshing(new CacheLoader<Integer, Integer>() {
+            @Override public Integer load(Integer key) {
+                return key;
+            }
+            @Override public Integer reload(Integer key, Integer oldValue) {
+                if (reloads.incrementAndGet() == 1) {
+                    throw new IllegalStateException();
+                }
+                return oldValue + 1;
+            }
+        });
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // the failed reload keeps the old value, so the next read tries again
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(reloads.get()).isEqualTo(1);
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(reloads.get()).isEqualTo(2);
+        assertThat(cache.get(1).join()).isEqualTo(2);
+        assertThat(reloads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void refresh_null() {
+        AtomicInteger loads = new AtomicInteger();
+        AsyncLoadingCache<Integer, Integer> cache = refreshing(new CacheLoader<Integer, Integer>() {
+            @Override public Integer load(Integer key) {
+                loads.incrementAndGet();
+                return key;
+            }
+            @Override public Integer reload(Integer key, Integer oldValue) {
+                return null;
+            }
+        });
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // a reload that does not find a value removes the entry, so the next read loads it
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(cache.getIfPresent(1)).isNull();
+        assertThat(cache.get(1).join()).isEqualTo(1);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void refresh_replaced() {
+        AtomicReference<AsyncLoadingCache<Integer, Integer>> cache = new AtomicReference<>();
+        cache.set(refreshing(new CacheLoader<Integer, Integer>() {
+            @Override public Integer load(Integer key) {
+                return key;
+            }
+            @Override public Integer reload(Integer key, Integer oldValue) {
+                // the entry is written while the reload is in progress
+                cache.get().put(key, CompletableFuture.completedFuture(-key));
+                return oldValue + 1;
+            }
+        }));
+        assertThat(cache.get().get(1).join()).isEqualTo(1);
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // the reload does not overwrite the value that was written in the meantime
+        assertThat(cache.get().get(1).join()).isEqualTo(1);
+        assertThat(cache.get().get(1).join()).isEqualTo(-1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void build_refresh() {
+        new BoundedLocalCache.Builder<Integer, Integer>()
+                .maximumSize(MAXIMUM)
+                .refreshAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    AsyncLoadingCache<Integer, Integer> refreshing(CacheLoader<Integer, Integer> loader) {
+        return builder()
+                .refreshAfterWrite(1, TimeUnit.MINUTES)
+                .buildAsync(loader);
+    }
+
+    /** Runs the tasks that were submitted to the executor, including those that they submit. */
+    static void runAll(Queue<Runnable> tasks) {
+        for (Runnable task; (task = tasks.poll()) != null;) {
+            task.run();
+        }
+    }
+
+    /** Returns a builder whose loads run on the calling thread. */
+    BoundedLocalCache.Builder<Integer, Integer> builder() {
+        return new BoundedLocalCache.Builder<Integer, Integer>()
+                .maximumSize(MAXIMUM)
+                .executor(Runnable::run)
+                .ticker(ticker);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A contention benchmark comparing the {@link Backoff} strategies of the {@link EliminationStack}.
+ * <p>
+ * Each group pairs a pushing thread with a popping thread, so that the operations are eliminated
+ * when they collide. The {@link #main} method runs the groups with one thread per available cpu,
+ * where each thread has a core of its own, and again with four threads per cpu, where the threads
+ * compete for the processors as in a container whose CPU quota is smaller than the number of cpus
+ * that it observes. A spinning strategy should do best in the former and a strategy that gives up
+ * the processor in the latter. The throughput mode reports operations per second and the sample
+ * mode reports the percentile latencies, which show the cost of parking.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BackoffBenchmark {
+    static final int PREPOPULATED = 1_024;
+    static final Integer ELEMENT = 1;
+
+    @Param({"Spin", "Exponential", "Yielding", "SpinThenPark"})
+    BackoffType backoffType;
+
+    EliminationStack<Integer> stack;
+
+    @Setup
+    public void setup() {
+        stack = new EliminationStack.Builder<Integer>()
+                .backoff(backoffType.create())
+                .build();
+        for (int i = 0; i < PREPOPULATED; i++) {
+            stack.push(ELEMENT);
+        }
+    }
+
+    @Benchmark @Group("balanced") @GroupThreads(1)
+    public void balanced_push() {
+        stack.push(ELEMENT);
+    }
+
+    @Benchmark @Group("balanced") @GroupThreads(1)
+    public Integer balanced_pop() {
+        return stack.pop();
+    }
+
+    /** Runs the suite on dedicated cores and then oversubscribed 4x the number of cpus. */
+    public static void main(String[] args) throws RunnerException {
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[] { ncpu, 4 * ncpu }) {
+            // the balanced group has 2 threads
+            Options options = new OptionsBuilder()
+                .include(BackoffBenchmark.class.getSimpleName())
+                .threadGroups(Math.max(1, threads / 2))
+                .build();
+            new Runner(options).run();
+        }
+    }
+
+    /** The backoff strategies under test. */
+    public enum BackoffType {
+        Spin {
+            @Override Backoff create() {
+                return Backoff.spin();
+            }
+        },
+        Exponential {
+            @Override Backoff create() {
+                return Backoff.exponential();
+            }
+        },
+        Yielding {
+            @Override Backoff create() {
+                return Backoff.yielding();
+            }
+        },
+        SpinThenPark {
+            @Override Backoff create() {
+                return Backoff.spinThenPark();
+            }
+        };
+
+        abstract Backoff create();
+    }
+}
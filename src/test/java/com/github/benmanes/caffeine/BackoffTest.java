@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static com.github.benmanes.caffeine.Backoff.Strategy.MAX_EXPONENT;
+import static com.github.benmanes.caffeine.Backoff.Strategy.PARK_COST;
+import static com.github.benmanes.caffeine.Backoff.Strategy.PARK_THRESHOLD;
+import static com.github.benmanes.caffeine.Backoff.Strategy.YIELD_COST;
+import static com.github.benmanes.caffeine.EliminationArena.SPINS_PER_STEP;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the spin charges of the built-in {@link Backoff} strategies and how an
+ * {@link EliminationArena} bounds the charge of any strategy.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class BackoffTest {
+    static final int[] ATTEMPTS = { 0, 1, 5, 63, 64, 1_000, Integer.MAX_VALUE };
+
+    @Test
+    public void spin() {
+        for (int attempt : ATTEMPTS) {
+            assertThat(Backoff.spin().pause(attempt)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void exponential() {
+        for (int attempt = 0; attempt <= MAX_EXPONENT; attempt++) {
+            assertThat(Backoff.exponential().pause(attempt)).isEqualTo(1 << attempt);
+        }
+
+        // the doubling stops at the limit, including for a count that would overflow the shift
+        for (int attempt : ATTEMPTS) {
+            assertThat(Backoff.exponential().pause(attempt))
+                    .isEqualTo(1 << Math.min(attempt, MAX_EXPONENT));
+        }
+    }
+
+    @Test
+    public void yielding() {
+        for (int attempt : ATTEMPTS) {
+            assertThat(Backoff.yielding().pause(attempt)).isEqualTo(YIELD_COST);
+        }
+    }
+
+    @Test
+    public void spinThenPark() {
+        for (int attempt = 0; attempt < PARK_THRESHOLD; attempt++) {
+            assertThat(Backoff.spinThenPark().pause(attempt)).isEqualTo(1);
+        }
+        assertThat(Backoff.spinThenPark().pause(PARK_THRESHOLD)).isEqualTo(PARK_COST);
+        assertThat(Backoff.spinThenPark().pause(Integer.MAX_VALUE)).isEqualTo(PARK_COST);
+    }
+
+    @Test(dataProvider = "strategies")
+    public void arena_charge(Backoff backoff) {
+        EliminationArena<Integer> arena = arena(backoff);
+        for (int attempt : ATTEMPTS) {
+            int expected = Math.max(1, Math.min(backoff.pause(attempt), SPINS_PER_STEP));
+            assertThat(arena.pause(attempt)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void arena_clamped() {
+        // a charge below one would let a waiter poll forever, and a charge above the per-slot
+        // limit would cut the wait at the other slots short (the limit is zero on a uniprocessor)
+        int limit = Math.max(1, SPINS_PER_STEP);
+        assertThat(arena(attempt -> 0).pause(0)).isEqualTo(1);
+        assertThat(arena(attempt -> -5).pause(0)).isEqualTo(1);
+        assertThat(arena(attempt -> Integer.MIN_VALUE).pause(0)).isEqualTo(1);
+        assertThat(arena(attempt -> SPINS_PER_STEP + 1).pause(0)).isEqualTo(limit);
+        assertThat(arena(attempt -> Integer.MAX_VALUE).pause(0)).isEqualTo(limit);
+    }
+
+    @Test(dataProvider = "strategies")
+    public void elimination(Backoff backoff) throws Exception {
+        // a stack that cannot hold an element hands each one off through the arena
+        EliminationStack<Integer> stack = new EliminationStack.Builder<Integer>()
+                .maximumSize(0)
+                .backoff(backoff)
+                .build();
+        assertThat(EliminationTesting.handOff(stack, 1)).isEqualTo(1);
+        assertThat(stack.isEmpty()).isTrue();
+    }
+
+    @DataProvider(name = "strategies")
+    public Object[][] strategies() {
+        return new Object[][] {
+            { Backoff.spin() },
+            { Backoff.exponential() },
+            { Backoff.yielding() },
+            { Backoff.spinThenPark() },
+        };
+    }
+
+    static EliminationArena<Integer> arena(Backoff backoff) {
+        return new EliminationArena<>(EliminationStatsRecorder.disabled(), backoff);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link BoundedBuffer}, a striped buffer of lossy ring buffers.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class BoundedBufferTest {
+
+    @Test
+    public void offer_drain() {
+        BoundedBuffer<Integer> buffer = new BoundedBuffer<>();
+        for (int i = 0; i < BoundedBuffer.BUFFER_SIZE; i++) {
+            assertThat(buffer.offer(i)).isEqualTo(Buffer.SUCCESS);
+        }
+
+        // a single producer writes to one stripe, which drops the element once it is full
+        assertThat(buffer.offer(-1)).isEqualTo(Buffer.FULL);
+
+        List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained::add);
+        assertThat(drained).hasSize(BoundedBuffer.BUFFER_SIZE).doesNotContain(-1);
+        assertThat(drained).isSorted();
+
+        drained.clear();
+        buffer.drainTo(drained::add);
+        assertThat(drained).isEmpty();
+        assertThat(buffer.offer(1)).isEqualTo(Buffer.SUCCESS);
+    }
+
+    @Test
+    public void drain_empty() {
+        BoundedBuffer<Integer> buffer = new BoundedBuffer<>();
+        List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained::add);
+        assertThat(drained).isEmpty();
+        assertThat(buffer.table).isNull();
+    }
+
+    @Test
+    public void offer_concurrent() throws InterruptedException {
+        BoundedBuffer<Integer> buffer = new BoundedBuffer<>();
+        LongAdder added = new LongAdder();
+        LongAdder drained = new LongAdder();
+        Thread[] producers = new Thread[4];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (buffer.offer(j) == Buffer.SUCCESS) {
+                        added.increment();
+                    }
+                }
+            });
+            producers[i].start();
+        }
+
+        // the consumer has exclusive access, while the producers drop what does not fit
+        for (boolean alive = true; alive;) {
+            alive = false;
+            for (Thread producer : producers) {
+                alive |= producer.isAlive();
+            }
+            buffer.drainTo(e -> drained.increment());
+        }
+        buffer.drainTo(e -> drained.increment());
+        assertThat(drained.sum()).isEqualTo(added.sum());
+        assertThat(buffer.table.length).isLessThanOrEqualTo(StripedBuffer.MAXIMUM_TABLE_SIZE);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static com.github.benmanes.caffeine.CacheTesting.assertEmpty;
+import static com.github.benmanes.caffeine.CacheTesting.checkConsistency;
+import static com.github.benmanes.caffeine.CacheTesting.cleanUp;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the size and weight bounds of the {@link BoundedLocalCache}, and that its page replacement
+ * policy stays consistent with its data as entries are evicted and cleared.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class BoundedLocalCacheEvictionTest {
+    static final int MAXIMUM = 100;
+
+    @Test
+    public void evict_maximumSize() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .build();
+        for (int i = 0; i < 10 * MAXIMUM; i++) {
+            cache.put(i, i);
+        }
+        checkConsistency(cache);
+        assertThat(cache.size()).isEqualTo(MAXIMUM);
+        assertThat(cache.weightedSize()).isEqualTo(MAXIMUM);
+    }
+
+    @Test
+    public void evict_retainsFrequent() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .build();
+        for (int i = 0; i < MAXIMUM; i++) {
+            cache.put(i, i);
+        }
+        int hot = MAXIMUM / 10;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < hot; i++) {
+                cache.get(i);
+            }
+            cleanUp(cache);
+        }
+
+        // a scan of entries that are used once should not flush out the frequently used entries
+        for (int i = MAXIMUM; i < 10 * MAXIMUM; i++) {
+            cache.put(i, i);
+        }
+        checkConsistency(cache);
+        for (int i = 0; i < hot; i++) {
+            assertThat(cache.containsKey(i)).as("hot key %d", i).isTrue();
+        }
+    }
+
+    @Test
+    public void evict_batch() throws InterruptedException {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .build();
+        for (int i = 0; i < MAXIMUM; i++) {
+            cache.put(i, i);
+        }
+        checkConsistency(cache);
+
+        // the writes are applied together, so that many entries are evicted by one maintenance
+        whileLocked(cache, () -> {
+            for (int i = MAXIMUM; i < 2 * MAXIMUM; i++) {
+                cache.put(i, i);
+            }
+        });
+        checkConsistency(cache);
+        assertThat(cache.size()).isEqualTo(MAXIMUM);
+    }
+
+    @Test
+    public void evict_maximumWeight() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumWeight(MAXIMUM)
+                .weigher((key, value) -> value)
+                .build();
+        for (int i = 0; i < 10 * MAXIMUM; i++) {
+            cache.put(i, 1 + (i % 10));
+        }
+        checkConsistency(cache);
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(MAXIMUM);
+        assertThat(cache.size()).isGreaterThanOrEqualTo(MAXIMUM / 10);
+    }
+
+    @Test
+    public void evict_oversized() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumWeight(MAXIMUM)
+                .weigher((key, value) -> value)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, 1);
+        }
+        cache.put(-1, MAXIMUM + 1);
+        checkConsistency(cache);
+        assertThat(cache.containsKey(-1)).isFalse();
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.weightedSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void evict_updatedWeight() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumWeight(MAXIMUM)
+                .weigher((key, value) -> value)
+                .build();
+        for (int i = 0; i < MAXIMUM; i++) {
+            cache.put(i, 1);
+        }
+        cache.put(0, MAXIMUM / 2);
+        checkConsistency(cache);
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(MAXIMUM);
+    }
+
+    @Test
+    public void setCapacity_shrinks() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .build();
+        for (int i = 0; i < MAXIMUM; i++) {
+            cache.put(i, i);
+        }
+        cache.setCapacity(MAXIMUM / 2);
+        checkConsistency(cache);
+        assertThat(cache.capacity()).isEqualTo(MAXIMUM / 2);
+        assertThat(cache.size()).isEqualTo(MAXIMUM / 2);
+    }
+
+    @Test
+    public void clear() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .build();
+        for (int i = 0; i < MAXIMUM; i++) {
+            cache.put(i, i);
+            cache.get(i);
+        }
+        cache.clear();
+        assertEmpty(cache);
+    }
+
+    @Test
+    public void clear_pendingWrites() throws InterruptedException {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .expireAfterWrite(1, TimeUnit.DAYS)
+                .build();
+        for (int i = 0; i < MAXIMUM / 2; i++) {
+            cache.put(i, i);
+        }
+        whileLocked(cache, () -> {
+            for (int i = 0; i < MAXIMUM; i++) {
+                cache.put(i, -i);
+            }
+            cache.remove(0);
+            assertThat(cache.writeBuffer).isNotEmpty();
+        });
+        cache.clear();
+        assertEmpty(cache);
+
+        // the cache remains usable after the pending writes were discarded
+        for (int i = 0; i < MAXIMUM / 2; i++) {
+            cache.put(i, i);
+        }
+        checkConsistency(cache);
+        assertThat(cache.size()).isEqualTo(MAXIMUM / 2);
+    }
+
+    static BoundedLocalCache.Builder<Integer, Integer> builder() {
+        return new BoundedLocalCache.Builder<>();
+    }
+
+    /**
+     * Runs the writes while another thread holds the eviction lock, so that they are buffered
+     * rather than applied to the policy.
+     */
+    static void whileLocked(BoundedLocalCache<?, ?> cache, Runnable writes)
+            throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            cache.evictionLock.lock();
+            try {
+                locked.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                cache.evictionLock.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+        try {
+            writes.run();
+        } finally {
+            done.countDown();
+            holder.join();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static com.github.benmanes.caffeine.BoundedLocalCacheEvictionTest.whileLocked;
+import static com.github.benmanes.caffeine.CacheTesting.checkConsistency;
+import static com.github.benmanes.caffeine.CacheTesting.cleanUp;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the expiration of the entries of the {@link BoundedLocalCache}, with a ticker that the
+ * test advances manually.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class BoundedLocalCacheExpirationTest {
+    FakeTicker ticker;
+
+    @BeforeMethod
+    public void setUp() {
+        ticker = new FakeTicker();
+    }
+
+    @Test
+    public void expireAfterWrite() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        cache.put(1, 1);
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        assertThat(cache.get(1)).isEqualTo(1);
+        cache.put(2, 2);
+
+        // the read does not extend the lifetime of the first entry
+        ticker.advance(45, TimeUnit.SECONDS);
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.containsKey(1)).isFalse();
+        assertThat(cache.get(2)).isEqualTo(2);
+
+        cleanUp(cache);
+        assertThat(cache.size()).isEqualTo(1);
+        checkConsistency(cache);
+    }
+
+    @Test
+    public void expireAfterWrite_update() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        cache.put(1, 1);
+
+        ticker.advance(45, TimeUnit.SECONDS);
+        cache.put(1, 2);
+        ticker.advance(45, TimeUnit.SECONDS);
+        assertThat(cache.get(1)).isEqualTo(2);
+
+        ticker.advance(15, TimeUnit.SECONDS);
+        assertThat(cache.get(1)).isNull();
+    }
+
+    @Test
+    public void expireAfterAccess() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .build();
+        cache.put(1, 1);
+        cache.put(2, 2);
+
+        // each read extends the lifetime of the first entry
+        for (int i = 0; i < 4; i++) {
+            ticker.advance(30, TimeUnit.SECONDS);
+            assertThat(cache.get(1)).isEqualTo(1);
+        }
+        assertThat(cache.get(2)).isNull();
+
+        ticker.advance(1, TimeUnit.MINUTES);
+        assertThat(cache.get(1)).isNull();
+
+        cleanUp(cache);
+        assertThat(cache.isEmpty()).isTrue();
+        checkConsistency(cache);
+    }
+
+    @Test
+    public void contains_expired() throws InterruptedException {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        cache.put(1, 1);
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // the mapping that was not yet evicted is absent to every query
+        whileLocked(cache, () -> {
+            assertThat(cache.data).hasSize(1);
+            assertThat(cache.containsKey(1)).isFalse();
+            assertThat(cache.containsValue(1)).isFalse();
+            assertThat(cache.values().contains(1)).isFalse();
+            assertThat(cache.entrySet().contains(new SimpleEntry<>(1, 1))).isFalse();
+        });
+    }
+
+    @Test
+    public void iterate_expired() throws InterruptedException {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        cache.put(1, 1);
+        ticker.advance(45, TimeUnit.SECONDS);
+        cache.put(2, 2);
+        ticker.advance(30, TimeUnit.SECONDS);
+
+        // the views traverse only the live mapping, although the expired one was not yet evicted
+        whileLocked(cache, () -> {
+            assertThat(cache.data).hasSize(2);
+            assertThat(new ArrayList<>(cache.keySet())).containsExactly(2);
+            assertThat(cache.keySet().toArray()).containsExactly(2);
+            assertThat(cache.keySet().toArray(new Integer[0])).containsExactly(2);
+            assertThat(new ArrayList<>(cache.values())).containsExactly(2);
+            List<Object> entries = new ArrayList<>(cache.entrySet());
+            assertThat(entries).containsExactly(new SimpleEntry<>(2, 2));
+        });
+    }
+
+    @Test
+    public void remove_expired() throws InterruptedException {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        cache.put(1, 1);
+        cache.put(2, 2);
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // the mappings are absent, as for contains, but those not yet evicted are still removed
+        whileLocked(cache, () -> {
+            assertThat(cache.remove(1)).isNull();
+            assertThat(cache.keySet().remove(2)).isFalse();
+            assertThat(cache.data).isEmpty();
+        });
+
+        cleanUp(cache);
+        checkConsistency(cache);
+    }
+
+    @Test
+    public void expireAfter_perEntry() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfter(new MinutesExpiry())
+                .build();
+        for (int i = 1; i <= 10; i++) {
+            cache.put(i, i);
+        }
+
+        ticker.advance(5, TimeUnit.MINUTES);
+        cleanUp(cache);
+        for (int i = 1; i <= 10; i++) {
+            assertThat(cache.containsKey(i)).as("key %d", i).isEqualTo(i > 5);
+        }
+        assertThat(cache.size()).isEqualTo(5);
+        checkConsistency(cache);
+    }
+
+    @Test
+    public void expireAfter_update() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfter(new MinutesExpiry())
+                .build();
+        cache.put(1, 1);
+        cache.put(2, 2);
+
+        // an update computes a new lifetime from the replacement value
+        ticker.advance(30, TimeUnit.SECONDS);
+        cache.put(1, 5);
+        cache.put(2, 1);
+
+        ticker.advance(2, TimeUnit.MINUTES);
+        assertThat(cache.get(1)).isEqualTo(5);
+        assertThat(cache.get(2)).isNull();
+    }
+
+    @Test
+    public void expireAfter_pendingLoad() {
+        List<Runnable> loads = new ArrayList<>();
+        AsyncLoadingCache<Integer, Integer> cache = builder()
+                .expireAfter(new MinutesExpiry())
+                .executor(loads::add)
+                .buildAsync(key -> key);
+        CompletableFuture<Integer> future = cache.get(1);
+
+        // an entry does not expire while its value is loading
+        ticker.advance(1, TimeUnit.HOURS);
+        assertThat(cache.getIfPresent(1)).isSameAs(future);
+        assertThat(cache.cache.data.get(1).isPending()).isTrue();
+
+        // once loaded, the entry expires as if it was created when the load completed
+        loads.forEach(Runnable::run);
+        assertThat(future.join()).isEqualTo(1);
+        assertThat(cache.cache.data.get(1).isPending()).isFalse();
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        assertThat(cache.getIfPresent(1)).isSameAs(future);
+
+        ticker.advance(31, TimeUnit.SECONDS);
+        assertThat(cache.getIfPresent(1)).isNull();
+    }
+
+    @Test(dataProvider = "fixedExpiry")
+    public void expireAfterFixed_pendingLoad(String name,
+            Function<BoundedLocalCache.Builder<Integer, Integer>,
+                     BoundedLocalCache.Builder<Integer, Integer>> expiration) {
+        List<Runnable> loads = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        AsyncLoadingCache<Integer, Integer> cache = expiration.apply(builder())
+                .executor(loads::add)
+                .buildAsync(key -> {
+                    calls.incrementAndGet();
+                    return key;
+                });
+        CompletableFuture<Integer> future = cache.get(1);
+        cache.put(2, CompletableFuture.completedFuture(2));
+
+        // a load that outlasts the lifetime is joined rather than started again, and it is kept
+        // by the maintenance that expires the entries behind it
+        ticker.advance(2, TimeUnit.MINUTES);
+        assertThat(cache.get(1)).isSameAs(future);
+        cleanUp(cache.cache);
+        assertThat(cache.cache.data.keySet()).containsOnly(1);
+
+        // the lifetime starts when the load completes
+        loads.forEach(Runnable::run);
+        assertThat(future.join()).isEqualTo(1);
+        ticker.advance(30, TimeUnit.SECONDS);
+        assertThat(cache.getIfPresent(1)).isSameAs(future);
+        assertThat(calls.get()).isEqualTo(1);
+
+        ticker.advance(1, TimeUnit.MINUTES);
+        assertThat(cache.getIfPresent(1)).isNull();
+        cleanUp(cache.cache);
+        assertThat(cache.cache.data).isEmpty();
+        checkConsistency(cache.cache);
+    }
+
+    @DataProvider(name = "fixedExpiry")
+    public Object[][] fixedExpiry() {
+        Function<BoundedLocalCache.Builder<Integer, Integer>,
+                 BoundedLocalCache.Builder<Integer, Integer>> afterWrite =
+                builder -> builder.expireAfterWrite(1, TimeUnit.MINUTES);
+        Function<BoundedLocalCache.Builder<Integer, Integer>,
+                 BoundedLocalCache.Builder<Integer, Integer>> afterAccess =
+                builder -> builder.expireAfterAccess(1, TimeUnit.MINUTES);
+        return new Object[][] {
+            { "expireAfterWrite", afterWrite },
+            { "expireAfterAccess", afterAccess },
+        };
+    }
+
+    BoundedLocalCache.Builder<Integer, Integer> builder() {
+        return new BoundedLocalCache.Builder<Integer, Integer>()
+                .maximumSize(Long.MAX_VALUE)
+                .ticker(ticker);
+    }
+
+    /** An expiry where each entry lives for as many minutes as its value, which a read keeps. */
+    static final class MinutesExpiry implements Expiry<Integer, Integer> {
+        @Override public long expireAfterCreate(Integer key, Integer value, long currentTime) {
+            return TimeUnit.MINUTES.toNanos(value);
+        }
+        @Override public long expireAfterUpdate(Integer key, Integer value,
+                long currentTime, long currentDuration) {
+            return TimeUnit.MINUTES.toNanos(value);
+        }
+        @Override public long expireAfterRead(Integer key, Integer value,
+                long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
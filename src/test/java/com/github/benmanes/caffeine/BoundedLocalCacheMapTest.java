@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import junit.framework.TestSuite;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.testing.MapTestSuiteBuilder;
+import com.google.common.collect.testing.TestStringMapGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.collect.testing.features.MapFeature;
+
+/**
+ * The guava-testlib suites for the {@link Map} contract of the {@link BoundedLocalCache}, and
+ * tests of the atomic operations of the {@link ConcurrentMap} contract that the suites of this
+ * version of guava-testlib do not cover. The cache is configured with each of its policies, with
+ * bounds that are not reached by the tests so that the entries are retained.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class BoundedLocalCacheMapTest {
+    static final Map<String, Supplier<BoundedLocalCache.Builder<String, String>>> BUILDERS =
+            ImmutableMap.of(
+                "size", () -> new BoundedLocalCache.Builder<String, String>()
+                    .maximumSize(Long.MAX_VALUE),
+                "weight", () -> new BoundedLocalCache.Builder<String, String>()
+                    .maximumWeight(Long.MAX_VALUE)
+                    .weigher((key, value) -> value.length()),
+                "fixed expiry", () -> new BoundedLocalCache.Builder<String, String>()
+                    .expireAfterWrite(1, TimeUnit.DAYS)
+                    .expireAfterAccess(1, TimeUnit.DAYS),
+                "variable expiry", () -> new BoundedLocalCache.Builder<String, String>()
+                    .expireAfter(new FixedExpiry<>(TimeUnit.DAYS.toNanos(1))));
+
+    @Test(dataProvider = "tests")
+    public void map(String name, junit.framework.Test test) throws Throwable {
+        Testlib.run(test);
+    }
+
+    @Test(dataProvider = "maps")
+    public void putIfAbsent(ConcurrentMap<String, String> map) {
+        assertThat(map.putIfAbsent("a", "1")).isNull();
+        assertThat(map.putIfAbsent("a", "2")).isEqualTo("1");
+        assertThat(map.get("a")).isEqualTo("1");
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test(dataProvider = "maps")
+    public void replace(ConcurrentMap<String, String> map) {
+        assertThat(map.replace("a", "1")).isNull();
+        assertThat(map.containsKey("a")).isFalse();
+
+        map.put("a", "1");
+        assertThat(map.replace("a", "2")).isEqualTo("1");
+        assertThat(map.get("a")).isEqualTo("2");
+    }
+
+    @Test(dataProvider = "maps")
+    public void replace_conditionally(ConcurrentMap<String, String> map) {
+        map.put("a", "1");
+        assertThat(map.replace("a", "2", "3")).isFalse();
+        assertThat(map.get("a")).isEqualTo("1");
+        assertThat(map.replace("a", "1", "3")).isTrue();
+        assertThat(map.get("a")).isEqualTo("3");
+    }
+
+    @Test(dataProvider = "maps")
+    public void remove_conditionally(ConcurrentMap<String, String> map) {
+        map.put("a", "1");
+        assertThat(map.remove("a", "2")).isFalse();
+        assertThat(map.get("a")).isEqualTo("1");
+        assertThat(map.remove("a", "1")).isTrue();
+        assertThat(map.containsKey("a")).isFalse();
+        assertThat(map.isEmpty()).isTrue();
+    }
+
+    @DataProvider(name = "maps")
+    public Object[][] maps() {
+        return BUILDERS.values().stream()
+            .map(builder -> new Object[] { builder.get().build() })
+            .toArray(Object[][]::new);
+    }
+
+    @DataProvider(name = "tests")
+    public Object[][] tests() {
+        return Testlib.asDataProvider(BUILDERS.entrySet().stream()
+            .map(entry -> suite("BoundedLocalCache[" + entry.getKey() + "]", entry.getValue()))
+            .toArray(TestSuite[]::new));
+    }
+
+    /** Returns the suite for the maps created by the builder. */
+    static TestSuite suite(String name,
+            Supplier<BoundedLocalCache.Builder<String, String>> builder) {
+        return MapTestSuiteBuilder
+            .using(new TestStringMapGenerator() {
+                @Override
+                protected Map<String, String> create(Map.Entry<String, String>[] entries) {
+                    BoundedLocalCache<String, String> map = builder.get().build();
+                    for (Map.Entry<String, String> entry : entries) {
+                        map.put(entry.getKey(), entry.getValue());
+                    }
+                    return map;
+                }
+            })
+            .named(name)
+            .withFeatures(
+                MapFeature.GENERAL_PURPOSE,
+                MapFeature.ALLOWS_NULL_ENTRY_QUERIES,
+                CollectionFeature.SUPPORTS_ITERATOR_REMOVE,
+                CollectionSize.ANY)
+            .createTestSuite();
+    }
+
+    /** An expiry that gives every entry the same lifetime, which a read does not extend. */
+    static final class FixedExpiry<K, V> implements Expiry<K, V> {
+        final long duration;
+
+        FixedExpiry(long duration) {
+            this.duration = duration;
+        }
+
+        @Override public long expireAfterCreate(K key, V value, long currentTime) {
+            return duration;
+        }
+        @Override public long expireAfterUpdate(K key, V value,
+                long currentTime, long currentDuration) {
+            return duration;
+        }
+        @Override public long expireAfterRead(K key, V value,
+                long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
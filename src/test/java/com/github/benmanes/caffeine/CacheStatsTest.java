@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static com.github.benmanes.caffeine.CacheTesting.cleanUp;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the statistics that a {@link BoundedLocalCache} and an {@link AsyncLoadingCache} record
+ * when they are enabled, and that nothing is recorded when they are not.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class CacheStatsTest {
+    static final int MAXIMUM = 100;
+
+    FakeTicker ticker;
+
+    @BeforeMethod
+    public void setUp() {
+        ticker = new FakeTicker();
+    }
+
+    @Test
+    public void disabled() {
+        BoundedLocalCache<Integer, Integer> cache = new BoundedLocalCache.Builder<Integer, Integer>()
+                .maximumSize(MAXIMUM)
+                .build();
+        exercise(cache);
+
+        assertThat(cache.isRecordingStats()).isFalse();
+        assertThat(cache.statsCounter).isSameAs(StatsCounter.disabled());
+        assertThat(cache.statsTicker).isSameAs(Ticker.disabledTicker());
+        assertThat(cache.stats()).isEqualTo(CacheStats.empty());
+    }
+
+    @Test
+    public void disabled_loads() {
+        AsyncLoadingCache<Integer, Integer> cache = new BoundedLocalCache.Builder<Integer, Integer>()
+                .maximumSize(MAXIMUM)
+                .executor(Runnable::run)
+                .ticker(ticker)
+                .buildAsync(this::load);
+        for (int i = 0; i < 3; i++) {
+            cache.get(i);
+        }
+        assertThat(cache.cache.stats()).isEqualTo(CacheStats.empty());
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        BoundedLocalCache<Integer, Integer> cache = builder().maximumSize(MAXIMUM).build();
+        cache.put(1, 1);
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+
+        // the lookups that bypass the policy are not recorded
+        cache.getQuietly(1);
+        cache.containsKey(2);
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.hitCount()).isEqualTo(2);
+        assertThat(stats.missCount()).isEqualTo(1);
+        assertThat(stats.requestCount()).isEqualTo(3);
+        assertThat(stats.hitRate()).isEqualTo(2.0 / 3.0);
+        assertThat(stats.loadCount()).isZero();
+        assertThat(stats.evictionCount()).isZero();
+    }
+
+    @Test
+    public void hit_expired() {
+        BoundedLocalCache<Integer, Integer> cache = builder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        cache.put(1, 1);
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        // an expired entry is a miss, and is counted as an eviction once it is removed
+        assertThat(cache.get(1)).isNull();
+        cleanUp(cache);
+        CacheStats stats = cache.stats();
+        assertThat(stats.hitCount()).isZero();
+        assertThat(stats.missCount()).isEqualTo(1);
+        assertThat(stats.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictions() {
+        BoundedLocalCache<Integer, Integer> cache = builder().maximumSize(MAXIMUM).build();
+        for (int i = 0; i < 3 * MAXIMUM; i++) {
+            cache.put(i, i);
+        }
+        cleanUp(cache);
+        assertThat(cache.stats().evictionCount()).isEqualTo(2 * MAXIMUM);
+
+        // an explicit removal is not an eviction
+        cache.remove(cache.keySet().iterator().next());
+        cache.clear();
+        cleanUp(cache);
+        assertThat(cache.stats().evictionCount()).isEqualTo(2 * MAXIMUM);
+    }
+
+    @Test
+    public void loads() {
+        AsyncLoadingCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .executor(Runnable::run)
+                .buildAsync(this::load);
+        assertThat(cache.get(0).join()).isEqualTo(0);
+        assertThat(cache.get(1).join()).isNull();
+        assertThat(cache.get(2).isCompletedExceptionally()).isTrue();
+        assertThat(cache.get(0).join()).isEqualTo(0);
+
+        // a load that does not find a value is a failure, and each load took a second
+        CacheStats stats = cache.cache.stats();
+        assertThat(stats.hitCount()).isEqualTo(1);
+        assertThat(stats.missCount()).isEqualTo(3);
+        assertThat(stats.loadSuccessCount()).isEqualTo(1);
+        assertThat(stats.loadFailureCount()).isEqualTo(2);
+        assertThat(stats.loadFailureRate()).isEqualTo(2.0 / 3.0);
+        assertThat(stats.totalLoadTime()).isEqualTo(TimeUnit.SECONDS.toNanos(3));
+        assertThat(stats.averageLoadPenalty()).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void loadAll() {
+        AsyncLoadingCache<Integer, Integer> cache = builder()
+                .maximumSize(MAXIMUM)
+                .executor(Runnable::run)
+                .buildAsync(this::load);
+        assertThat(cache.getAll(Arrays.asList(0, 3, 4)).join()).hasSize(3);
+
+        // a bulk load is a single call to the loader
+        CacheStats stats = cache.cache.stats();
+        assertThat(stats.missCount()).isEqualTo(3);
+        assertThat(stats.loadSuccessCount()).isEqualTo(1);
+        assertThat(stats.totalLoadTime()).isEqualTo(TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    public void plusAndMinus() {
+        CacheStats one = new CacheStats(1, 2, 3, 4, 5, 6);
+        CacheStats two = new CacheStats(10, 20, 30, 40, 50, 60);
+        assertThat(one.plus(two)).isEqualTo(new CacheStats(11, 22, 33, 44, 55, 66));
+        assertThat(two.minus(one)).isEqualTo(new CacheStats(9, 18, 27, 36, 45, 54));
+        assertThat(one.minus(two)).isEqualTo(CacheStats.empty());
+        assertThat(one.plus(CacheStats.empty())).isEqualTo(one);
+    }
+
+    @Test
+    public void interval() {
+        BoundedLocalCache<Integer, Integer> cache = builder().maximumSize(MAXIMUM).build();
+        cache.get(1);
+        CacheStats start = cache.stats();
+
+        cache.put(1, 1);
+        cache.get(1);
+        CacheStats interval = cache.stats().minus(start);
+        assertThat(interval.hitCount()).isEqualTo(1);
+        assertThat(interval.missCount()).isZero();
+    }
+
+    /** Performs reads that hit and miss, and writes that evict. */
+    static void exercise(BoundedLocalCache<Integer, Integer> cache) {
+        for (int i = 0; i < 2 * MAXIMUM; i++) {
+            cache.put(i, i);
+            cache.get(i);
+            cache.get(-i - 1);
+        }
+        cleanUp(cache);
+        assertThat(cache.size()).isEqualTo(MAXIMUM);
+    }
+
+    /** Takes a second to load the key's value, which is absent for 1 and fails for 2. */
+    Integer load(Integer key) {
+        ticker.advance(1, TimeUnit.SECONDS);
+        if (key == 2) {
+            throw new IllegalStateException();
+        }
+        return (key == 1) ? null : key;
+    }
+
+    BoundedLocalCache.Builder<Integer, Integer> builder() {
+        return new BoundedLocalCache.Builder<Integer, Integer>()
+                .recordStats()
+                .ticker(ticker);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.benmanes.caffeine.BoundedLocalCache.Node;
+
+/**
+ * Utilities for testing the {@link BoundedLocalCache} by applying its pending work and checking
+ * that its policy agrees with its data.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+final class CacheTesting {
+
+    private CacheTesting() {}
+
+    /**
+     * Applies all of the pending reads and writes to the cache's policy and removes the entries
+     * that have expired, as the amortized maintenance of an operation may leave some work behind.
+     *
+     * @param cache the cache to perform the maintenance on
+     */
+    static void cleanUp(BoundedLocalCache<?, ?> cache) {
+        cache.evictionLock.lock();
+        try {
+            do {
+                cache.drainBuffers();
+            } while (!cache.writeBuffer.isEmpty());
+        } finally {
+            cache.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the pending work and asserts that every entry in the cache is in exactly one region
+     * of the policy, and that the weighted sizes are the sums of the weights of the entries in the
+     * regions.
+     *
+     * @param cache the cache to check
+     */
+    static <K, V> void checkConsistency(BoundedLocalCache<K, V> cache) {
+        cache.evictionLock.lock();
+        try {
+            cleanUp(cache);
+
+            long windowWeight = weightOf(cache, cache.accessOrderWindowDeque);
+            long probationWeight = weightOf(cache, cache.accessOrderProbationDeque);
+            long protectedWeight = weightOf(cache, cache.accessOrderProtectedDeque);
+            int linked = cache.accessOrderWindowDeque.size()
+                    + cache.accessOrderProbationDeque.size()
+                    + cache.accessOrderProtectedDeque.size();
+
+            assertThat(linked).isEqualTo(cache.data.size());
+            assertThat(cache.windowWeightedSize).isEqualTo(windowWeight);
+            assertThat(cache.mainProtectedWeightedSize).isEqualTo(protectedWeight);
+            assertThat(cache.weightedSize())
+                    .isEqualTo(windowWeight + probationWeight + protectedWeight);
+            if (cache.expiresAfterWrite()) {
+                assertThat(cache.writeOrderDeque.size()).isEqualTo(cache.data.size());
+            }
+        } finally {
+            cache.evictionLock.unlock();
+        }
+    }
+
+    /** Returns the weight of the deque's entries, asserting that each is the live mapping. */
+    static <K, V> long weightOf(BoundedLocalCache<K, V> cache, Iterable<Node<K, V>> deque) {
+        long weight = 0L;
+        for (Node<K, V> node : deque) {
+            assertThat(cache.data.get(node.key)).isSameAs(node);
+            weight += node.policyWeight;
+        }
+        return weight;
+    }
+
+    /**
+     * Asserts that the cache's data, policy and pending writes are all empty.
+     *
+     * @param cache the cache to check
+     */
+    static <K, V> void assertEmpty(BoundedLocalCache<K, V> cache) {
+        cache.evictionLock.lock();
+        try {
+            List<AccessOrderDeque<Node<K, V>>> deques = Arrays.asList(cache.accessOrderWindowDeque,
+                    cache.accessOrderProbationDeque, cache.accessOrderProtectedDeque);
+            assertThat(cache.data).isEmpty();
+            assertThat(cache.writeBuffer).isEmpty();
+            assertThat(cache.writeOrderDeque).isEmpty();
+            for (AccessOrderDeque<Node<K, V>> deque : deques) {
+                assertThat(deque).isEmpty();
+            }
+            assertThat(cache.weightedSize()).isZero();
+            assertThat(cache.windowWeightedSize).isZero();
+            assertThat(cache.mainProtectedWeightedSize).isZero();
+        } finally {
+            cache.evictionLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.Map;
+
+import com.google.common.cache.CacheBuilder;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+
+/**
+ * The bounded cache implementations that the benchmarks compare.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public enum CacheType {
+    BoundedLocalCache {
+        @Override public <K, V> Map<K, V> create(int maximumSize) {
+            return new BoundedLocalCache.Builder<K, V>()
+                    .maximumSize(maximumSize)
+                    .build();
+        }
+    },
+    ConcurrentLinkedHashMap {
+        @Override public <K, V> Map<K, V> create(int maximumSize) {
+            return new ConcurrentLinkedHashMap.Builder<K, V>()
+                    .maximumWeightedCapacity(maximumSize)
+                    .build();
+        }
+    },
+    Guava {
+        @Override public <K, V> Map<K, V> create(int maximumSize) {
+            return CacheBuilder.newBuilder()
+                    .concurrencyLevel(CONCURRENCY_LEVEL)
+                    .maximumSize(maximumSize)
+                    .<K, V>build()
+                    .asMap();
+        }
+    };
+
+    /** The concurrency level of the caches that are striped by a fixed number of segments. */
+    static final int CONCURRENCY_LEVEL = 64;
+
+    /**
+     * Creates a cache bounded by the maximum number of entries.
+     *
+     * @param maximumSize the maximum number of entries
+     * @return a new, empty cache
+     */
+    public abstract <K, V> Map<K, V> create(int maximumSize);
+}
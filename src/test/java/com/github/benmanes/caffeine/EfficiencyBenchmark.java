@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A trace-driven comparison of the hit rate of the bounded caches. Each trace is a sequence of
+ * keys that is replayed against a cache, where a miss loads the key into the cache. The traces are
+ * synthetic and model the workloads that distinguish the eviction policies:
+ * <ul>
+ *   <li><tt>Zipf</tt>: a skewed distribution where the popularity of a key decays with its rank
+ *   <li><tt>ZipfWithScans</tt>: the skewed distribution interrupted by periodic scans of keys that
+ *       are never requested again, like a nightly batch job
+ *   <li><tt>Loop</tt>: a repeated sequential pass over slightly more keys than the cache holds,
+ *       which is the worst case for a recency based policy
+ * </ul>
+ * The benchmark reports the <tt>hits</tt> and <tt>misses</tt> as secondary counters, normalized by
+ * time, so the hit rate is <tt>hits / (hits + misses)</tt>. The {@link #main} method replays each
+ * trace once per cache and prints the hit rates directly.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Benchmark)
+public class EfficiencyBenchmark {
+    static final int MAXIMUM_SIZE = 5_000;
+    static final int ITEMS = 20 * MAXIMUM_SIZE;
+    static final int TRACE_LENGTH = 1 << 20;
+    static final int MASK = TRACE_LENGTH - 1;
+
+    @Param({"BoundedLocalCache", "ConcurrentLinkedHashMap", "Guava"})
+    CacheType cacheType;
+
+    @Param({"Zipf", "ZipfWithScans", "Loop"})
+    Trace trace;
+
+    Map<Integer, Integer> cache;
+    Integer[] keys;
+    int index;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class HitCounters {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = misses = 0L;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        keys = trace.generate(TRACE_LENGTH, new Random(1L));
+        cache = cacheType.create(MAXIMUM_SIZE);
+    }
+
+    @Benchmark
+    public Integer replay(HitCounters counters) {
+        Integer key = keys[index++ & MASK];
+        Integer value = cache.get(key);
+        if (value == null) {
+            counters.misses++;
+            cache.put(key, key);
+            return key;
+        }
+        counters.hits++;
+        return value;
+    }
+
+    /** The synthetic access patterns to replay. */
+    public enum Trace {
+        Zipf {
+            @Override Integer[] generate(int length, Random random) {
+                ZipfSampler zipf = new ZipfSampler(ITEMS, 0.9);
+                Integer[] keys = new Integer[length];
+                for (int i = 0; i < length; i++) {
+                    keys[i] = zipf.sample(random);
+                }
+                return keys;
+            }
+        },
+        ZipfWithScans {
+            @Override Integer[] generate(int length, Random random) {
+                // Every 50k requests a scan touches twice the cache's size in unique keys
+                int period = 50_000;
+                int scanLength = 2 * MAXIMUM_SIZE;
+                ZipfSampler zipf = new ZipfSampler(ITEMS, 0.9);
+                Integer[] keys = new Integer[length];
+                int scanKey = ITEMS;
+                for (int i = 0; i < length; i++) {
+                    keys[i] = ((i % period) < scanLength) ? scanKey++ : zipf.sample(random);
+                }
+                return keys;
+            }
+        },
+        Loop {
+            @Override Integer[] generate(int length, Random random) {
+                int loopLength = MAXIMUM_SIZE + (MAXIMUM_SIZE / 10);
+                Integer[] keys = new Integer[length];
+                for (int i = 0; i < length; i++) {
+                    keys[i] = i % loopLength;
+                }
+                return keys;
+            }
+        };
+
+        /**
+         * Generates a trace of the given length.
+         *
+         * @param length the number of requests in the trace
+         * @param random the source of randomness
+         * @return the keys requested, in order
+         */
+        abstract Integer[] generate(int length, Random random);
+    }
+
+    /** Samples ranks from a Zipf distribution by a binary search of its cumulative probabilities. */
+    static final class ZipfSampler {
+        final double[] cumulative;
+
+        ZipfSampler(int items, double exponent) {
+            cumulative = new double[items];
+            double sum = 0.0;
+            for (int rank = 1; rank <= items; rank++) {
+                sum += 1.0 / Math.pow(rank, exponent);
+                cumulative[rank - 1] = sum;
+            }
+            for (int i = 0; i < items; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return (index >= 0) ? index : Math.min(-index - 1, cumulative.length - 1);
+        }
+    }
+
+    /** Replays each trace against each cache and prints the hit rates. */
+    public static void main(String[] args) {
+        System.out.printf("%-16s", "trace");
+        for (CacheType cacheType : CacheType.values()) {
+            System.out.printf("%26s", cacheType);
+        }
+        System.out.println();
+
+        for (Trace trace : Trace.values()) {
+            Integer[] keys = trace.generate(TRACE_LENGTH, new Random(1L));
+            System.out.printf("%-16s", trace);
+            for (CacheType cacheType : CacheType.values()) {
+                Map<Integer, Integer> cache = cacheType.create(MAXIMUM_SIZE);
+                long hits = 0L;
+                for (Integer key : keys) {
+                    if (cache.get(key) == null) {
+                        cache.put(key, key);
+                    } else {
+                        hits++;
+                    }
+                }
+                System.out.printf("%25.2f%%", 100.0 * hits / keys.length);
+            }
+            System.out.println();
+        }
+    }
+}
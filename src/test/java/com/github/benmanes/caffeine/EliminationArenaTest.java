@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests how the {@link EliminationArena} selects the slot where a thread starts its search, by the
+ * thread's probe that is advanced after a failed attempt and retained after a successful one.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class EliminationArenaTest {
+
+    @Test
+    public void probe_perThread() throws Exception {
+        int probe = EliminationArena.startIndex();
+        assertThat(probe).isNotZero();
+
+        // advancing another thread's probe does not move this thread's
+        CompletableFuture.runAsync(() -> {
+            int other = EliminationArena.startIndex();
+            EliminationArena.rehash(other);
+            assertThat(EliminationArena.startIndex()).isNotEqualTo(other);
+        }).get(1, TimeUnit.MINUTES);
+        assertThat(EliminationArena.startIndex()).isEqualTo(probe);
+    }
+
+    @Test
+    public void nextIndex() {
+        int start = EliminationArena.startIndex();
+        int next = EliminationArena.nextIndex(start);
+        assertThat(next).isEqualTo(StripedBuffer.xorshift(start)).isNotZero();
+
+        // stepping locally does not record the probe
+        assertThat(EliminationArena.startIndex()).isEqualTo(start);
+    }
+
+    @Test
+    public void tryTransfer_rehashOnFailure() {
+        EliminationArena<Integer> arena = new EliminationArena<>();
+        int start = EliminationArena.startIndex();
+        assertThat(arena.tryTransfer(1)).isFalse();
+        assertThat(EliminationArena.startIndex()).isEqualTo(StripedBuffer.xorshift(start));
+        assertThat(arena.occupiedSlots()).isZero();
+    }
+
+    @Test
+    public void tryReceive_rehashOnFailure() {
+        EliminationArena<Integer> arena = new EliminationArena<>();
+        int start = EliminationArena.startIndex();
+        assertThat(arena.tryReceive()).isNull();
+        assertThat(EliminationArena.startIndex()).isEqualTo(StripedBuffer.xorshift(start));
+        assertThat(arena.occupiedSlots()).isZero();
+    }
+
+    @Test
+    public void tryReceive_explicitStart() {
+        EliminationArena<Integer> arena = new EliminationArena<>();
+        int start = EliminationArena.startIndex();
+        assertThat(arena.tryReceive(EliminationArena.nextIndex(start))).isNull();
+        assertThat(EliminationArena.startIndex()).isEqualTo(start);
+    }
+
+    @Test
+    public void exchange_keepsProbe() throws Exception {
+        // each side retains the probe of the attempt that succeeded, so that it returns to the slot
+        // where it found a partner
+        EliminationTesting.assumeElimination();
+        EliminationArena<Integer> arena = new EliminationArena<>();
+        long deadline = EliminationTesting.deadline();
+        CompletableFuture<Integer> consumer = CompletableFuture.supplyAsync(() -> {
+            for (;;) {
+                int probe = EliminationArena.startIndex();
+                Integer e = arena.tryReceive();
+                if (e != null) {
+                    assertThat(EliminationArena.startIndex()).isEqualTo(probe);
+                    return e;
+                }
+                assertThat(EliminationArena.startIndex()).isNotEqualTo(probe);
+                EliminationTesting.checkDeadline(deadline);
+                Thread.yield();
+            }
+        });
+        for (;;) {
+            int probe = EliminationArena.startIndex();
+            if (arena.tryTransfer(1)) {
+                assertThat(EliminationArena.startIndex()).isEqualTo(probe);
+                break;
+            }
+            assertThat(EliminationArena.startIndex()).isNotEqualTo(probe);
+            EliminationTesting.checkDeadline(deadline);
+            Thread.yield();
+        }
+        assertThat(consumer.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link EliminationBlockingStack}, including the guava-testlib suite for its queue
+ * contract.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class EliminationBlockingStackTest {
+
+    @Test(dataProvider = "tests")
+    public void queue(String name, junit.framework.Test test) throws Throwable {
+        Testlib.run(test);
+    }
+
+    @DataProvider(name = "tests")
+    public Object[][] tests() {
+        return Testlib.asDataProvider(Testlib.queueSuite(
+            "EliminationBlockingStack", EliminationBlockingStack<String>::new, true));
+    }
+
+    @Test
+    public void take_handoff() throws Exception {
+        EliminationBlockingStack<Integer> stack = new EliminationBlockingStack<>();
+        CompletableFuture<Integer> taken = CompletableFuture.supplyAsync(() -> {
+            try {
+                return stack.take();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        await().until(() -> !stack.stack.waiters.isEmpty());
+
+        // the element is handed to the parked consumer without being pushed onto the stack
+        stack.push(1);
+        assertThat(taken.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+        assertThat(stack.isEmpty()).isTrue();
+        assertThat(stack.stack.waiters.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void take_interrupted() throws Exception {
+        EliminationBlockingStack<Integer> stack = new EliminationBlockingStack<>();
+        CompletableFuture<Thread> consumer = new CompletableFuture<>();
+        CompletableFuture<Boolean> interrupted = CompletableFuture.supplyAsync(() -> {
+            consumer.complete(Thread.currentThread());
+            try {
+                stack.take();
+                return false;
+            } catch (InterruptedException e) {
+                return true;
+            }
+        });
+        await().until(() -> !stack.stack.waiters.isEmpty());
+        consumer.get().interrupt();
+        assertThat(interrupted.get(1, TimeUnit.MINUTES)).isTrue();
+
+        // the cancelled waiter is discarded rather than handed the next element
+        stack.push(1);
+        assertThat(stack.pop()).isEqualTo(1);
+    }
+
+    @Test
+    public void poll_timeout() throws InterruptedException {
+        EliminationBlockingStack<Integer> stack = new EliminationBlockingStack<>();
+        long start = System.nanoTime();
+        assertThat(stack.poll(10, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(
+                TimeUnit.MILLISECONDS.toNanos(10));
+
+        stack.push(1);
+        assertThat(stack.poll(1, TimeUnit.MINUTES)).isEqualTo(1);
+    }
+
+    @Test
+    public void producersAndConsumers() throws InterruptedException, ExecutionException {
+        EliminationBlockingStack<Integer> stack = new EliminationBlockingStack<>();
+        int consumers = 4;
+        int elements = 10_000;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[consumers];
+        for (int i = 0; i < consumers; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < elements; j++) {
+                    try {
+                        stack.take();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < consumers * elements; i++) {
+            stack.push(i);
+        }
+
+        // every element is taken exactly once, so no consumer is left waiting for a lost wake-up
+        CompletableFuture.allOf(futures).get();
+        assertThat(stack.isEmpty()).isTrue();
+    }
+}
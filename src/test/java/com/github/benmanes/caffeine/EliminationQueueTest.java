@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link EliminationQueue}, including the guava-testlib suite for its queue contract.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class EliminationQueueTest {
+    static final int PRODUCERS = 4;
+    static final int ELEMENTS = 10_000;
+
+    @Test(dataProvider = "tests")
+    public void queue(String name, junit.framework.Test test) throws Throwable {
+        Testlib.run(test);
+    }
+
+    @DataProvider(name = "tests")
+    public Object[][] tests() {
+        return Testlib.asDataProvider(
+            Testlib.queueSuite("EliminationQueue", EliminationQueue<String>::new, false));
+    }
+
+    @Test
+    public void fifo_producers() throws InterruptedException {
+        EliminationQueue<int[]> queue = new EliminationQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            int producer = i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < ELEMENTS; j++) {
+                    queue.offer(new int[] { producer, j });
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // an element that is eliminated must not overtake those that its producer added earlier
+        int[] expected = new int[PRODUCERS];
+        for (int polled = 0; polled < PRODUCERS * ELEMENTS;) {
+            int[] e = queue.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            assertThat(e[1]).as("producer %d", e[0]).isEqualTo(expected[e[0]]);
+            expected[e[0]]++;
+            polled++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(queue.isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A contention benchmark comparing the {@link EliminationStack} against a plain Treiber stack, a
+ * {@link ConcurrentLinkedDeque} and a {@code synchronized} {@link ArrayDeque}.
+ * <p>
+ * Each group runs a mix of pushing and popping threads. The <tt>balanced</tt> group has an equal
+ * number of producers and consumers, while the <tt>producerHeavy</tt> and <tt>consumerHeavy</tt>
+ * groups skew the mix 3:1 in either direction. The <tt>uncontended</tt> group runs a single thread
+ * that pushes and then pops, so that no update fails and the arena is not used, which isolates
+ * the fixed cost of each operation. The thread count is scaled by the number of groups, so
+ * running with <tt>-tg</tt> (or the {@link #main} method, which steps from 1 to 2x NCPU threads)
+ * measures how each stack degrades under contention. The throughput mode reports operations per
+ * second and the sample mode reports the percentile latencies.
+ * <p>
+ * The elimination stack is measured in three variants. The <tt>EliminationStack</tt> and the
+ * {@link PooledEliminationStack} are built without statistics, and the {@link #main} method prints
+ * the throughput of the pooled stack relative to the unpooled one for each group. As the pooled
+ * stack recycles its nodes, the bytes that a thread allocates per operation, which are reported
+ * after every iteration as measured by {@code ThreadMXBean.getThreadAllocatedBytes} (or by the
+ * collector with <tt>-prof gc</tt>), should drop to approximately zero once the stack has reached
+ * its steady state size. In place of the allocation, its fixed cost includes the lookup of the
+ * thread's probe when it acquires and releases a node, which is measured alone by the
+ * {@link ProbeBenchmark}. The <tt>RecordingEliminationStack</tt> records its statistics, which only
+ * occur on the contended paths, and prints its elimination rate after each iteration, which
+ * shows how often the threads that back off to the arena find a partner as the thread count
+ * grows.
+ * <p>
+ * The benchmark runs against the Java 8 classes. To measure the JDK 9 variant of the
+ * {@link ArenaSlots}, which accesses the arena's slots with relaxed memory ordering, run it on
+ * JDK 9 or later with the multi-release jar (built with <tt>-Pjava9Home</tt>) on the classpath in
+ * place of the compiled classes. The gain is expected on weakly ordered processors like AArch64
+ * rather than on x86, where the relaxed and volatile reads compile to the same instructions.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EliminationStackBenchmark {
+    static final int PREPOPULATED = 1_024;
+    static final Integer ELEMENT = 1;
+
+    @Param({"EliminationStack", "PooledEliminationStack", "RecordingEliminationStack",
+        "TreiberStack", "ConcurrentLinkedDeque", "SynchronizedArrayDeque"})
+    StackType stackType;
+
+    SimpleStack<Integer> stack;
+
+    /** Measures the bytes that the benchmark thread allocates per operation in an iteration. */
+    @State(Scope.Thread)
+    public static class ThreadAllocation {
+        static final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        long startBytes;
+        long operations;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            startBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            operations = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            long bytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            if ((startBytes >= 0) && (operations > 0)) {
+                System.out.printf("%n%s: %.2f bytes/op over %,d ops%n",
+                        Thread.currentThread().getName(),
+                        (double) (bytes - startBytes) / operations, operations);
+            }
+        }
+    }
+
+    @Setup
+    public void setup() {
+        stack = stackType.create();
+        for (int i = 0; i < PREPOPULATED; i++) {
+            stack.push(ELEMENT);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        EliminationStats stats = stack.stats();
+        if (stats != null) {
+            System.out.printf("%n%s: %,d eliminations for %,d arena attempts (%.2f rate)%n",
+                    stackType, stats.eliminations(), stats.attempts(), stats.eliminationRate());
+        }
+    }
+
+    @Benchmark @Group("balanced") @GroupThreads(1)
+    public void balanced_push(ThreadAllocation allocation) {
+        allocation.operations++;
+        stack.push(ELEMENT);
+    }
+
+    @Benchmark @Group("balanced") @GroupThreads(1)
+    public Integer balanced_pop(ThreadAllocation allocation) {
+        allocation.operations++;
+        return stack.pop();
+    }
+
+    @Benchmark @Group("producerHeavy") @GroupThreads(3)
+    public void producerHeavy_push(ThreadAllocation allocation) {
+        allocation.operations++;
+        stack.push(ELEMENT);
+    }
+
+    @Benchmark @Group("producerHeavy") @GroupThreads(1)
+    public Integer producerHeavy_pop(ThreadAllocation allocation) {
+        allocation.operations++;
+        return stack.pop();
+    }
+
+    @Benchmark @Group("consumerHeavy") @GroupThreads(1)
+    public void consumerHeavy_push(ThreadAllocation allocation) {
+        allocation.operations++;
+        stack.push(ELEMENT);
+    }
+
+    @Benchmark @Group("consumerHeavy") @GroupThreads(3)
+    public Integer consumerHeavy_pop(ThreadAllocation allocation) {
+        allocation.operations++;
+        return stack.pop();
+    }
+
+    @Benchmark @Group("uncontended") @GroupThreads(1)
+    public Integer uncontended(ThreadAllocation allocation) {
+        allocation.operations += 2;
+        stack.push(ELEMENT);
+        return stack.pop();
+    }
+
+    /**
+     * Runs the uncontended group and then the suite with thread counts doubling from 1 to 2x the
+     * number of available cpus, printing the throughput of the pooled stack relative to the
+     * unpooled stack after each run.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(EliminationStackBenchmark.class.getSimpleName() + ".uncontended")
+            .build();
+        printPooledRatio(new Runner(options).run());
+
+        int maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+        for (int threads = 2; threads <= maxThreads; threads <<= 1) {
+            // the balanced group has 2 threads and the skewed groups have 4 threads
+            options = new OptionsBuilder()
+                .include(EliminationStackBenchmark.class.getSimpleName() + ".balanced")
+                .threadGroups(threads / 2)
+                .build();
+            printPooledRatio(new Runner(options).run());
+
+            if (threads >= 4) {
+                options = new OptionsBuilder()
+                    .include(EliminationStackBenchmark.class.getSimpleName() + ".*Heavy")
+                    .threadGroups(threads / 4)
+                    .build();
+                printPooledRatio(new Runner(options).run());
+            }
+        }
+    }
+
+    /** Prints the throughput of the pooled stack as a ratio of the unpooled stack's per group. */
+    static void printPooledRatio(Collection<RunResult> results) {
+        for (RunResult pooled : results) {
+            if ((pooled.getParams().getMode() != Mode.Throughput)
+                    || !pooled.getParams().getParam("stackType").equals("PooledEliminationStack")) {
+                continue;
+            }
+            for (RunResult unpooled : results) {
+                if ((unpooled.getParams().getMode() == Mode.Throughput)
+                        && unpooled.getParams().getParam("stackType").equals("EliminationStack")
+                        && unpooled.getParams().getBenchmark().equals(
+                                pooled.getParams().getBenchmark())) {
+                    double ratio = pooled.getPrimaryResult().getScore()
+                            / unpooled.getPrimaryResult().getScore();
+                    System.out.printf("%s: pooled at %.2fx the throughput of unpooled%n",
+                            pooled.getParams().getBenchmark(), ratio);
+                }
+            }
+        }
+    }
+
+    /** The stack implementations under test. */
+    public enum StackType {
+        EliminationStack {
+            @Override <E> SimpleStack<E> create() {
+                EliminationStack<E> stack = new EliminationStack<>();
+                return new SimpleStack<E>() {
+                    @Override public void push(E e) {
+                        stack.push(e);
+                    }
+                    @Override public E pop() {
+                        return stack.pop();
+                    }
+                };
+            }
+        },
+        PooledEliminationStack {
+            @Override <E> SimpleStack<E> create() {
+                PooledEliminationStack<E> stack = new PooledEliminationStack<>();
+                return new SimpleStack<E>() {
+                    @Override public void push(E e) {
+                        stack.push(e);
+                    }
+                    @Override public E pop() {
+                        return stack.pop();
+                    }
+                };
+            }
+        },
+        RecordingEliminationStack {
+            @Override <E> SimpleStack<E> create() {
+                EliminationStack<E> stack = new EliminationStack.Builder<E>()
+                        .recordStats()
+                        .build();
+                return new SimpleStack<E>() {
+                    @Override public void push(E e) {
+                        stack.push(e);
+                    }
+                    @Override public E pop() {
+                        return stack.pop();
+                    }
+                    @Override public EliminationStats stats() {
+                        return stack.stats();
+                    }
+                };
+            }
+        },
+        TreiberStack {
+            @Override <E> SimpleStack<E> create() {
+                return new TreiberStack<>();
+            }
+        },
+        ConcurrentLinkedDeque {
+            @Override <E> SimpleStack<E> create() {
+                Deque<E> deque = new ConcurrentLinkedDeque<>();
+                return new SimpleStack<E>() {
+                    @Override public void push(E e) {
+                        deque.push(e);
+                    }
+                    @Override public E pop() {
+                        return deque.pollFirst();
+                    }
+                };
+            }
+        },
+        SynchronizedArrayDeque {
+            @Override <E> SimpleStack<E> create() {
+                Deque<E> deque = new ArrayDeque<>();
+                return new SimpleStack<E>() {
+                    @Override public void push(E e) {
+                        synchronized (deque) {
+                            deque.push(e);
+                        }
+                    }
+                    @Override public E pop() {
+                        synchronized (deque) {
+                            return deque.pollFirst();
+                        }
+                    }
+                };
+            }
+        };
+
+        abstract <E> SimpleStack<E> create();
+    }
+
+    /** The minimal stack operations exercised by the benchmark. */
+    interface SimpleStack<E> {
+        void push(E e);
+        E pop();
+
+        /** Returns the elimination statistics, or {@code null} if they are not recorded. */
+        default EliminationStats stats() {
+            return null;
+        }
+    }
+
+    /** A Treiber stack without an elimination arena, which serves as the baseline. */
+    static final class TreiberStack<E> implements SimpleStack<E> {
+        final AtomicReference<Node<E>> top = new AtomicReference<>();
+
+        @Override
+        public void push(E e) {
+            Node<E> node = new Node<>(e);
+            for (;;) {
+                node.next = top.get();
+                if (top.compareAndSet(node.next, node)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public E pop() {
+            for (;;) {
+                Node<E> current = top.get();
+                if (current == null) {
+                    return null;
+                } else if (top.compareAndSet(current, current.next)) {
+                    return current.value;
+                }
+            }
+        }
+
+        static final class Node<E> {
+            final E value;
+            Node<E> next;
+
+            Node(E value) {
+                this.value = value;
+            }
+        }
+    }
+}
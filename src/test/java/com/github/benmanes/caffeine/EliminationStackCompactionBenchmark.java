@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.benmanes.caffeine.EliminationStack.Node;
+
+/**
+ * A benchmark of the traversal cost of an {@link EliminationStack} that contains dead nodes left
+ * by removals. The stack holds a fixed number of live elements interleaved with a varying
+ * proportion of tombstones, which are created by clearing the nodes' values directly so that they
+ * are not unlinked eagerly. The first traversal compacts the stack, so the time of a lookup for an
+ * absent element should remain proportional to the number of live elements regardless of the
+ * proportion of removals.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EliminationStackCompactionBenchmark {
+    static final int LIVE = 10_000;
+    static final Integer ABSENT = -1;
+
+    @Param({"0", "50", "90", "99"})
+    int removedPercent;
+
+    EliminationStack<Integer> stack;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        stack = new EliminationStack<>();
+        int total = (100 * LIVE) / (100 - removedPercent);
+        for (int i = 0; i < total; i++) {
+            stack.push(i);
+        }
+        int removed = 0;
+        int toRemove = total - LIVE;
+        for (Node<Integer> node = stack.top.get(); node != null; node = node.next) {
+            if ((removed < toRemove) && ((node.get() % 100) < removedPercent)) {
+                node.lazySet(null);
+                removed++;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean contains_absent() {
+        return stack.contains(ABSENT);
+    }
+
+    @Benchmark
+    public int size() {
+        return stack.size();
+    }
+}
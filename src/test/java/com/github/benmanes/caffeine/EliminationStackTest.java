@@ -0,0 +1,504 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * Tests the {@link EliminationStack}, including the guava-testlib suites for its collection and
+ * queue contracts.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class EliminationStackTest {
+    static final int BATCH = 10;
+
+    @Test(dataProvider = "tests")
+    public void collection(String name, junit.framework.Test test) throws Throwable {
+        Testlib.run(test);
+    }
+
+    @DataProvider(name = "tests")
+    public Object[][] tests() {
+        return Testlib.asDataProvider(
+            Testlib.collectionSuite("EliminationStack", EliminationStack<String>::new, true),
+            Testlib.collectionSuite("EliminationStack[counted]",
+                () -> new EliminationStack.Builder<String>().countSize().build(), true),
+            Testlib.queueSuite("EliminationStack[asLifoQueue]",
+                () -> new EliminationStack<String>().asLifoQueue(), true));
+    }
+
+    @Test
+    public void pushAll() {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        stack.push(0);
+        stack.pushAll(Arrays.asList(1, 2, 3));
+        assertThat(stack).containsExactly(3, 2, 1, 0);
+    }
+
+    @Test
+    public void pushAll_empty() {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        stack.pushAll(Collections.emptyList());
+        assertThat(stack.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void pushAll_nullElement() {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        try {
+            stack.pushAll(Arrays.asList(1, null, 3));
+            fail();
+        } catch (NullPointerException expected) {}
+        assertThat(stack.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void popAll() {
+        EliminationStack<Integer> stack = new EliminationStack<>(Arrays.asList(1, 2, 3, 4));
+        stack.remove(2);
+        assertThat(stack.popAll()).containsExactly(4, 3, 1);
+        assertThat(stack.isEmpty()).isTrue();
+        assertThat(stack.popAll()).isEmpty();
+    }
+
+    @Test
+    public void drainTo() {
+        EliminationStack<Integer> stack = new EliminationStack<>(Arrays.asList(1, 2, 3, 4, 5));
+        stack.remove(4);
+
+        // the removed element is skipped rather than counted against the limit
+        List<Integer> drained = new ArrayList<>();
+        assertThat(stack.drainTo(drained, 2)).isEqualTo(2);
+        assertThat(drained).containsExactly(5, 3);
+        assertThat(stack).containsExactly(2, 1);
+
+        assertThat(stack.drainTo(drained, Integer.MAX_VALUE)).isEqualTo(2);
+        assertThat(drained).containsExactly(5, 3, 2, 1);
+        assertThat(stack.isEmpty()).isTrue();
+        assertThat(stack.drainTo(drained, 1)).isZero();
+    }
+
+    @Test
+    public void drainTo_nonPositive() {
+        EliminationStack<Integer> stack = new EliminationStack<>(Arrays.asList(1, 2));
+        List<Integer> drained = new ArrayList<>();
+        assertThat(stack.drainTo(drained, 0)).isZero();
+        assertThat(stack.drainTo(drained, -1)).isZero();
+        assertThat(drained).isEmpty();
+        assertThat(stack).containsExactly(2, 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void drainTo_self() {
+        EliminationStack<Integer> stack = new EliminationStack<>(Arrays.asList(1, 2));
+        stack.drainTo(stack, 1);
+    }
+
+    @Test
+    public void pushAll_spliced() throws InterruptedException {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 1_000; i++) {
+                stack.pushAll(batch(i));
+            }
+            done.set(true);
+        });
+        producer.start();
+
+        // a batch is linked by a single update of the top, so it is detached either whole or not
+        // at all, in the reverse of the order that it was pushed in
+        List<Integer> popped = new ArrayList<>();
+        for (boolean finished = false; !finished;) {
+            finished = done.get();
+            popped.addAll(stack.popAll());
+        }
+        producer.join();
+
+        assertThat(popped).hasSize(1_000 * BATCH);
+        for (int i = 0; i < popped.size(); i += BATCH) {
+            List<Integer> batch = batch(popped.get(i + BATCH - 1) / BATCH);
+            Collections.reverse(batch);
+            assertThat(popped.subList(i, i + BATCH)).isEqualTo(batch);
+        }
+    }
+
+    @Test
+    public void pushAll_contended() throws InterruptedException {
+        LongAdder pauses = new LongAdder();
+        EliminationStack<Integer> stack = new EliminationStack.Builder<Integer>()
+                .backoff(attempt -> {
+                    pauses.increment();
+                    return Backoff.spin().pause(attempt);
+                })
+                .recordStats()
+                .countSize()
+                .build();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int id = i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 250; j++) {
+                    stack.pushAll(batch(1_000 * id + j));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(stack.size()).isEqualTo(1_000 * BATCH);
+        assertThat(stack.popAll()).doesNotHaveDuplicates().hasSize(1_000 * BATCH);
+
+        // each failed splice is recorded and followed by a pause before the retry
+        assertThat(stack.stats().casFailures()).isEqualTo(pauses.sum());
+    }
+
+    @Test
+    public void size_counted() {
+        EliminationStack<Integer> stack = new EliminationStack.Builder<Integer>()
+                .countSize()
+                .build();
+        assertThat(stack.count).isNotNull();
+        assertThat(stack.size()).isZero();
+        assertThat(stack.isEmpty()).isTrue();
+
+        stack.pushAll(batch(0));
+        stack.push(-1);
+        assertThat(stack.size()).isEqualTo(BATCH + 1);
+        assertThat(stack.isEmpty()).isFalse();
+
+        stack.pop();
+        stack.remove(5);
+        assertThat(stack.remove(5)).isFalse();
+        assertThat(stack.size()).isEqualTo(BATCH - 1);
+
+        Iterator<Integer> iterator = stack.iterator();
+        iterator.next();
+        iterator.remove();
+        assertThat(stack.size()).isEqualTo(BATCH - 2);
+
+        assertThat(stack.drainTo(new ArrayList<>(), 3)).isEqualTo(3);
+        assertThat(stack.size()).isEqualTo(BATCH - 5);
+        assertThat(stack.popAll()).hasSize(BATCH - 5);
+        assertThat(stack.size()).isZero();
+        assertThat(stack.isEmpty()).isTrue();
+
+        stack.pushAll(batch(1));
+        stack.clear();
+        assertThat(stack.size()).isZero();
+    }
+
+    @Test
+    public void size_counted_concurrent() throws InterruptedException {
+        EliminationStack<Integer> stack = new EliminationStack.Builder<Integer>()
+                .countSize()
+                .build();
+        LongAdder popped = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    stack.push(j);
+                    if (((j & 1) == 0) && (stack.pop() != null)) {
+                        popped.increment();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // eliminated pairs never reach the stack, so the quiescent count is exact
+        int traversed = Iterators.size(stack.iterator());
+        assertThat(traversed).isEqualTo(4 * 10_000 - popped.intValue());
+        assertThat(stack.size()).isEqualTo(traversed);
+    }
+
+    @Test
+    public void offer_full() {
+        EliminationStack<Integer> stack = bounded(2);
+        assertThat(stack.offer(1)).isTrue();
+        assertThat(stack.remainingCapacity()).isEqualTo(1);
+        assertThat(stack.offer(2)).isTrue();
+        assertThat(stack.remainingCapacity()).isZero();
+
+        assertThat(stack.offer(3)).isFalse();
+        try {
+            stack.push(3);
+            fail();
+        } catch (IllegalStateException expected) {}
+        assertThat(stack).containsExactly(2, 1);
+
+        stack.pop();
+        assertThat(stack.offer(3)).isTrue();
+        assertThat(stack).containsExactly(3, 1);
+    }
+
+    @Test
+    public void pushAll_full() {
+        EliminationStack<Integer> stack = bounded(BATCH + 1);
+        stack.push(-1);
+        stack.pushAll(batch(0));
+        try {
+            stack.pushAll(Arrays.asList(BATCH));
+            fail();
+        } catch (IllegalStateException expected) {}
+        assertThat(stack.size()).isEqualTo(BATCH + 1);
+    }
+
+    @Test
+    public void offer_timed_full() throws InterruptedException {
+        EliminationStack<Integer> stack = bounded(1);
+        stack.push(1);
+
+        long start = System.nanoTime();
+        assertThat(stack.offer(2, 10, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(System.nanoTime() - start)
+                .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(stack).containsExactly(1);
+    }
+
+    @Test
+    public void offer_timed_space() throws Exception {
+        EliminationStack<Integer> stack = bounded(1);
+        stack.push(1);
+
+        // the producer waits until a consumer frees space for its element
+        CompletableFuture<Boolean> offered = CompletableFuture.supplyAsync(() -> {
+            try {
+                return stack.offer(2, 1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(10);
+        assertThat(offered.isDone()).isFalse();
+        assertThat(stack.pop()).isEqualTo(1);
+        assertThat(offered.get(1, TimeUnit.MINUTES)).isTrue();
+        assertThat(stack).containsExactly(2);
+    }
+
+    @Test(expectedExceptions = InterruptedException.class)
+    public void offer_timed_interrupted() throws InterruptedException {
+        EliminationStack<Integer> stack = bounded(1);
+        stack.push(1);
+        Thread.currentThread().interrupt();
+        stack.offer(2, 1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void pop_timed_timeout() throws InterruptedException {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        long start = System.nanoTime();
+        assertThat(stack.pop(10, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(System.nanoTime() - start)
+                .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(stack.pop(0, TimeUnit.NANOSECONDS)).isNull();
+        assertThat(stack.waiters).isNull();
+    }
+
+    @Test
+    public void pop_timed_parks() throws Exception {
+        // once its spins run out, the consumer parks rather than busy-waiting for the deadline
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                stack.pop(1, TimeUnit.MINUTES);
+            } catch (InterruptedException expected) {}
+        });
+        consumer.start();
+        await().until(() -> (consumer.getState() == Thread.State.TIMED_WAITING)
+                && (LockSupport.getBlocker(consumer) == stack));
+        consumer.interrupt();
+        consumer.join();
+    }
+
+    @Test
+    public void pop_timed_interrupted() throws Exception {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        CompletableFuture<Boolean> interrupted = CompletableFuture.supplyAsync(() -> {
+            thread.complete(Thread.currentThread());
+            try {
+                stack.pop(1, TimeUnit.MINUTES);
+                return false;
+            } catch (InterruptedException e) {
+                return true;
+            }
+        });
+        Thread consumer = thread.get();
+        await().until(() -> LockSupport.getBlocker(consumer) == stack);
+        consumer.interrupt();
+        assertThat(interrupted.get(1, TimeUnit.MINUTES)).isTrue();
+    }
+
+    @Test
+    public void pop_timed_handoff() throws Exception {
+        EliminationStack<Integer> stack = blocking(Long.MAX_VALUE);
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        CompletableFuture<Integer> popped = CompletableFuture.supplyAsync(() -> {
+            thread.complete(Thread.currentThread());
+            try {
+                return stack.pop(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        // the push unparks the waiting consumer, which retries and finds the element
+        Thread consumer = thread.get();
+        await().until(() -> LockSupport.getBlocker(consumer) == stack);
+        assertThat(stack.waiters.queue).hasSize(1);
+        stack.push(1);
+        assertThat(popped.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+        assertThat(stack.isEmpty()).isTrue();
+        assertThat(stack.waiters.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void pop_timed_unsignaled() throws Exception {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        CompletableFuture<Integer> popped = CompletableFuture.supplyAsync(() -> {
+            thread.complete(Thread.currentThread());
+            try {
+                return stack.pop(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        // without blocking pops the push does not signal, and the parked consumer retries shortly
+        Thread consumer = thread.get();
+        await().until(() -> LockSupport.getBlocker(consumer) == stack);
+        stack.push(1);
+        assertThat(popped.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+        assertThat(stack.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void pop_timed_full() throws Exception {
+        EliminationStack<Integer> stack = blocking(0);
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        CompletableFuture<Integer> popped = CompletableFuture.supplyAsync(() -> {
+            thread.complete(Thread.currentThread());
+            try {
+                return stack.pop(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        // a full stack hands the element directly to the parked consumer
+        Thread consumer = thread.get();
+        await().until(() -> LockSupport.getBlocker(consumer) == stack);
+        assertThat(stack.offer(1)).isTrue();
+        assertThat(popped.get(1, TimeUnit.MINUTES)).isEqualTo(1);
+        assertThat(stack.isEmpty()).isTrue();
+        assertThat(stack.waiters.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void pop_timed_pushAll() throws Exception {
+        EliminationStack<Integer> stack = blocking(Long.MAX_VALUE);
+        List<CompletableFuture<Integer>> popped = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            popped.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return stack.pop(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+
+        // each consumer is unparked for one of the elements
+        await().until(() -> stack.waiters.queue.size() == 2);
+        stack.pushAll(Arrays.asList(1, 2));
+        for (CompletableFuture<Integer> future : popped) {
+            assertThat(future.get(1, TimeUnit.MINUTES)).isIn(1, 2);
+        }
+        assertThat(stack.isEmpty()).isTrue();
+        assertThat(stack.waiters.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void bounded_concurrent() throws InterruptedException {
+        int maximum = 100;
+        EliminationStack<Integer> stack = bounded(maximum);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    stack.offer(j);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the bound may be exceeded only by the producers that raced past the check
+        assertThat(stack.size()).isBetween(maximum, maximum + threads.size());
+        assertThat(Iterators.size(stack.iterator())).isEqualTo(stack.size());
+    }
+
+    /** Returns a stack whose capacity is bounded by the maximum size. */
+    static EliminationStack<Integer> bounded(long maximumSize) {
+        return new EliminationStack.Builder<Integer>()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    static EliminationStack<Integer> blocking(long maximumSize) {
+        return new EliminationStack.Builder<Integer>()
+                .maximumSize(maximumSize)
+                .blockingPop()
+                .build();
+    }
+
+    /** Returns the elements of the batch, which are unique to the batch's index. */
+    static List<Integer> batch(int index) {
+        return IntStream.range(BATCH * index, BATCH * (index + 1))
+                .boxed()
+                .collect(Collectors.toList());
+    }
+}
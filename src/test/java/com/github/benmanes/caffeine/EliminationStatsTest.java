@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the contention and elimination statistics that are recorded by an
+ * {@link EliminationStatsRecorder} and reported by {@link EliminationStack#stats()}.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class EliminationStatsTest {
+
+    @Test
+    public void disabled() throws InterruptedException {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+        assertThat(stack.pop(1, TimeUnit.MILLISECONDS)).isNull();
+
+        EliminationStats stats = stack.stats();
+        assertThat(stats.attempts()).isZero();
+        assertThat(stats.casFailures()).isZero();
+        assertThat(stats.spins()).isZero();
+        assertThat(stats.eliminationRate()).isEqualTo(0.0);
+        assertThat(stats.arenaWidth()).isPositive();
+    }
+
+    @Test
+    public void recorder() {
+        EliminationStatsRecorder recorder = EliminationStatsRecorder.striped();
+        recorder.recordCasFailure();
+        recorder.recordCasFailure();
+        for (int i = 0; i < 4; i++) {
+            recorder.recordAttempt();
+        }
+        recorder.recordTransfer();
+        recorder.recordReceive();
+        recorder.recordSpins(10);
+        recorder.recordSpins(0);
+        recorder.recordCollision();
+
+        EliminationStats stats = recorder.snapshot(new EliminationArena<>());
+        assertThat(stats.casFailures()).isEqualTo(2);
+        assertThat(stats.attempts()).isEqualTo(4);
+        assertThat(stats.transfers()).isEqualTo(1);
+        assertThat(stats.receives()).isEqualTo(1);
+        assertThat(stats.spins()).isEqualTo(10);
+        assertThat(stats.collisions()).isEqualTo(1);
+
+        // an exchange completes two of the attempts but is a single elimination
+        assertThat(stats.eliminations()).isEqualTo(1);
+        assertThat(stats.eliminationRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void timedPop_unmatched() throws InterruptedException {
+        EliminationStack<Integer> stack = new EliminationStack.Builder<Integer>()
+                .recordStats()
+                .build();
+        assertThat(stack.pop(1, TimeUnit.MILLISECONDS)).isNull();
+
+        // the consumer waited in the arena without finding a producer, unless it is a uniprocessor
+        EliminationStats stats = stack.stats();
+        assertThat(stats.attempts()).isPositive();
+        if (EliminationArena.SPINS == 0) {
+            assertThat(stats.spins()).isZero();
+        } else {
+            assertThat(stats.spins()).isPositive();
+        }
+        assertThat(stats.eliminations()).isZero();
+        assertThat(stats.receives()).isZero();
+        assertThat(stats.casFailures()).isZero();
+    }
+
+    @Test
+    public void elimination() throws Exception {
+        // a stack that cannot hold an element completes every push by elimination
+        EliminationStack<Integer> stack = new EliminationStack.Builder<Integer>()
+                .maximumSize(0)
+                .recordStats()
+                .build();
+        assertThat(EliminationTesting.handOff(stack, 1)).isEqualTo(1);
+
+        EliminationStats stats = stack.stats();
+        assertThat(stats.transfers()).isEqualTo(1);
+        assertThat(stats.receives()).isEqualTo(1);
+        assertThat(stats.eliminations()).isEqualTo(1);
+        assertThat(stats.attempts()).isGreaterThanOrEqualTo(2);
+        assertThat(stats.eliminationRate()).isGreaterThan(0.0).isLessThanOrEqualTo(1.0);
+        assertThat(stack.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void casFailures() throws InterruptedException {
+        EliminationStack<Integer> stack = new EliminationStack.Builder<Integer>()
+                .recordStats()
+                .build();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    stack.push(j);
+                    stack.pop();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // every arena attempt of a push or untimed pop follows a failed update of the top
+        EliminationStats stats = stack.stats();
+        assertThat(stats.attempts()).isEqualTo(stats.casFailures());
+        assertThat(stats.transfers()).isEqualTo(stats.receives());
+        assertThat(stats.eliminationRate()).isLessThanOrEqualTo(1.0);
+    }
+}
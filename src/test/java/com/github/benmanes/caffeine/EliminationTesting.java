@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.SkipException;
+
+/**
+ * Utilities for testing that elements are handed off between threads through the
+ * {@link EliminationArena}.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+final class EliminationTesting {
+
+    /** The maximum time that a test waits for an exchange. */
+    static final long TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private EliminationTesting() {}
+
+    /**
+     * Skips the test if the arena does not wait for a partner, as on a uniprocessor, because then
+     * a producer and a consumer can never meet in it.
+     */
+    static void assumeElimination() {
+        if (EliminationArena.SPINS == 0) {
+            throw new SkipException("The arena does not wait for a partner on a uniprocessor");
+        }
+    }
+
+    /**
+     * Returns the deadline for an exchange that a test is waiting for.
+     *
+     * @return the deadline, as a value of {@link System#nanoTime()}
+     */
+    static long deadline() {
+        return System.nanoTime() + TIMEOUT_NANOS;
+    }
+
+    /**
+     * Fails the test if the deadline has passed.
+     *
+     * @param deadline the deadline returned by {@link #deadline()}
+     */
+    static void checkDeadline(long deadline) {
+        if (System.nanoTime() - deadline > 0L) {
+            fail("Timed out waiting for an exchange");
+        }
+    }
+
+    /**
+     * Hands the element from the current thread to a consumer that waits with a timed pop. The
+     * stack should not be able to hold the element, such as one with a maximum size of zero, so
+     * that the producer retries until the element is transferred through the arena. The test is
+     * skipped if the arena cannot perform an exchange, and fails if none occurs within a minute.
+     *
+     * @param stack the stack to exchange the element through
+     * @param e the element to hand off
+     * @return the element that the consumer popped
+     * @throws Exception if the consumer failed or timed out
+     */
+    static <E> E handOff(EliminationStack<E> stack, E e) throws Exception {
+        assumeElimination();
+        CompletableFuture<E> popped = CompletableFuture.supplyAsync(() -> {
+            try {
+                return stack.pop(TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        long deadline = deadline();
+        while (!stack.offer(e)) {
+            checkDeadline(deadline);
+            Thread.yield();
+        }
+        return popped.get(TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+    }
+}
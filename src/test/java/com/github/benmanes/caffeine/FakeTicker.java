@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A ticker whose time is advanced manually by the test, so that an entry's expiration can be
+ * observed without waiting for the time to pass.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@ThreadSafe
+final class FakeTicker implements Ticker {
+    final AtomicLong nanos = new AtomicLong();
+
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+
+    /**
+     * Advances the ticker by the duration.
+     *
+     * @param duration the length of time to advance by
+     * @param unit the unit that {@code duration} is expressed in
+     * @return this ticker
+     */
+    FakeTicker advance(long duration, TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(duration));
+        return this;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link FrequencySketch} that the cache's admission policy uses to estimate how often
+ * each key was accessed.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class FrequencySketchTest {
+    static final Integer ITEM = 0xDEADBEEF;
+
+    @Test
+    public void uninitialized() {
+        FrequencySketch<Integer> sketch = new FrequencySketch<>();
+        sketch.increment(ITEM);
+        assertThat(sketch.isNotInitialized()).isTrue();
+        assertThat(sketch.frequency(ITEM)).isZero();
+    }
+
+    @Test
+    public void increment_max() {
+        FrequencySketch<Integer> sketch = sketch(512);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(ITEM);
+        }
+        assertThat(sketch.frequency(ITEM)).isEqualTo(15);
+    }
+
+    @Test
+    public void increment_distinct() {
+        FrequencySketch<Integer> sketch = sketch(512);
+        sketch.increment(ITEM);
+        sketch.increment(ITEM + 1);
+        assertThat(sketch.frequency(ITEM)).isEqualTo(1);
+        assertThat(sketch.frequency(ITEM + 1)).isEqualTo(1);
+        assertThat(sketch.frequency(ITEM + 2)).isZero();
+    }
+
+    @Test
+    public void reset() {
+        FrequencySketch<Integer> sketch = sketch(64);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(ITEM);
+        }
+
+        // every counter is halved so that old popularity fades
+        sketch.reset();
+        assertThat(sketch.frequency(ITEM)).isEqualTo(5);
+        assertThat(sketch.size).isLessThanOrEqualTo(5);
+    }
+
+    @Test
+    public void reset_sampled() {
+        FrequencySketch<Integer> sketch = sketch(64);
+        boolean reset = false;
+        for (int i = 0; i < 20 * sketch.sampleSize; i++) {
+            int size = sketch.size;
+            sketch.increment(i);
+            assertThat(sketch.size).isLessThan(sketch.sampleSize);
+            reset |= (sketch.size < size);
+        }
+
+        // the counters are aged once the number of additions reaches the sample size
+        assertThat(reset).isTrue();
+    }
+
+    @Test
+    public void heavyHitters() {
+        FrequencySketch<Double> sketch = new FrequencySketch<>();
+        sketch.ensureCapacity(512);
+        for (int i = 100; i < 100_000; i++) {
+            sketch.increment((double) i);
+        }
+        for (int i = 0; i < 10; i += 2) {
+            for (int j = 0; j < i; j++) {
+                sketch.increment((double) i);
+            }
+        }
+
+        // a key that was accessed more often is estimated as at least as popular
+        int[] popularity = new int[10];
+        for (int i = 0; i < 10; i++) {
+            popularity[i] = sketch.frequency((double) i);
+        }
+        for (int i = 2; i < 10; i += 2) {
+            assertThat(popularity[i]).isGreaterThanOrEqualTo(popularity[i - 2]);
+        }
+        for (int i = 1; i < 10; i += 2) {
+            assertThat(popularity[i]).isLessThanOrEqualTo(popularity[8]);
+        }
+    }
+
+    static FrequencySketch<Integer> sketch(long maximumSize) {
+        FrequencySketch<Integer> sketch = new FrequencySketch<>();
+        sketch.ensureCapacity(maximumSize);
+        return sketch;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A concurrent throughput benchmark of reads and writes to the bounded caches. The keys are drawn
+ * from a skewed distribution so that a small set of hot entries is read far more frequently than
+ * the rest, which is the access pattern where a cache that locks on reads suffers the most
+ * contention. The <tt>readOnly</tt> group measures reads of a populated cache, the
+ * <tt>readWrite</tt> group mixes reads with updates 3:1, and the <tt>writeOnly</tt> group
+ * measures updates of the existing entries. The caches are sized to hold all of the keys, so
+ * that the benchmark measures the concurrency of the operations rather than the eviction policy.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Group)
+public class GetPutBenchmark {
+    static final int SIZE = (2 << 14);
+    static final int MASK = SIZE - 1;
+    static final int ITEMS = SIZE / 3;
+
+    @Param({"BoundedLocalCache", "ConcurrentLinkedHashMap", "Guava"})
+    CacheType cacheType;
+
+    Map<Integer, Boolean> cache;
+    Integer[] ints;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        static final Random random = new Random();
+        int index = random.nextInt();
+    }
+
+    @Setup
+    public void setup() {
+        ints = new Integer[SIZE];
+        cache = cacheType.create(2 * SIZE);
+
+        // Populate with a skewed distribution, where low keys are the most frequent
+        Random random = new Random(1L);
+        for (int i = 0; i < SIZE; i++) {
+            double skew = Math.pow(random.nextDouble(), 4.0);
+            ints[i] = (int) (skew * ITEMS);
+            cache.put(ints[i], Boolean.TRUE);
+        }
+    }
+
+    @Benchmark @Group("readOnly") @GroupThreads(8)
+    public Boolean readOnly(ThreadState threadState) {
+        return cache.get(ints[threadState.index++ & MASK]);
+    }
+
+    @Benchmark @Group("writeOnly") @GroupThreads(8)
+    public Boolean writeOnly(ThreadState threadState) {
+        return cache.put(ints[threadState.index++ & MASK], Boolean.FALSE);
+    }
+
+    @Benchmark @Group("readWrite") @GroupThreads(6)
+    public Boolean readwrite_get(ThreadState threadState) {
+        return cache.get(ints[threadState.index++ & MASK]);
+    }
+
+    @Benchmark @Group("readWrite") @GroupThreads(2)
+    public Boolean readwrite_put(ThreadState threadState) {
+        return cache.put(ints[threadState.index++ & MASK], Boolean.FALSE);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static com.github.benmanes.caffeine.MpscChunkedArrayQueue.CHUNK_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link MpscChunkedArrayQueue}.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class MpscChunkedArrayQueueTest {
+    static final int PRODUCERS = 4;
+
+    @Test
+    public void empty() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>();
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.size()).isZero();
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.drain(e -> fail(), Integer.MAX_VALUE)).isZero();
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void offer_null() {
+        new MpscChunkedArrayQueue<Integer>().offer(null);
+    }
+
+    @Test
+    public void poll_acrossChunks() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>();
+        int elements = 3 * CHUNK_SIZE + 1;
+        for (int i = 0; i < elements; i++) {
+            assertThat(queue.offer(i)).isTrue();
+        }
+        assertThat(queue.size()).isEqualTo(elements);
+
+        for (int i = 0; i < elements; i++) {
+            assertThat(queue.poll()).isEqualTo(i);
+        }
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void poll_interleaved() {
+        // the consumer keeps pace with the producer as the positions cross each chunk boundary
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>();
+        for (int i = 0; i < 3 * CHUNK_SIZE; i++) {
+            queue.offer(i);
+            assertThat(queue.poll()).isEqualTo(i);
+            assertThat(queue.poll()).isNull();
+        }
+        assertThat(queue.consumerChunk.base).isEqualTo(2 * CHUNK_SIZE);
+    }
+
+    @Test
+    public void drain_limit() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>();
+        for (int i = 0; i < 2 * CHUNK_SIZE + 10; i++) {
+            queue.offer(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(queue.drain(drained::add, CHUNK_SIZE + 5)).isEqualTo(CHUNK_SIZE + 5);
+        assertThat(queue.size()).isEqualTo(CHUNK_SIZE + 5);
+        assertThat(queue.poll()).isEqualTo(CHUNK_SIZE + 5);
+
+        assertThat(queue.drain(drained::add, 0)).isZero();
+        assertThat(queue.drain(drained::add, Integer.MAX_VALUE)).isEqualTo(CHUNK_SIZE + 4);
+        assertThat(queue.isEmpty()).isTrue();
+
+        drained.add(CHUNK_SIZE + 5, CHUNK_SIZE + 5);
+        for (int i = 0; i < drained.size(); i++) {
+            assertThat(drained.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void drain_failure() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>();
+        for (int i = 0; i < 3; i++) {
+            queue.offer(i);
+        }
+
+        // the element that the action failed on is removed, and the rest are retained
+        try {
+            queue.drain(e -> {
+                if (e == 1) {
+                    throw new IllegalStateException();
+                }
+            }, Integer.MAX_VALUE);
+            fail();
+        } catch (IllegalStateException expected) {}
+        assertThat(queue.size()).isEqualTo(1);
+        assertThat(queue.poll()).isEqualTo(2);
+    }
+
+    @Test
+    public void producers() throws InterruptedException {
+        MpscChunkedArrayQueue<int[]> queue = new MpscChunkedArrayQueue<>();
+        int elements = 10 * CHUNK_SIZE;
+        Thread[] threads = new Thread[PRODUCERS];
+        for (int i = 0; i < threads.length; i++) {
+            int producer = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < elements; j++) {
+                    queue.offer(new int[] { producer, j });
+                }
+            });
+            threads[i].start();
+        }
+
+        // each producer's elements are consumed in the order that it inserted them
+        int[] expected = new int[PRODUCERS];
+        int[] consumed = new int[1];
+        while (consumed[0] < PRODUCERS * elements) {
+            int drained = queue.drain(e -> {
+                assertThat(e[1]).as("producer %d", e[0]).isEqualTo(expected[e[0]]);
+                expected[e[0]]++;
+                consumed[0]++;
+            }, 100);
+            if (drained == 0) {
+                Thread.yield();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.poll()).isNull();
+    }
+}
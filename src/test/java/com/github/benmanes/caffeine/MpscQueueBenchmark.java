@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A multiple-producer / single-consumer benchmark comparing the {@link MpscChunkedArrayQueue}
+ * against a {@link ConcurrentLinkedQueue} and an {@link EliminationStack}.
+ * <p>
+ * Each group runs three producers that insert elements and a single consumer that removes them
+ * in batches, which models an event pipeline whose consumer applies the events under a lock. The
+ * queue and stack are drained by polling until the batch is full or they are empty. Running with
+ * <tt>-prof gc</tt> reports the allocation rate per operation, which for the chunked queue should
+ * be a small fraction of the node allocation by the linked queue and stack.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MpscQueueBenchmark {
+    static final int DRAIN_LIMIT = 64;
+    static final Integer ELEMENT = 1;
+
+    @Param({"MpscChunkedArrayQueue", "ConcurrentLinkedQueue", "EliminationStack"})
+    QueueType queueType;
+
+    SimpleQueue<Integer> queue;
+    Consumer<Integer> sink;
+
+    @Setup
+    public void setup() {
+        queue = queueType.create();
+        sink = e -> {};
+    }
+
+    @Benchmark @Group("mpsc") @GroupThreads(3)
+    public void mpsc_offer() {
+        queue.offer(ELEMENT);
+    }
+
+    @Benchmark @Group("mpsc") @GroupThreads(1)
+    public int mpsc_drain() {
+        return queue.drain(sink, DRAIN_LIMIT);
+    }
+
+    /** Runs the suite with the number of groups doubling up to the number of available cpus. */
+    public static void main(String[] args) throws RunnerException {
+        int maxGroups = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        for (int groups = 1; groups <= maxGroups; groups <<= 1) {
+            Options options = new OptionsBuilder()
+                .include(MpscQueueBenchmark.class.getSimpleName())
+                .threadGroups(groups)
+                .build();
+            new Runner(options).run();
+        }
+    }
+
+    /** The queue implementations under test. */
+    public enum QueueType {
+        MpscChunkedArrayQueue {
+            @Override <E> SimpleQueue<E> create() {
+                MpscChunkedArrayQueue<E> queue = new MpscChunkedArrayQueue<>();
+                return new SimpleQueue<E>() {
+                    @Override public void offer(E e) {
+                        queue.offer(e);
+                    }
+                    @Override public int drain(Consumer<E> consumer, int limit) {
+                        return queue.drain(consumer, limit);
+                    }
+                };
+            }
+        },
+        ConcurrentLinkedQueue {
+            @Override <E> SimpleQueue<E> create() {
+                Queue<E> queue = new ConcurrentLinkedQueue<>();
+                return new SimpleQueue<E>() {
+                    @Override public void offer(E e) {
+                        queue.offer(e);
+                    }
+                    @Override public int drain(Consumer<E> consumer, int limit) {
+                        for (int i = 0; i < limit; i++) {
+                            E e = queue.poll();
+                            if (e == null) {
+                                return i;
+                            }
+                            consumer.accept(e);
+                        }
+                        return limit;
+                    }
+                };
+            }
+        },
+        EliminationStack {
+            @Override <E> SimpleQueue<E> create() {
+                EliminationStack<E> stack = new EliminationStack<>();
+                return new SimpleQueue<E>() {
+                    @Override public void offer(E e) {
+                        stack.push(e);
+                    }
+                    @Override public int drain(Consumer<E> consumer, int limit) {
+                        for (int i = 0; i < limit; i++) {
+                            E e = stack.pop();
+                            if (e == null) {
+                                return i;
+                            }
+                            consumer.accept(e);
+                        }
+                        return limit;
+                    }
+                };
+            }
+        };
+
+        abstract <E> SimpleQueue<E> create();
+    }
+
+    /** The minimal operations of an event pipeline exercised by the benchmark. */
+    interface SimpleQueue<E> {
+        void offer(E e);
+        int drain(Consumer<E> consumer, int limit);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the {@link PooledEliminationStack}, including the guava-testlib suite for its collection
+ * contract.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class PooledEliminationStackTest {
+    static final int THREADS = 4;
+    static final int ELEMENTS = 10_000;
+    static final Integer ELEMENT = 1;
+
+    @Test(dataProvider = "tests")
+    public void collection(String name, junit.framework.Test test) throws Throwable {
+        Testlib.run(test);
+    }
+
+    @DataProvider(name = "tests")
+    public Object[][] tests() {
+        return Testlib.asDataProvider(Testlib.collectionSuite(
+            "PooledEliminationStack", PooledEliminationStack<String>::new, true));
+    }
+
+    @Test
+    public void recycle() {
+        PooledEliminationStack<Integer> stack = new PooledEliminationStack<>();
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 10; i++) {
+                stack.push(i);
+            }
+            for (int i = 9; i >= 0; i--) {
+                assertThat(stack.pop()).isEqualTo(i);
+            }
+        }
+
+        // the popped nodes are reused, so the table holds only as many as were live at once
+        assertThat(stack.pop()).isNull();
+        assertThat(stack.allocated).isEqualTo(10);
+    }
+
+    @Test
+    public void recycle_clear() {
+        PooledEliminationStack<Integer> stack = new PooledEliminationStack<>();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10; i++) {
+                stack.push(i);
+            }
+            stack.clear();
+            assertThat(stack.isEmpty()).isTrue();
+        }
+        assertThat(stack.allocated).isEqualTo(10);
+    }
+
+    @Test
+    public void pushAndPop_concurrent() throws InterruptedException {
+        PooledEliminationStack<Integer> stack = new PooledEliminationStack<>();
+        ConcurrentHashMap<Integer, Boolean> popped = new ConcurrentHashMap<>();
+        LongAdder duplicates = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int id = i;
+            threads.add(new Thread(() -> {
+                // a recycled node that is linked twice would lose or repeat an element
+                for (int j = 0; j < ELEMENTS; j++) {
+                    stack.push(ELEMENTS * id + j);
+                    Integer e = stack.pop();
+                    if ((e != null) && (popped.put(e, Boolean.TRUE) != null)) {
+                        duplicates.increment();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Integer e; (e = stack.pop()) != null;) {
+            if (popped.put(e, Boolean.TRUE) != null) {
+                duplicates.increment();
+            }
+        }
+        assertThat(duplicates.sum()).isZero();
+        assertThat(popped).hasSize(THREADS * ELEMENTS);
+    }
+
+    @Test
+    public void remove_concurrent() throws InterruptedException {
+        PooledEliminationStack<Integer> stack = new PooledEliminationStack<>();
+        LongAdder taken = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            boolean remover = (i % 2) == 0;
+            threads.add(new Thread(() -> {
+                // equal elements let a removal reach a recycled node whose push is in flight
+                for (int j = 0; j < ELEMENTS; j++) {
+                    stack.push(ELEMENT);
+                    if (remover ? stack.remove(ELEMENT) : (stack.pop() != null)) {
+                        taken.increment();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        while (stack.pop() != null) {
+            taken.increment();
+        }
+
+        // an element that is both removed and transferred to a pop would be taken twice
+        assertThat(taken.sum()).isEqualTo(THREADS * ELEMENTS);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A benchmark of the cost of reading the current thread's probe, the per-thread hash code that
+ * selects a stripe of the {@link StripedBuffer}, a start slot in the {@link EliminationArena} and
+ * a free list of the {@link PooledEliminationStack}. The probe is kept in a {@link ThreadLocal},
+ * so that a pooled push and pop each pay for a lookup when acquiring and releasing a node.
+ * <p>
+ * The <tt>threadLocal</tt> benchmark reads the probe as the stacks do and <tt>advance</tt>
+ * rehashes it as a thread does after failing to eliminate. The <tt>cached</tt> benchmark steps a
+ * probe held by the caller, as a timed pop does between its attempts, which is the lower bound
+ * that a lookup is measured against.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProbeBenchmark {
+    int probe = StripedBuffer.getProbe();
+
+    @Benchmark
+    public int threadLocal() {
+        return StripedBuffer.getProbe();
+    }
+
+    @Benchmark
+    public int advance() {
+        return StripedBuffer.advanceProbe(StripedBuffer.getProbe());
+    }
+
+    @Benchmark
+    public int cached() {
+        return (probe = StripedBuffer.xorshift(probe));
+    }
+}
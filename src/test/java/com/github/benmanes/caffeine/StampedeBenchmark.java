@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A benchmark of the calls to the data source when many threads request a key that is absent
+ * from the cache. Each key is requested by {@link #REQUESTS_PER_KEY} consecutive operations,
+ * which are spread across the threads so that the requests for a new key arrive while it is
+ * being loaded. The load simulates a slow data source by consuming cpu.
+ * <p>
+ * The {@link AsyncLoadingCache} coalesces the concurrent requests for a key into a single load,
+ * whereas a map that is populated by checking for the key and then loading it calls the data
+ * source once for every request that misses. The number of loads per key is printed at the end
+ * of each iteration, which should be exactly one for the loading cache.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Benchmark)
+@Threads(256)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StampedeBenchmark {
+    static final int REQUESTS_PER_KEY = 256;
+    static final int MAXIMUM_SIZE = 1 << 16;
+    static final long LOAD_TOKENS = 10_000;
+
+    @Param({"AsyncLoadingCache", "ConcurrentHashMap"})
+    LoaderType loaderType;
+
+    AtomicLong requests;
+    LongAdder loads;
+    Loader loader;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        requests = new AtomicLong();
+        loads = new LongAdder();
+        loader = loaderType.create(key -> {
+            loads.increment();
+            Blackhole.consumeCPU(LOAD_TOKENS);
+            return key;
+        });
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        long keys = (requests.get() + REQUESTS_PER_KEY - 1) / REQUESTS_PER_KEY;
+        System.out.printf("%n%s: %,d loads for %,d keys (%.2f per key)%n",
+                loaderType, loads.sum(), keys, (double) loads.sum() / Math.max(1, keys));
+    }
+
+    @Benchmark
+    public Long get() throws Exception {
+        long key = requests.getAndIncrement() / REQUESTS_PER_KEY;
+        return loader.get(key);
+    }
+
+    /** The loading strategies under test. */
+    public enum LoaderType {
+        AsyncLoadingCache {
+            @Override Loader create(CacheLoader<Long, Long> cacheLoader) {
+                AsyncLoadingCache<Long, Long> cache = new BoundedLocalCache.Builder<Long, Long>()
+                        .maximumSize(MAXIMUM_SIZE)
+                        .executor(ForkJoinPool.commonPool())
+                        .buildAsync(cacheLoader);
+                return key -> cache.get(key).join();
+            }
+        },
+        ConcurrentHashMap {
+            @Override Loader create(CacheLoader<Long, Long> cacheLoader) {
+                Map<Long, Long> map = new ConcurrentHashMap<>();
+                return key -> {
+                    Long value = map.get(key);
+                    if (value == null) {
+                        value = cacheLoader.load(key);
+                        map.put(key, value);
+                    }
+                    return value;
+                };
+            }
+        };
+
+        abstract Loader create(CacheLoader<Long, Long> cacheLoader);
+    }
+
+    /** Retrieves the value of a key, loading it if absent. */
+    interface Loader {
+        Long get(Long key) throws Exception;
+    }
+}
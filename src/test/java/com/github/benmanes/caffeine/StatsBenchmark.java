@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A concurrent throughput benchmark of the cost of recording the statistics on reads. The
+ * <tt>uninstrumented</tt> group reads a map without recording anything, while the
+ * <tt>instrumented</tt> group performs the same reads and records each one as a hit or a miss with
+ * the {@link StatsCounter}. When the counter is disabled the recording should be eliminated by the
+ * compiler, so the two groups should have the same throughput, whereas the striped counter shows
+ * the price of the bookkeeping. The <tt>cache</tt> group measures the reads of a
+ * {@link BoundedLocalCache} that is built with and without the statistics enabled. Roughly half of
+ * the keys are absent, so that both the hit and miss paths are exercised.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Group)
+public class StatsBenchmark {
+    static final int SIZE = (2 << 14);
+    static final int MASK = SIZE - 1;
+
+    @Param({"Disabled", "Striped"})
+    String statsCounterType;
+
+    Map<Integer, Boolean> map;
+    BoundedLocalCache<Integer, Boolean> cache;
+    StatsCounter statsCounter;
+    Integer[] ints;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        static final Random random = new Random();
+        int index = random.nextInt();
+    }
+
+    @Setup
+    public void setup() {
+        boolean recordStats = statsCounterType.equals("Striped");
+        statsCounter = recordStats ? StatsCounter.striped() : StatsCounter.disabled();
+        BoundedLocalCache.Builder<Integer, Boolean> builder =
+                new BoundedLocalCache.Builder<Integer, Boolean>().maximumSize(2 * SIZE);
+        if (recordStats) {
+            builder.recordStats();
+        }
+        cache = builder.build();
+        map = new ConcurrentHashMap<>(2 * SIZE);
+
+        ints = new Integer[SIZE];
+        Random random = new Random(1L);
+        for (int i = 0; i < SIZE; i++) {
+            ints[i] = random.nextInt(2 * SIZE);
+            if ((i & 1) == 0) {
+                map.put(ints[i], Boolean.TRUE);
+                cache.put(ints[i], Boolean.TRUE);
+            }
+        }
+    }
+
+    @Benchmark @Group("uninstrumented") @GroupThreads(8)
+    public Boolean uninstrumented(ThreadState threadState) {
+        return map.get(ints[threadState.index++ & MASK]);
+    }
+
+    @Benchmark @Group("instrumented") @GroupThreads(8)
+    public Boolean instrumented(ThreadState threadState) {
+        Boolean value = map.get(ints[threadState.index++ & MASK]);
+        if (value == null) {
+            statsCounter.recordMisses(1);
+        } else {
+            statsCounter.recordHits(1);
+        }
+        return value;
+    }
+
+    @Benchmark @Group("cache") @GroupThreads(8)
+    public Boolean cache(ThreadState threadState) {
+        return cache.get(ints[threadState.index++ & MASK]);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestFailure;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.testing.CollectionTestSuiteBuilder;
+import com.google.common.collect.testing.QueueTestSuiteBuilder;
+import com.google.common.collect.testing.TestStringCollectionGenerator;
+import com.google.common.collect.testing.TestStringQueueGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+
+/**
+ * Adapts the JUnit suites generated by guava-testlib so that TestNG runs each of their test cases
+ * as an invocation of a data-driven test, and creates the suites for the collections.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+final class Testlib {
+
+    private Testlib() {}
+
+    /**
+     * Returns the test cases of the suites as the rows of a data provider, where each row holds
+     * the case's name and the case. The name of a tester's case includes the suite and the
+     * features that it was generated for.
+     *
+     * @param suites the suites generated by guava-testlib
+     * @return the rows of <tt>{name, test}</tt>
+     */
+    static Object[][] asDataProvider(TestSuite... suites) {
+        List<Object[]> rows = new ArrayList<>();
+        for (TestSuite suite : suites) {
+            flatten(suite, rows);
+        }
+        return rows.toArray(new Object[rows.size()][]);
+    }
+
+    /** Adds the test cases of the suite and its nested suites to the rows. */
+    static void flatten(TestSuite suite, List<Object[]> rows) {
+        for (Test test : Collections.list(suite.tests())) {
+            if (test instanceof TestSuite) {
+                flatten((TestSuite) test, rows);
+            } else {
+                String name = (test instanceof TestCase)
+                        ? test.getClass().getSimpleName() + "." + ((TestCase) test).getName()
+                        : test.toString();
+                rows.add(new Object[] { name, test });
+            }
+        }
+    }
+
+    /**
+     * Runs the test case and rethrows its first failure or error.
+     *
+     * @param test the test case to run
+     * @throws Throwable the failure or error of the test case
+     */
+    static void run(Test test) throws Throwable {
+        TestResult result = new TestResult();
+        test.run(result);
+        for (TestFailure failure : Collections.list(result.errors())) {
+            throw failure.thrownException();
+        }
+        for (TestFailure failure : Collections.list(result.failures())) {
+            throw failure.thrownException();
+        }
+    }
+
+    /**
+     * Returns the suite for the {@link Collection} contract of the collections created by the
+     * supplier. A stack's elements are traversed from its top, so the order that the suite expects
+     * is the reverse of the order that the elements were added in.
+     *
+     * @param name the name of the suite
+     * @param supplier creates an empty collection
+     * @param lifo whether the collection traverses its elements in last-in-first-out order
+     * @return the suite of test cases
+     */
+    static TestSuite collectionSuite(String name,
+            Supplier<? extends Collection<String>> supplier, boolean lifo) {
+        return CollectionTestSuiteBuilder
+            .using(new TestStringCollectionGenerator() {
+                @Override public Collection<String> create(String[] elements) {
+                    Collection<String> collection = supplier.get();
+                    collection.addAll(Arrays.asList(elements));
+                    return collection;
+                }
+                @Override public List<String> order(List<String> insertionOrder) {
+                    return lifo ? Lists.reverse(insertionOrder) : insertionOrder;
+                }
+            })
+            .named(name)
+            .withFeatures(
+                CollectionFeature.GENERAL_PURPOSE,
+                CollectionFeature.KNOWN_ORDER,
+                CollectionFeature.SERIALIZABLE,
+                CollectionSize.ANY)
+            .createTestSuite();
+    }
+
+    /**
+     * Returns the suite for the {@link Queue} contract of the queues created by the supplier. The
+     * queue testers of this version of guava-testlib assume that the head is the first element
+     * added, so a last-in-first-out queue is tested without a known order.
+     *
+     * @param name the name of the suite
+     * @param supplier creates an empty queue
+     * @param lifo whether the queue orders its elements last-in-first-out
+     * @return the suite of test cases
+     */
+    static TestSuite queueSuite(String name,
+            Supplier<? extends Queue<String>> supplier, boolean lifo) {
+        return QueueTestSuiteBuilder
+            .using(new TestStringQueueGenerator() {
+                @Override public Queue<String> create(String[] elements) {
+                    Queue<String> queue = supplier.get();
+                    queue.addAll(Arrays.asList(elements));
+                    return queue;
+                }
+            })
+            .named(name)
+            .withFeatures(
+                CollectionFeature.GENERAL_PURPOSE,
+                lifo ? CollectionFeature.NONE : CollectionFeature.KNOWN_ORDER,
+                CollectionSize.ANY)
+            .createTestSuite();
+    }
+}
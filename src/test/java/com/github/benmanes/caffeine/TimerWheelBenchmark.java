@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.benmanes.caffeine.BoundedLocalCache.Node;
+import com.github.benmanes.caffeine.BoundedLocalCache.WeightedValue;
+
+/**
+ * A benchmark of scheduling per-entry expiration times with the {@link TimerWheel} compared to a
+ * {@link PriorityQueue}. The timers are given random durations of up to a day and each operation
+ * reschedules a timer with a new duration, moves the clock forward, and expires the timers that
+ * are due. An expired timer is scheduled again so that the number of timers remains constant.
+ * <p>
+ * A priority queue cannot remove an arbitrary element efficiently, as {@link PriorityQueue#remove}
+ * and {@link java.util.concurrent.DelayQueue#remove} are linear scans. The baseline therefore
+ * uses lazy deletion, where a rescheduled timer is added again and its stale entry is discarded
+ * when it reaches the head of the queue. The default population of ten million timers requires a
+ * large heap.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(jvmArgsAppend = "-Xmx6g")
+public class TimerWheelBenchmark {
+    static final long MAXIMUM_DURATION = TimeUnit.DAYS.toNanos(1);
+    static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+    static final int DURATIONS = 1 << 16;
+    static final int DURATIONS_MASK = DURATIONS - 1;
+
+    @Param({"10000000"})
+    int size;
+
+    @Param({"TimerWheel", "PriorityQueue"})
+    SchedulerType schedulerType;
+
+    Scheduler scheduler;
+    long[] durations;
+    long nanos;
+    int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1L);
+        durations = new long[DURATIONS];
+        for (int i = 0; i < DURATIONS; i++) {
+            durations[i] = 1L + (long) (random.nextDouble() * MAXIMUM_DURATION);
+        }
+        scheduler = schedulerType.create(this);
+        for (int i = 0; i < size; i++) {
+            scheduler.schedule(i, nextDuration());
+        }
+    }
+
+    @Benchmark
+    public void reschedule() {
+        scheduler.reschedule(index, nextDuration());
+        if (++index == size) {
+            index = 0;
+        }
+        nanos += TICK;
+        scheduler.advance(nanos);
+    }
+
+    /** Returns the next random duration. */
+    long nextDuration() {
+        return durations[(int) (nanos + index) & DURATIONS_MASK];
+    }
+
+    /** The schedulers under test. */
+    public enum SchedulerType {
+        TimerWheel {
+            @Override Scheduler create(TimerWheelBenchmark benchmark) {
+                return new WheelScheduler(benchmark);
+            }
+        },
+        PriorityQueue {
+            @Override Scheduler create(TimerWheelBenchmark benchmark) {
+                PriorityQueue<Timer> queue = new PriorityQueue<>(benchmark.size);
+                Timer[] timers = new Timer[benchmark.size];
+                return new Scheduler() {
+                    @Override public void schedule(int id, long duration) {
+                        timers[id] = new Timer(benchmark.nanos + duration);
+                        queue.add(timers[id]);
+                    }
+                    @Override public void reschedule(int id, long duration) {
+                        Timer timer = new Timer(benchmark.nanos + duration);
+                        timers[id].cancelled = true;
+                        timers[id] = timer;
+                        queue.add(timer);
+                    }
+                    @Override public void advance(long nanos) {
+                        for (;;) {
+                            Timer timer = queue.peek();
+                            if ((timer == null) || (timer.time - nanos > 0)) {
+                                return;
+                            }
+                            queue.poll();
+                            if (!timer.cancelled) {
+                                timer.time = nanos + benchmark.nextDuration();
+                                queue.add(timer);
+                            }
+                        }
+                    }
+                };
+            }
+        };
+
+        abstract Scheduler create(TimerWheelBenchmark benchmark);
+    }
+
+    /** The operations of a timer scheduler exercised by the benchmark. */
+    interface Scheduler {
+        void schedule(int id, long duration);
+        void reschedule(int id, long duration);
+        void advance(long nanos);
+    }
+
+    /** A scheduler that reschedules the expired nodes back onto the timer wheel. */
+    static final class WheelScheduler implements Scheduler, Consumer<Node<Integer, Boolean>> {
+        final TimerWheelBenchmark benchmark;
+        final TimerWheel<Integer, Boolean> timerWheel;
+        final Node<Integer, Boolean>[] nodes;
+        final WeightedValue<Boolean> value;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        WheelScheduler(TimerWheelBenchmark benchmark) {
+            this.benchmark = benchmark;
+            this.nodes = new Node[benchmark.size];
+            this.value = new WeightedValue<>(Boolean.TRUE, 1);
+            this.timerWheel = new TimerWheel<>(this, benchmark.nanos);
+        }
+
+        @Override
+        public void schedule(int id, long duration) {
+            nodes[id] = new Node<>(id, value, benchmark.nanos);
+            nodes[id].setVariableTime(benchmark.nanos + duration);
+            timerWheel.schedule(nodes[id]);
+        }
+
+        @Override
+        public void reschedule(int id, long duration) {
+            nodes[id].setVariableTime(benchmark.nanos + duration);
+            timerWheel.reschedule(nodes[id]);
+        }
+
+        @Override
+        public void advance(long nanos) {
+            timerWheel.advance(nanos);
+        }
+
+        @Override
+        public void accept(Node<Integer, Boolean> node) {
+            node.setVariableTime(benchmark.nanos + benchmark.nextDuration());
+            timerWheel.schedule(node);
+        }
+    }
+
+    /** A timer event in the priority queue, which is skipped when cancelled. */
+    static final class Timer implements Comparable<Timer> {
+        long time;
+        boolean cancelled;
+
+        Timer(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(Timer timer) {
+            return Long.compare(time - timer.time, 0L);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.BoundedLocalCache.Node;
+import com.github.benmanes.caffeine.BoundedLocalCache.WeightedValue;
+
+/**
+ * Tests the {@link TimerWheel} that schedules the entries of a cache with variable expiration.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class TimerWheelTest {
+    List<Integer> expired;
+    TimerWheel<Integer, Integer> timerWheel;
+
+    @BeforeMethod
+    public void setUp() {
+        expired = new ArrayList<>();
+        timerWheel = new TimerWheel<>(node -> expired.add(node.key), 0L);
+    }
+
+    @Test(dataProvider = "durations")
+    public void advance(long duration) {
+        timerWheel.schedule(node(1, duration));
+
+        timerWheel.advance(duration - 1);
+        assertThat(expired).isEmpty();
+
+        // the entry expires once the wheel has moved past its bucket, cascading through the
+        // coarser wheels as the time approaches
+        timerWheel.advance(duration + TimerWheel.SPANS[0]);
+        assertThat(expired).containsExactly(1);
+    }
+
+    @DataProvider(name = "durations")
+    public Object[][] durations() {
+        return new Object[][] {
+            { TimeUnit.MILLISECONDS.toNanos(100) },
+            { TimeUnit.SECONDS.toNanos(30) },
+            { TimeUnit.MINUTES.toNanos(90) },
+            { TimeUnit.HOURS.toNanos(30) },
+            { TimeUnit.DAYS.toNanos(5) },
+            { TimeUnit.DAYS.toNanos(30) },
+        };
+    }
+
+    @Test
+    public void advance_batch() {
+        for (int i = 1; i <= 100; i++) {
+            timerWheel.schedule(node(i, TimeUnit.SECONDS.toNanos(i)));
+        }
+        long time = TimeUnit.SECONDS.toNanos(50) + TimerWheel.SPANS[0];
+        timerWheel.advance(time);
+
+        // every entry that is past due is expired, and none are evicted before their deadline
+        assertThat(expired).doesNotHaveDuplicates();
+        for (int i = 1; i <= 50; i++) {
+            assertThat(expired).contains(i);
+        }
+        for (int key : expired) {
+            assertThat(TimeUnit.SECONDS.toNanos(key)).isLessThanOrEqualTo(time);
+        }
+
+        timerWheel.advance(TimeUnit.SECONDS.toNanos(200));
+        assertThat(expired).hasSize(100).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void reschedule() {
+        Node<Integer, Integer> node = node(1, TimeUnit.SECONDS.toNanos(10));
+        timerWheel.schedule(node);
+
+        node.setVariableTime(TimeUnit.MINUTES.toNanos(10));
+        timerWheel.reschedule(node);
+        timerWheel.advance(TimeUnit.MINUTES.toNanos(5));
+        assertThat(expired).isEmpty();
+
+        timerWheel.advance(TimeUnit.MINUTES.toNanos(12));
+        assertThat(expired).containsExactly(1);
+    }
+
+    @Test
+    public void reschedule_unscheduled() {
+        Node<Integer, Integer> node = node(1, TimeUnit.SECONDS.toNanos(10));
+        timerWheel.reschedule(node);
+        assertThat(node.getNextInVariableOrder()).isNull();
+
+        timerWheel.advance(TimeUnit.MINUTES.toNanos(1));
+        assertThat(expired).isEmpty();
+    }
+
+    @Test
+    public void deschedule() {
+        Node<Integer, Integer> node = node(1, TimeUnit.SECONDS.toNanos(10));
+        timerWheel.schedule(node);
+        timerWheel.deschedule(node);
+        assertThat(node.getNextInVariableOrder()).isNull();
+        assertThat(node.getPreviousInVariableOrder()).isNull();
+
+        timerWheel.advance(TimeUnit.MINUTES.toNanos(1));
+        assertThat(expired).isEmpty();
+    }
+
+    @Test
+    public void advance_extended() {
+        // an entry whose deadline was extended without a reschedule is moved when its bucket
+        // expires, rather than being evicted early
+        Node<Integer, Integer> node = node(1, TimeUnit.SECONDS.toNanos(10));
+        timerWheel.schedule(node);
+        node.setVariableTime(TimeUnit.HOURS.toNanos(1));
+
+        timerWheel.advance(TimeUnit.MINUTES.toNanos(1));
+        assertThat(expired).isEmpty();
+        assertThat(node.getNextInVariableOrder()).isNotNull();
+
+        timerWheel.advance(TimeUnit.HOURS.toNanos(2));
+        assertThat(expired).containsExactly(1);
+    }
+
+    @Test
+    public void advance_failure() {
+        List<Integer> evicted = new ArrayList<>();
+        TimerWheel<Integer, Integer> timerWheel = new TimerWheel<>(node -> {
+            if (evicted.isEmpty()) {
+                evicted.add(node.key);
+                throw new IllegalStateException();
+            }
+            evicted.add(node.key);
+        }, 0L);
+        for (int i = 1; i <= 3; i++) {
+            timerWheel.schedule(node(i, TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        // the entries that were not evicted remain scheduled, and the clock is not advanced
+        try {
+            timerWheel.advance(TimeUnit.MINUTES.toNanos(1));
+        } catch (IllegalStateException expected) {}
+        assertThat(timerWheel.nanos).isZero();
+
+        timerWheel.advance(TimeUnit.MINUTES.toNanos(1));
+        assertThat(evicted).hasSize(4).containsOnly(1, 2, 3);
+    }
+
+    /** Returns an entry that expires at the given time. */
+    static Node<Integer, Integer> node(int key, long time) {
+        Node<Integer, Integer> node = new Node<>(key, new WeightedValue<>(key, 1), 0L);
+        node.setVariableTime(time);
+        return node;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.WaiterQueue.Waiter;
+
+/**
+ * Tests how the {@link WaiterQueue} hands off elements, signals and cancels its waiters, and
+ * unlinks the cancelled waiters in batches.
+ *
+ * @author Ben Manes (ben.manes@gmail.com)
+ */
+public final class WaiterQueueTest {
+
+    @Test
+    public void transfer() {
+        WaiterQueue<Integer> waiters = new WaiterQueue<>();
+        assertThat(waiters.transfer(1)).isFalse();
+
+        Waiter waiter = waiters.add(Thread.currentThread());
+        assertThat(waiters.transfer(1)).isTrue();
+        assertThat(waiter.get()).isEqualTo(1);
+        assertThat(waiters.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void transfer_skipsCancelled() {
+        WaiterQueue<Integer> waiters = new WaiterQueue<>();
+        Waiter cancelled = waiters.add(Thread.currentThread());
+        Waiter waiter = waiters.add(Thread.currentThread());
+        assertThat(waiters.cancel(cancelled)).isNull();
+
+        assertThat(waiters.transfer(1)).isTrue();
+        assertThat(cancelled.get()).isSameAs(WaiterQueue.CANCELLED);
+        assertThat(waiter.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void signal() {
+        WaiterQueue<Integer> waiters = new WaiterQueue<>();
+        Waiter first = waiters.add(Thread.currentThread());
+        Waiter second = waiters.add(Thread.currentThread());
+        Waiter third = waiters.add(Thread.currentThread());
+
+        waiters.signal(2);
+        assertThat(first.get()).isSameAs(WaiterQueue.RETRY);
+        assertThat(second.get()).isSameAs(WaiterQueue.RETRY);
+        assertThat(third.get()).isNull();
+        assertThat(waiters.queue).containsExactly(third);
+    }
+
+    @Test
+    public void cancel_handedElement() {
+        WaiterQueue<Integer> waiters = new WaiterQueue<>();
+        Waiter waiter = waiters.add(Thread.currentThread());
+        waiters.transfer(1);
+
+        // the consumer keeps the element that it was handed before cancelling
+        assertThat(waiters.cancel(waiter)).isEqualTo(1);
+    }
+
+    @Test
+    public void cancel_passesSignal() {
+        WaiterQueue<Integer> waiters = new WaiterQueue<>();
+        Waiter signaled = waiters.add(Thread.currentThread());
+        waiters.signal(1);
+        Waiter waiter = waiters.add(Thread.currentThread());
+
+        // the signal is not lost when the signaled consumer gives up
+        assertThat(waiters.cancel(signaled)).isNull();
+        assertThat(waiter.get()).isSameAs(WaiterQueue.RETRY);
+    }
+
+    @Test
+    public void cancel_sweeps() {
+        WaiterQueue<Integer> waiters = new WaiterQueue<>();
+        for (int i = 0; i < 10 * WaiterQueue.SWEEP_THRESHOLD; i++) {
+            assertThat(waiters.cancel(waiters.add(Thread.currentThread()))).isNull();
+        }
+
+        // the cancelled waiters are unlinked in batches, without a producer
+        assertThat(waiters.queue.size()).isLessThan(WaiterQueue.SWEEP_THRESHOLD);
+    }
+}